@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the cloud events used by the benchmarks.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Build a cloud event with a routing slip and a route history like it is received from kafka.
+     *
+     * @param payloadSize the approximate size of the data in bytes
+     * @param routeLength the number of steps in the route history
+     */
+    static MicoCloudEventImpl<JsonNode> cloudEvent(int payloadSize, int routeLength) {
+        return MicoCloudEventImpl.<JsonNode>builder()
+            .randomId()
+            .source(URI.create("http://example.com/benchmark"))
+            .type("BenchmarkMessage")
+            .time(ZonedDateTime.now())
+            .correlationId("correlation-id")
+            .expiryDate(ZonedDateTime.now().plusHours(1))
+            .routingSlip(Arrays.asList(
+                Collections.singletonList("transform-result"),
+                Arrays.asList("topic-a", "topic-b")))
+            .route(route(routeLength))
+            .data(payloadSize > 0 ? payload(payloadSize) : null)
+            .build();
+    }
+
+    /**
+     * Build a route history with alternating topic and function steps.
+     */
+    static List<RouteHistory> route(int length) {
+        List<RouteHistory> route = new ArrayList<>(length);
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 0; i < length; i++) {
+            route.add(i % 2 == 0
+                ? new RouteHistory(RouteHistory.TYPE_TOPIC, "topic-" + i, now)
+                : new RouteHistory(RouteHistory.TYPE_FAAS_FUNCTION, "function-" + i, now));
+        }
+        return route;
+    }
+
+    /**
+     * Build a json object with nested fields and a text field that fill up the given size.
+     */
+    static JsonNode payload(int size) {
+        ObjectNode payload = JsonNodeFactory.instance.objectNode();
+        payload.put("count", size);
+        payload.putObject("nested").put("flag", true).putArray("values").add(1).add(2).add(3);
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append("lorem ipsum ");
+        }
+        payload.put("text", text.substring(0, size));
+        return payload;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventSerializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEvent;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of cloud events for kafka across payload sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudEventCodecBenchmark {
+
+    private static final String TOPIC = "transform-request";
+
+    @Param({"0", "1024", "65536", "1048576"})
+    private int payloadSize;
+
+    private final CloudEventSerializer serializer = new CloudEventSerializer();
+
+    private final CloudEventDeserializer deserializer = new CloudEventDeserializer();
+
+    private final LazyCloudEventDeserializer lazyDeserializer = new LazyCloudEventDeserializer();
+
+    private MicoCloudEventImpl<JsonNode> cloudEvent;
+
+    private byte[] serializedCloudEvent;
+
+    @Setup
+    public void setup() {
+        serializer.configure(Collections.emptyMap(), false);
+        deserializer.configure(Collections.emptyMap(), false);
+        cloudEvent = BenchmarkData.cloudEvent(payloadSize, 10);
+        serializedCloudEvent = serializer.serialize(TOPIC, cloudEvent);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(TOPIC, cloudEvent);
+    }
+
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> deserialize() {
+        return deserializer.deserialize(TOPIC, serializedCloudEvent);
+    }
+
+    /**
+     * Only indexes the top-level fields, like the input listener does before the expiry check.
+     */
+    @Benchmark
+    public LazyCloudEvent deserializeLazy() {
+        return lazyDeserializer.deserialize(TOPIC, serializedCloudEvent);
+    }
+
+    /**
+     * Indexes the top-level fields and then decodes the whole cloud event, like the input listener does for processed events.
+     */
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> deserializeLazyAndDecode() {
+        return lazyDeserializer.deserialize(TOPIC, serializedCloudEvent).toCloudEvent();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.CloudEventManipulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route history and header updates done for every function call and every sent message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudEventManipulatorBenchmark {
+
+    @Param({"0", "10", "100", "1000"})
+    private int routeLength;
+
+    private final CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
+
+    private MicoCloudEventImpl<JsonNode> cloudEvent;
+
+    private MicoCloudEventImpl<JsonNode> cloudEventWithoutHeaders;
+
+    @Setup
+    public void setup() {
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        kafkaConfig.setGroupId("mico");
+        kafkaConfig.setInputTopic("transform-request");
+        ReflectionTestUtils.setField(cloudEventManipulator, "kafkaConfig", kafkaConfig);
+        cloudEvent = BenchmarkData.cloudEvent(1024, routeLength);
+        cloudEventWithoutHeaders = BenchmarkData.cloudEvent(1024, routeLength).toBuilder()
+            .id(null)
+            .time(null)
+            .correlationId(null)
+            .build();
+    }
+
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> updateRouteHistoryWithTopic() {
+        return cloudEventManipulator.updateRouteHistoryWithTopic(cloudEvent, "transform-result");
+    }
+
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> updateRouteHistoryWithFunctionCall() {
+        return cloudEventManipulator.updateRouteHistoryWithFunctionCall(cloudEvent, "faas-message-transformer");
+    }
+
+    /**
+     * Sets id, time, correlationId and createdFrom in a copy of the cloud event.
+     */
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> setMissingHeaderFields() {
+        return cloudEventManipulator.setMissingHeaderFields(cloudEventWithoutHeaders, "original-id");
+    }
+
+    /**
+     * The copy alone, as baseline for {@link #setMissingHeaderFields()}.
+     */
+    @Benchmark
+    public MicoCloudEventImpl<JsonNode> copyCloudEvent() {
+        return cloudEventWithoutHeaders.toBuilder().build();
+    }
+}
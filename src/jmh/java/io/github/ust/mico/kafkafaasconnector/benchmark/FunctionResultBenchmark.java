@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of function results with a growing number of cloud events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionResultBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int resultEvents;
+
+    private final FaasController faasController = new FaasController();
+
+    private MicoCloudEventImpl<JsonNode> sourceCloudEvent;
+
+    private byte[] functionResult;
+
+    @Setup
+    public void setup() {
+        OpenFaaSConfig openFaaSConfig = new OpenFaaSConfig();
+        openFaaSConfig.setFunctionName("faas-message-transformer");
+        ReflectionTestUtils.setField(faasController, "openFaaSConfig", openFaaSConfig);
+        ReflectionTestUtils.setField(faasController, "meterRegistry", new SimpleMeterRegistry());
+        faasController.init();
+        sourceCloudEvent = BenchmarkData.cloudEvent(1024, 10);
+        List<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>(resultEvents);
+        for (int i = 0; i < resultEvents; i++) {
+            result.add(BenchmarkData.cloudEvent(256, 10));
+        }
+        functionResult = CloudEventCodec.encode(result);
+    }
+
+    @Benchmark
+    public List<MicoCloudEventImpl<JsonNode>> parseFunctionResult() throws MicoCloudEventException {
+        return faasController.parseFunctionResult(functionResult, sourceCloudEvent);
+    }
+}
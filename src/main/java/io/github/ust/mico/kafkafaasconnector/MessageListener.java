@@ -23,62 +23,359 @@ import com.fasterxml.jackson.databind.JsonNode;
 import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
 import io.github.ust.mico.kafkafaasconnector.messageprocessing.KafkaMessageSender;
 import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
 import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.ConsumerBackpressure;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEvent;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.OffsetTracker;
+import io.github.ust.mico.kafkafaasconnector.kafka.TransactionBatcher;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KeyOrderedExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Slf4j
 @Component
 public class MessageListener {
 
+    /**
+     * Interval for committing completed offsets while waiting for pending records.
+     */
+    private static final long PENDING_COMMIT_INTERVAL_MS = 100;
+
     @Autowired
     private KafkaConfig kafkaConfig;
 
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
     @Autowired
     private KafkaMessageSender kafkaMessageSender;
 
     @Autowired
     private FaasController faasController;
 
+    @Autowired
+    private ThreadPoolTaskExecutor batchWorkerPool;
+
+    @Autowired
+    private KeyOrderedExecutor keyOrderedExecutor;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Autowired
+    private TransactionBatcher transactionBatcher;
+
+    @Autowired
+    private ConsumerBackpressure consumerBackpressure;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer expiryCheck;
+
+    private Timer decoding;
+
+    private Counter expiredMessages;
+
+    @PostConstruct
+    public void init() {
+        this.expiryCheck = Timer.builder("mico.connector.expiry.check")
+            .description("The time needed to check if a received cloud event is expired")
+            .register(meterRegistry);
+        this.decoding = Timer.builder("mico.connector.decode")
+            .description("The time needed to decode the whole received cloud event")
+            .register(meterRegistry);
+        this.expiredMessages = Counter.builder("mico.connector.events.expired")
+            .description("The number of received cloud events that were already expired")
+            .register(meterRegistry);
+    }
+
     /**
      * Entry point for incoming messages from kafka.
+     * <p>
+     * In async invocation mode this method returns before the function call completed.
+     * The consumer is paused by the {@link ConsumerBackpressure} if too many records are in process.
+     * With acknowledged sends it waits until every resulting message was acknowledged.
      *
      * @param cloudEvent the received cloud event
      */
-    @KafkaListener(topics = "${kafka.input-topic}", groupId = "${kafka.group-id}")
-    public void receive(MicoCloudEventImpl<JsonNode> cloudEvent) {
+    @KafkaListener(topics = "${kafka.input-topic}", groupId = "${kafka.group-id}",
+        autoStartup = "#{@kafkaConfig.recordListenerEnabled}")
+    public void receive(LazyCloudEvent cloudEvent) {
         log.debug("Received CloudEvent message: {}", cloudEvent);
+        int size = cloudEvent.getBytes().length;
+        consumerBackpressure.register(size);
+        CompletableFuture<Void> processed;
+        try {
+            processed = processCloudEvent(cloudEvent);
+        } catch (RuntimeException e) {
+            consumerBackpressure.complete(size);
+            throw e;
+        }
+        processed.whenComplete((result, throwable) -> consumerBackpressure.complete(size));
+        if (kafkaConfig.isAcknowledgedSends()) {
+            processed.join();
+        }
+    }
+
+    /**
+     * Entry point for incoming messages from kafka in batch listener mode.
+     * <p>
+     * The records of the batch are processed concurrently by the batch worker pool.
+     * This method returns after every record was processed so that the offsets
+     * of the batch are only committed after all resulting messages were sent on.
+     *
+     * @param records the records of one poll
+     */
+    @KafkaListener(topics = "${kafka.input-topic}", groupId = "${kafka.group-id}",
+        containerFactory = "batchKafkaListenerContainerFactory", autoStartup = "#{@kafkaConfig.batchListenerEnabled}")
+    public void receiveBatch(List<ConsumerRecord<String, LazyCloudEvent>> records) {
+        log.debug("Received batch of {} CloudEvent messages", records.size());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, LazyCloudEvent> record : records) {
+            LazyCloudEvent cloudEvent = record.value();
+            if (cloudEvent == null) {
+                // the ErrorHandlingDeserializer2 returns null if the record could not be deserialized
+                log.error("Skip record with offset '{}' on partition '{}' because it could not be deserialized.",
+                    record.offset(), record.partition());
+                continue;
+            }
+            tasks.add(CompletableFuture.supplyAsync(() -> processCloudEvent(cloudEvent), batchWorkerPool)
+                .thenCompose(Function.identity()));
+        }
+        for (CompletableFuture<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                log.error("Failed to process a CloudEvent of the batch. Caused by: {}", e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the batch to be processed.", e);
+            }
+        }
+    }
+
+    /**
+     * Entry point for incoming messages from kafka in the key-ordered or unordered processing order.
+     * <p>
+     * The records are processed in parallel on the batch worker pool. Records with the same ordering key
+     * are processed one after another. This method does not wait for the records to be processed,
+     * it only commits the offsets of completed records without gaps.
+     * The consumer is paused by the {@link ConsumerBackpressure} if too many records are in process,
+     * this method only blocks if the hard limit of pending records is reached.
+     *
+     * @param records  the records of one poll
+     * @param consumer the consumer, used to commit the offsets on the consumer thread
+     */
+    @KafkaListener(topics = "${kafka.input-topic}", groupId = "${kafka.group-id}",
+        containerFactory = "parallelKafkaListenerContainerFactory", autoStartup = "#{@kafkaConfig.parallelListenerEnabled}")
+    public void receiveParallel(List<ConsumerRecord<String, LazyCloudEvent>> records, Consumer<?, ?> consumer) {
+        log.debug("Received {} CloudEvent messages for parallel processing", records.size());
+        for (ConsumerRecord<String, LazyCloudEvent> record : records) {
+            offsetTracker.register(record);
+            LazyCloudEvent cloudEvent = record.value();
+            if (cloudEvent == null) {
+                // the ErrorHandlingDeserializer2 returns null if the record could not be deserialized
+                log.error("Skip record with offset '{}' on partition '{}' because it could not be deserialized.",
+                    record.offset(), record.partition());
+                offsetTracker.complete(record);
+                continue;
+            }
+            int size = cloudEvent.getBytes().length;
+            consumerBackpressure.register(size);
+            keyOrderedExecutor.submit(getOrderingKey(record), () -> processCloudEvent(cloudEvent))
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        log.error("Failed to process the CloudEvent '{}'. Caused by: {}", cloudEvent.getId(), throwable.getMessage());
+                    }
+                    offsetTracker.complete(record);
+                    consumerBackpressure.complete(size);
+                });
+        }
+        offsetTracker.commit(consumer);
+        try {
+            while (!offsetTracker.awaitPendingBelow(kafkaConfig.getMaxPendingRecords(), PENDING_COMMIT_INTERVAL_MS)) {
+                offsetTracker.commit(consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pending records.", e);
+        }
+    }
 
+    /**
+     * Entry point for incoming messages from kafka in the transactional (exactly-once) mode.
+     * <p>
+     * The function calls for all records of the poll run concurrently on the batch worker pool.
+     * The results are sent in offset order on the consumer thread, so that they are part of
+     * the transaction that also commits the offset of the input record. A failed send aborts the transaction.
+     *
+     * @param records  the records of one poll
+     * @param consumer the consumer, used to rewind after a failed transaction
+     */
+    @KafkaListener(topics = "${kafka.input-topic}", groupId = "${kafka.group-id}",
+        containerFactory = "transactionalKafkaListenerContainerFactory", autoStartup = "#{@kafkaConfig.transactionalListenerEnabled}")
+    public void receiveTransactional(List<ConsumerRecord<String, LazyCloudEvent>> records, Consumer<?, ?> consumer) {
+        log.debug("Received {} CloudEvent messages for transactional processing", records.size());
+        Map<ConsumerRecord<String, LazyCloudEvent>, CompletableFuture<List<MicoCloudEventImpl<JsonNode>>>> results = new HashMap<>();
+        for (ConsumerRecord<String, LazyCloudEvent> record : records) {
+            LazyCloudEvent cloudEvent = record.value();
+            if (cloudEvent != null) {
+                results.put(record, CompletableFuture.supplyAsync(() -> invokeFunction(cloudEvent), batchWorkerPool)
+                    .thenCompose(Function.identity()));
+            }
+        }
+        transactionBatcher.process(records, consumer, record -> {
+            if (record.value() == null) {
+                // the ErrorHandlingDeserializer2 returns null if the record could not be deserialized
+                log.error("Skip record with offset '{}' on partition '{}' because it could not be deserialized.",
+                    record.offset(), record.partition());
+                return CompletableFuture.completedFuture(null);
+            }
+            // waits for the result, so the messages are sent on this thread within the transaction
+            return kafkaMessageSender.sendCloudEventsInTransaction(results.get(record), record.value().getId());
+        });
+    }
+
+    /**
+     * Get the key that determines the processing order of the record.
+     * <p>
+     * Uses the kafka key, the correlationId or the partition (in this order) in the {@code KEY} processing order.
+     *
+     * @param record the record
+     * @return the ordering key or {@code null} if the record is not ordered
+     */
+    private Object getOrderingKey(ConsumerRecord<String, LazyCloudEvent> record) {
+        if (kafkaConfig.getProcessingOrder() != KafkaConfig.ProcessingOrder.KEY) {
+            return null;
+        }
+        if (record.key() != null) {
+            return record.key();
+        }
+        return record.value().getCorrelationId()
+            .map(correlationId -> (Object) ("correlationId:" + correlationId))
+            .orElse(record.partition());
+    }
+
+    /**
+     * Call the FaaS function with the cloud event and send the results on.
+     * <p>
+     * The expiry check only reads the {@code expirydate} field of the lazy cloud event.
+     * The whole cloud event is only decoded if it is processed.
+     *
+     * @param lazyCloudEvent the received cloud event
+     * @return a future that completes after the results were sent on (and acknowledged if acknowledged sends are enabled)
+     * @throws SerializationException if the cloud event could not be decoded
+     */
+    private CompletableFuture<Void> processCloudEvent(LazyCloudEvent lazyCloudEvent) {
         // Save the message Id because some faas functions create need messages with different ids.
-        String originalMessageId = cloudEvent.getId();
+        String originalMessageId = lazyCloudEvent.getId();
 
+        CompletableFuture<Void> sent = kafkaMessageSender.safeSendStreamedCloudEvents(
+            resultConsumer -> invokeFunction(lazyCloudEvent, resultConsumer), originalMessageId);
+        return openFaaSConfig.isAsyncInvocation() ? sent : acknowledged(sent);
+    }
+
+    /**
+     * Call the FaaS function with the cloud event and stream the resulting cloud events to the consumer.
+     * <p>
+     * The returned future completes exceptionally with a {@code MicoCloudEventException}
+     * if the cloud event is expired or the function call failed.
+     *
+     * @param lazyCloudEvent the received cloud event
+     * @param resultConsumer receives every resulting cloud event as soon as it was parsed
+     * @return a future that completes after the whole function result was parsed, already completed in the synchronous invocation mode
+     * @throws SerializationException if the cloud event could not be decoded
+     */
+    private CompletableFuture<Void> invokeFunction(LazyCloudEvent lazyCloudEvent, java.util.function.Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
         try {
-            handleExpiredMessage(cloudEvent);
+            handleExpiredMessage(lazyCloudEvent);
 
-            List<MicoCloudEventImpl<JsonNode>> events = faasController.callFaasFunction(cloudEvent);
-            events.forEach(event -> kafkaMessageSender.safeSendCloudEvent(event, originalMessageId));
+            MicoCloudEventImpl<JsonNode> cloudEvent = decode(lazyCloudEvent);
+            if (openFaaSConfig.isAsyncInvocation()) {
+                return faasController.callFaasFunctionAsync(cloudEvent, resultConsumer);
+            }
+            faasController.callFaasFunction(cloudEvent, resultConsumer);
+            return CompletableFuture.completedFuture(null);
+        } catch (MicoCloudEventException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Call the FaaS function with the cloud event.
+     * <p>
+     * The returned future completes exceptionally with a {@code MicoCloudEventException}
+     * if the cloud event is expired or the function call failed.
+     *
+     * @param lazyCloudEvent the received cloud event
+     * @return a future of the function result, already completed in the synchronous invocation mode
+     * @throws SerializationException if the cloud event could not be decoded
+     */
+    private CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> invokeFunction(LazyCloudEvent lazyCloudEvent) {
+        try {
+            handleExpiredMessage(lazyCloudEvent);
 
+            MicoCloudEventImpl<JsonNode> cloudEvent = decode(lazyCloudEvent);
+            if (openFaaSConfig.isAsyncInvocation()) {
+                return faasController.callFaasFunctionAsync(cloudEvent);
+            }
+            return CompletableFuture.completedFuture(faasController.callFaasFunction(cloudEvent));
         } catch (MicoCloudEventException e) {
-            kafkaMessageSender.safeSendErrorMessage(e.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
+            CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
     }
 
+    /**
+     * Only wait for the acknowledgements of the sent messages if acknowledged sends are enabled.
+     *
+     * @param sent the future that completes after the messages were acknowledged
+     * @return the given future or a completed future
+     */
+    private CompletableFuture<Void> acknowledged(CompletableFuture<Void> sent) {
+        return kafkaConfig.isAcknowledgedSends() ? sent : CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Logs expired messages and throw a {@code MicoCloudEventException} if the message is expired.
      *
      * @param cloudEvent
      * @throws MicoCloudEventException
      */
-    private void handleExpiredMessage(MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
-        if (isMessageExpired(cloudEvent)) {
+    private void handleExpiredMessage(LazyCloudEvent cloudEvent) throws MicoCloudEventException {
+        long start = System.nanoTime();
+        boolean expired = isMessageExpired(cloudEvent);
+        expiryCheck.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (expired) {
+            expiredMessages.increment();
             log.debug("Received expired message!");
-            throw new MicoCloudEventException("CloudEvent has already expired!", cloudEvent);
+            throw new MicoCloudEventException("CloudEvent has already expired!", decode(cloudEvent));
         }
     }
 
@@ -88,8 +385,26 @@ public class MessageListener {
      * @param cloudEvent
      * @return
      */
-    private boolean isMessageExpired(MicoCloudEventImpl<JsonNode> cloudEvent) {
+    private boolean isMessageExpired(LazyCloudEvent cloudEvent) {
         return cloudEvent.getExpiryDate().map(exp -> exp.compareTo(ZonedDateTime.now()) < 0).orElse(false);
     }
 
+    /**
+     * Decode the whole lazy cloud event.
+     *
+     * @param cloudEvent the lazy cloud event
+     * @return the decoded cloud event
+     * @throws SerializationException if the cloud event could not be decoded
+     */
+    private MicoCloudEventImpl<JsonNode> decode(LazyCloudEvent cloudEvent) {
+        long start = System.nanoTime();
+        try {
+            return cloudEvent.toCloudEvent();
+        } catch (IllegalStateException e) {
+            throw new SerializationException("Could not create an CloudEvent message", e);
+        } finally {
+            decoding.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
 }
@@ -24,6 +24,7 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 
 /**
@@ -75,4 +76,210 @@ public class KafkaConfig {
 
     @NotBlank
     private String testMessageOutputTopic;
+
+    /**
+     * Whether the listener receives the whole poll result as a batch
+     * instead of single records.
+     * <p>
+     * The records of a batch are processed concurrently and the offsets
+     * are committed after every record of the batch was sent on.
+     */
+    private boolean batchListener = false;
+
+    /**
+     * The maximum number of records returned by a single poll.
+     * This is the maximum batch size in batch listener mode.
+     */
+    @Min(1)
+    private int maxPollRecords = 500;
+
+    /**
+     * The number of worker threads that process the records of a batch concurrently.
+     * The worker threads are also used by the key-ordered and unordered processing.
+     */
+    @Min(1)
+    private int batchParallelism = 10;
+
+    /**
+     * The order in which the records of a partition are processed.
+     * <p>
+     * {@code PARTITION}: the records are processed by the listener thread (single records or batches).
+     * {@code KEY}: records with the same kafka key (or correlationId if there is no key) are processed in order,
+     * records with different keys are processed in parallel.
+     * {@code UNORDERED}: all records are processed in parallel. Only use this for stateless functions.
+     * <p>
+     * In the {@code KEY} and {@code UNORDERED} mode offsets are only committed up to
+     * the highest offset with all previous records completed.
+     */
+    private ProcessingOrder processingOrder = ProcessingOrder.PARTITION;
+
+    /**
+     * The maximum number of records in process in the {@code KEY} and {@code UNORDERED} processing order.
+     */
+    @Min(1)
+    private int maxPendingRecords = 1000;
+
+    /**
+     * Whether the consumer is paused while too many records are in process.
+     * <p>
+     * Applies to the {@code KEY} and {@code UNORDERED} processing order and to the record listener
+     * with async invocation, where the listener does not wait for the records to be processed.
+     * The paused consumer keeps polling, so it is not removed from the group.
+     * Non-blocking function calls that wait for the concurrency limit or the circuit breaker
+     * pause the consumer even if backpressure is disabled.
+     */
+    private boolean backpressure = true;
+
+    /**
+     * The number of in-flight records at which the consumer is paused.
+     */
+    @Min(1)
+    private int pauseHighWatermarkRecords = 500;
+
+    /**
+     * The number of in-flight records below which a paused consumer is resumed.
+     * Must not be greater than the high watermark.
+     */
+    @Min(1)
+    private int pauseLowWatermarkRecords = 250;
+
+    /**
+     * The size of the in-flight records in bytes at which the consumer is paused.
+     */
+    @Min(1)
+    private long pauseHighWatermarkBytes = 64 * 1024 * 1024;
+
+    /**
+     * The size of the in-flight records in bytes below which a paused consumer is resumed.
+     * Must not be greater than the high watermark.
+     */
+    @Min(1)
+    private long pauseLowWatermarkBytes = 32 * 1024 * 1024;
+
+    /**
+     * Whether the processing of a record is only completed after every resulting message
+     * (including routing slip fan-out and error messages) was acknowledged by the broker.
+     * <p>
+     * The sends are pipelined and not blocking. The offset of the input record is only committed after
+     * the acknowledgements, which gives at-least-once delivery. In the record listener mode the listener
+     * waits for the acknowledgements of each record, the batch and parallel listeners wait for all records together.
+     * The producer waits for all in-sync replicas ({@code acks=all}) in this mode.
+     */
+    private boolean acknowledgedSends = false;
+
+    /**
+     * Whether the records are processed exactly-once in Kafka transactions.
+     * <p>
+     * The messages resulting from a batch of input records and the offsets of these records
+     * are committed in one transaction. The FaaS function calls of a poll still run concurrently.
+     * This mode takes precedence over the other listener modes.
+     */
+    private boolean transactional = false;
+
+    /**
+     * The maximum number of input records per transaction.
+     */
+    @Min(1)
+    private int transactionMaxRecords = 100;
+
+    /**
+     * The maximum time in milliseconds a transaction stays open for further input records.
+     */
+    @Min(1)
+    private long transactionMaxTimeMs = 1000;
+
+    /**
+     * The prefix of the transactional ids. Must be the same after a restart of an instance
+     * so that the transactions of the previous run are fenced.
+     */
+    @NotBlank
+    private String transactionIdPrefix = "kafka-faas-connector-tx-";
+
+    /**
+     * The CloudEvents content mode used to write messages.
+     * <p>
+     * {@code STRUCTURED}: the whole CloudEvent is encoded as JSON in the record value.
+     * {@code BINARY}: the attributes and extensions are written to {@code ce_} record headers
+     * and the record value only contains the data.
+     * <p>
+     * Incoming messages are read in both modes.
+     */
+    private ContentMode contentMode = ContentMode.STRUCTURED;
+
+    /**
+     * The encoding of the route history in written messages.
+     * <p>
+     * {@code VERBOSE}: every routing step is an object with an ISO-8601 timestamp.
+     * {@code COMPACT}: every routing step is an array of a type code, the id and an epoch milliseconds timestamp.
+     * <p>
+     * Incoming messages are read in both encodings.
+     */
+    private RouteHistoryFormat routeHistoryFormat = RouteHistoryFormat.VERBOSE;
+
+    /**
+     * Whether the route history of messages in the structured content mode is written to the
+     * {@code ce_route} record header instead of the record value. Only enable this if all
+     * consumers of the output topics read the route history from the header.
+     */
+    private boolean routeHistoryHeader = false;
+
+    /**
+     * The maximum number of routing steps kept in the route history. The oldest steps are removed
+     * once a cloud event took more steps. {@code 0} keeps the whole route history.
+     */
+    @Min(0)
+    private int routeHistoryMaxHops = 0;
+
+    /**
+     * What happens with the routing steps removed from a capped route history.
+     * <p>
+     * {@code DROP}: the steps are removed.
+     * {@code SUMMARIZE}: the steps are replaced with a single {@code summary} step holding their number
+     * and the timestamp of the oldest one.
+     */
+    private RouteHistoryOverflow routeHistoryOverflow = RouteHistoryOverflow.SUMMARIZE;
+
+    public enum ProcessingOrder {
+        PARTITION, KEY, UNORDERED
+    }
+
+    public enum ContentMode {
+        STRUCTURED, BINARY
+    }
+
+    public enum RouteHistoryFormat {
+        VERBOSE, COMPACT
+    }
+
+    public enum RouteHistoryOverflow {
+        DROP, SUMMARIZE
+    }
+
+    /**
+     * Whether the single record listener consumes the input topic.
+     */
+    public boolean isRecordListenerEnabled() {
+        return processingOrder == ProcessingOrder.PARTITION && !batchListener && !transactional;
+    }
+
+    /**
+     * Whether the batch listener consumes the input topic.
+     */
+    public boolean isBatchListenerEnabled() {
+        return processingOrder == ProcessingOrder.PARTITION && batchListener && !transactional;
+    }
+
+    /**
+     * Whether the parallel (key-ordered or unordered) listener consumes the input topic.
+     */
+    public boolean isParallelListenerEnabled() {
+        return processingOrder != ProcessingOrder.PARTITION && !transactional;
+    }
+
+    /**
+     * Whether the transactional listener consumes the input topic.
+     */
+    public boolean isTransactionalListenerEnabled() {
+        return transactional;
+    }
 }
@@ -19,6 +19,7 @@
 
 package io.github.ust.mico.kafkafaasconnector.configuration;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -28,7 +29,15 @@ import org.springframework.stereotype.Component;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
@@ -62,6 +71,282 @@ public class OpenFaaSConfig {
     @NotNull
     private boolean skipFunctionCall = false;
 
+    /**
+     * Whether to call the OpenFaaS function with the non-blocking (event-loop) HTTP client.
+     * <p>
+     * In record listener mode the listener does not wait for the function call,
+     * so the offset may be committed before the results were sent on.
+     * The batch listener waits for all calls of a batch before committing.
+     */
+    private boolean asyncInvocation = false;
+
+    /**
+     * The maximum number of concurrent calls per function.
+     */
+    @Min(1)
+    private int maxInFlightRequests = 200;
+
+    /**
+     * Whether the number of concurrent calls per function adapts to the measured round-trip time and failures.
+     * If disabled, {@link #maxInFlightRequests} calls are allowed.
+     */
+    private boolean adaptiveConcurrency = true;
+
+    /**
+     * The concurrency limit to start with if the concurrency is adaptive.
+     */
+    @Min(1)
+    private int initialConcurrency = 20;
+
+    /**
+     * The lowest concurrency limit if the concurrency is adaptive.
+     */
+    @Min(1)
+    private int minConcurrency = 1;
+
+    /**
+     * The factor by which the smoothed round-trip time may exceed its long-term baseline before the concurrency limit shrinks.
+     */
+    @DecimalMin("1.0")
+    private double rttTolerance = 2.0;
+
+    /**
+     * The timeout of a function call in milliseconds for each read.
+     */
+    @Min(1)
+    private long timeoutMs = 30000;
+
+    /**
+     * The timeout in milliseconds for opening a connection to the gateway.
+     */
+    @Min(1)
+    private long connectTimeoutMs = 5000;
+
+    /**
+     * The time in milliseconds a function call waits for a free connection of the pool.
+     */
+    @Min(1)
+    private long poolWaitTimeoutMs = 5000;
+
+    /**
+     * The maximum number of pooled connections to the gateway.
+     */
+    @Min(1)
+    private int maxConnections = 400;
+
+    /**
+     * The maximum number of pooled connections per gateway address (route).
+     */
+    @Min(1)
+    private int maxConnectionsPerRoute = 200;
+
+    /**
+     * The time in milliseconds after which idle connections are closed and removed from the pool.
+     */
+    @Min(1)
+    private long connectionIdleTimeoutMs = 30000;
+
+    /**
+     * The time in milliseconds a connection is kept alive if the gateway does not send a {@code Keep-Alive} header.
+     */
+    @Min(1)
+    private long keepAliveMs = 60000;
+
+    /**
+     * Whether the non-blocking client talks HTTP/2 over cleartext (h2c, prior knowledge) to the gateway,
+     * multiplexing the function calls over a few connections. The blocking client always uses HTTP/1.1.
+     */
+    private boolean http2 = false;
+
+    /**
+     * The tick duration in milliseconds of the timer wheel tracking the deadlines of the cloud events in process.
+     * A function call is cancelled up to one tick after the {@code expirydate} of its cloud event.
+     */
+    @Min(1)
+    private long deadlineTickMs = 10;
+
+    /**
+     * Whether the calls to a function are guarded by a circuit breaker.
+     */
+    private boolean circuitBreaker = true;
+
+    /**
+     * The number of recent calls of which the failure rate is computed.
+     */
+    @Min(1)
+    private int circuitBreakerWindow = 20;
+
+    /**
+     * The failure rate (0 to 1) of the recent calls that opens the circuit breaker.
+     */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double circuitBreakerFailureRate = 0.5;
+
+    /**
+     * The time in milliseconds the circuit breaker stays open before a probe call is permitted.
+     */
+    @Min(1)
+    private long circuitBreakerOpenMs = 10000;
+
+    /**
+     * What happens to cloud events while the circuit breaker is open.
+     */
+    @NotNull
+    private CircuitBreakerMode circuitBreakerMode = CircuitBreakerMode.FAIL_FAST;
+
+    /**
+     * The maximum size of a function response in bytes. Larger responses are rejected while they are read.
+     */
+    @Min(1)
+    private long maxResponseSize = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of cloud events in a function response.
+     */
+    @Min(1)
+    private int maxResultEvents = 10000;
+
+    /**
+     * Whether the results of the function are cached by the {@code data} of the input.
+     * Only enable it if the result of the configured function depends on nothing but the data of the input.
+     * The results of chained functions are not cached.
+     */
+    private boolean resultCache = false;
+
+    /**
+     * The maximum number of cached function results.
+     */
+    @Min(1)
+    private int resultCacheMaxEntries = 10000;
+
+    /**
+     * The maximum total size of the cached function responses in bytes.
+     */
+    @Min(1)
+    private long resultCacheMaxBytes = 64 * 1024 * 1024;
+
+    /**
+     * The time in milliseconds a function result is cached.
+     */
+    @Min(1)
+    private long resultCacheTtlMs = 60000;
+
+    /**
+     * Whether concurrent calls with the same {@code data} share a single function call.
+     * Only enable it if the result of the configured function depends on nothing but the data of the input.
+     * Calls of chained functions are not shared.
+     */
+    private boolean coalesceCalls = false;
+
+    /**
+     * The maximum number of cloud events sent to the function in a single request. {@code 1} disables batching.
+     * With batching, the function receives a JSON array of cloud events and has to return a JSON array
+     * with one array of resulting cloud events per input, in the order of the inputs.
+     */
+    @Min(1)
+    private int batchSize = 1;
+
+    /**
+     * The time in milliseconds a batch waits for more cloud events before it is sent.
+     */
+    @Min(1)
+    private long batchLingerMs = 5;
+
+    /**
+     * Whether a second request is sent if a function call runs longer than the {@link #hedgePercentile}
+     * of the recent calls. The response that arrives first wins and the other request is cancelled.
+     * Only enable it if the configured function is idempotent. Only the configured function is hedged,
+     * calls of chained functions and batched calls are not.
+     */
+    private boolean hedgeRequests = false;
+
+    /**
+     * The percentile (0 to 1) of the recent round-trip times after which a call is hedged.
+     */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double hedgePercentile = 0.95;
+
+    /**
+     * The maximum share (0 to 1) of the function calls that may send a hedged request.
+     */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double hedgeBudget = 0.05;
+
+    /**
+     * The number of recent round-trip times the percentile is computed of.
+     */
+    @Min(10)
+    private int hedgeWindow = 1000;
+
+    /**
+     * The functions behind the configured gateway that may be called in process, as {@code topic=function} entries.
+     * <p>
+     * If the next step of a routing slip is exactly one of these topics, the connector calls the function
+     * of the topic itself instead of sending the cloud event to the topic, so consecutive function steps
+     * run one after another without Kafka in between. Chaining is disabled in the transactional mode,
+     * every step is sent to its topic within the transaction there.
+     */
+    @NotNull
+    private List<String> chainedFunctions = new ArrayList<>();
+
+    /**
+     * The base urls of the endpoints the function calls are balanced across. Without endpoints
+     * (and without an endpoints file), every call goes to the {@link #gateway}.
+     */
+    @NotNull
+    private List<String> endpoints = new ArrayList<>();
+
+    /**
+     * A file with one endpoint base url per line (blank lines and lines starting with {@code #} are skipped).
+     * Its endpoints are added to the {@link #endpoints} and reloaded every {@link #endpointsRefreshMs}.
+     */
+    private String endpointsFile;
+
+    /**
+     * The time in milliseconds between two reloads of the {@link #endpointsFile}.
+     */
+    @Min(1)
+    private long endpointsRefreshMs = 10000;
+
+    /**
+     * What the endpoints are: further gateways or instances of the configured function.
+     */
+    @NotNull
+    private EndpointType endpointType = EndpointType.GATEWAY;
+
+    /**
+     * How an endpoint is chosen for a function call.
+     */
+    @NotNull
+    private LoadBalancing loadBalancing = LoadBalancing.LEAST_OUTSTANDING;
+
+    /**
+     * The number of consecutive failed calls (timeout, no connection, http status 429 or 5xx) that eject an endpoint.
+     */
+    @Min(1)
+    private int endpointFailureThreshold = 3;
+
+    /**
+     * The time in milliseconds an ejected endpoint stays out of rotation before a single probe call is sent to it.
+     */
+    @Min(1)
+    private long endpointEjectionMs = 10000;
+
+    /**
+     * The function urls by function name. They are resolved once and reset if the gateway changes.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Map<String, URL> functionUrls = new ConcurrentHashMap<>();
+
+    public void setGateway(String gateway) {
+        this.gateway = gateway;
+        this.functionUrls.clear();
+    }
+
     /**
      * Get the url for the configured function using gateway and function.
      *
@@ -69,15 +354,100 @@ public class OpenFaaSConfig {
      * @throws MalformedURLException if the url is invalid
      */
     public URL getFunctionUrl() throws MalformedURLException {
+        return getFunctionUrl(this.getFunctionName());
+    }
+
+    /**
+     * Get the url for a function behind the configured gateway. The url is only resolved on the first call.
+     *
+     * @param functionName the name of the function
+     * @return the constructed url
+     * @throws MalformedURLException if the url is invalid
+     */
+    public URL getFunctionUrl(String functionName) throws MalformedURLException {
+        if (functionName == null) {
+            return resolveFunctionUrl(null);
+        }
+        URL functionUrl = functionUrls.get(functionName);
+        if (functionUrl == null) {
+            functionUrl = resolveFunctionUrl(functionName);
+            functionUrls.put(functionName, functionUrl);
+        }
+        return functionUrl;
+    }
+
+    private URL resolveFunctionUrl(String functionName) throws MalformedURLException {
+        return resolveFunctionUrl(this.getGateway(), functionName);
+    }
+
+    /**
+     * Construct the url of a function behind a gateway.
+     *
+     * @param gateway      the url of the gateway
+     * @param functionName the name of the function
+     * @return the constructed url
+     * @throws MalformedURLException if the url is invalid
+     */
+    public static URL resolveFunctionUrl(String gateway, String functionName) throws MalformedURLException {
         try {
-            URL gatewayUrl = new URL(this.getGateway());
+            URL gatewayUrl = new URL(gateway);
             URL functionUrl = new URL(gatewayUrl.getProtocol(), gatewayUrl.getHost(), gatewayUrl.getPort(),
-                    gatewayUrl.getFile() + "/function/" + this.getFunctionName(), null);
+                    gatewayUrl.getFile() + "/function/" + functionName, null);
             return functionUrl;
         } catch (MalformedURLException e) {
             log.error("Invalid URL to OpenFaaS gateway ({}) or function name ({}). Caused by: {}",
-                    this.getGateway(), this.getFunctionName(), e.getMessage());
+                    gateway, functionName, e.getMessage());
             throw e;
         }
     }
+
+    /**
+     * Get the function that may be called in process instead of sending a cloud event to the topic.
+     *
+     * @param topic the topic of the routing slip step
+     * @return the name of the function or empty if the topic has no chained function
+     */
+    public Optional<String> getChainedFunction(String topic) {
+        for (String entry : chainedFunctions) {
+            int separator = entry.indexOf('=');
+            if (separator > 0 && separator < entry.length() - 1 && entry.substring(0, separator).trim().equals(topic)) {
+                return Optional.of(entry.substring(separator + 1).trim());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public enum CircuitBreakerMode {
+        /**
+         * Reject the cloud events with an error message.
+         */
+        FAIL_FAST,
+        /**
+         * Block the processing (and thereby the consumption) until a call is permitted again.
+         */
+        WAIT
+    }
+
+    public enum EndpointType {
+        /**
+         * The endpoints are OpenFaaS gateways, every function is called at {@code <endpoint>/function/<name>}.
+         */
+        GATEWAY,
+        /**
+         * The endpoints are instances of the configured function, which is called at the endpoint url itself.
+         * Chained functions are still called through the {@link #GATEWAY gateway}.
+         */
+        FUNCTION
+    }
+
+    public enum LoadBalancing {
+        /**
+         * Call the endpoint with the fewest calls in flight.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Call the endpoint with fewer calls in flight of two randomly chosen endpoints.
+         */
+        POWER_OF_TWO_CHOICES
+    }
 }
@@ -70,31 +70,31 @@ public class MicoCloudEventException extends Exception {
      * @return the error CloudEvent
      */
     public MicoCloudEventImpl<JsonNode> getErrorEvent() {
-        MicoCloudEventImpl<JsonNode> error = new MicoCloudEventImpl<>();
-        error.setRandomId();
-        error.setIsErrorMessage(true);
-        error.setErrorMessage(this.getMessage());
-        error.setErrorTrace(this.getStackTraceAsString());
+        MicoCloudEventImpl.Builder<JsonNode> error = MicoCloudEventImpl.<JsonNode>builder()
+            .randomId()
+            .isErrorMessage(true)
+            .errorMessage(this.getMessage())
+            .errorTrace(this.getStackTraceAsString());
         if (this.sourceEvent != null) {
             try {
                 // Set 'created from' to the source id
                 String sourceId = this.sourceEvent.getId();
                 if (!StringUtils.isEmpty(sourceId)) {
-                    error.setCreatedFrom(sourceId);
+                    error.createdFrom(sourceId);
                 }
                 // Add the correlation id of the source event
                 Optional<String> correlationId = this.sourceEvent.getCorrelationId();
                 if (correlationId.isPresent()) {
-                    error.setCorrelationId(correlationId.orElse(null));
+                    error.correlationId(correlationId.orElse(null));
                 }
                 // Add the data of the source event
                 JsonNode data = Json.MAPPER.convertValue(this.sourceEvent, JsonNode.class);
-                error.setData(data);
+                error.data(data);
             } catch (Exception e) {
                 log.error("Could not construct a CloudEvent out of this error.", e);
             }
         }
-        return error;
+        return error.build();
     }
 
     private String getStackTraceAsString() {
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.cloudevents.json.Json;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Codec for the binary content mode of the CloudEvents Kafka protocol binding.
+ * <p>
+ * Every attribute and extension is stored in a {@code ce_<name>} record header and the record value
+ * only contains the data. String attributes are stored as plain UTF-8, structured attributes
+ * (e.g. {@code route} and {@code routingslip}) as UTF-8 JSON. The content type of the data is
+ * stored in the {@code content-type} header.
+ */
+public final class BinaryCloudEventCodec {
+
+    public static final String HEADER_PREFIX = "ce_";
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+    public static final String SPEC_VERSION_HEADER = HEADER_PREFIX + "specversion";
+
+    /**
+     * The header holding the route history. It is also used in the structured content mode
+     * if the route history is written to a header.
+     */
+    public static final String ROUTE_HEADER = HEADER_PREFIX + LazyCloudEvent.FIELD_ROUTE;
+
+    private static final String FIELD_DATA = "data";
+    private static final String FIELD_CONTENT_TYPE = "contenttype";
+
+    /**
+     * Attributes of the MicoCloudEventImpl that are no plain values.
+     */
+    private static final Set<String> STRUCTURED_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        LazyCloudEvent.FIELD_ROUTE, LazyCloudEvent.FIELD_ROUTING_SLIP)));
+
+    /**
+     * Attributes declared by the MicoCloudEventImpl. All other headers are extensions.
+     */
+    private static final Set<String> DECLARED_ATTRIBUTES = Collections.unmodifiableSet(
+        Json.MAPPER.getSerializationConfig().introspect(CloudEventCodec.CLOUD_EVENT_TYPE).findProperties().stream()
+            .map(BeanPropertyDefinition::getName)
+            .collect(Collectors.toSet()));
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private BinaryCloudEventCodec() {
+    }
+
+    /**
+     * Checks if a record uses the binary content mode.
+     *
+     * @param headers the record headers
+     */
+    public static boolean isBinary(Headers headers) {
+        return headers != null && headers.lastHeader(SPEC_VERSION_HEADER) != null;
+    }
+
+    /**
+     * Write the attributes of the CloudEvent into the headers and encode the data.
+     *
+     * @param cloudEvent the CloudEvent
+     * @param headers    the record headers to write to
+     * @return the encoded data (empty if there is no data)
+     * @throws IllegalStateException if the CloudEvent could not be encoded
+     */
+    public static byte[] encode(MicoCloudEventImpl<JsonNode> cloudEvent, Headers headers) throws IllegalStateException {
+        return encode(cloudEvent, headers, Json.MAPPER);
+    }
+
+    /**
+     * Write the attributes of the CloudEvent into the headers and encode the data with the given mapper.
+     *
+     * @param cloudEvent the CloudEvent
+     * @param headers    the record headers to write to
+     * @param mapper     the mapper to use (e.g. {@link RouteHistoryCodec#COMPACT_MAPPER})
+     * @return the encoded data (empty if there is no data)
+     * @throws IllegalStateException if the CloudEvent could not be encoded
+     */
+    public static byte[] encode(MicoCloudEventImpl<JsonNode> cloudEvent, Headers headers, ObjectMapper mapper) throws IllegalStateException {
+        encodeAttributes(cloudEvent, headers, mapper);
+        return encodeData(cloudEvent);
+    }
+
+    /**
+     * Write the attributes of the CloudEvent into the headers with the given mapper, the data is left out.
+     *
+     * @param cloudEvent the CloudEvent
+     * @param headers    the record headers to write to
+     * @param mapper     the mapper to use (e.g. {@link RouteHistoryCodec#COMPACT_MAPPER})
+     * @throws IllegalStateException if the CloudEvent could not be encoded
+     */
+    public static void encodeAttributes(MicoCloudEventImpl<JsonNode> cloudEvent, Headers headers, ObjectMapper mapper) throws IllegalStateException {
+        ObjectNode attributes = mapper.valueToTree(cloudEvent.getData().isPresent() ? cloudEvent.toBuilder().data(null).build() : cloudEvent);
+        attributes.remove(FIELD_DATA);
+        JsonNode contentType = attributes.remove(FIELD_CONTENT_TYPE);
+        Iterator<Map.Entry<String, JsonNode>> fields = attributes.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().isNull()) {
+                setHeader(headers, HEADER_PREFIX + field.getKey(), encodeAttribute(field.getValue()));
+            }
+        }
+        if (contentType != null && !contentType.isNull()) {
+            setHeader(headers, CONTENT_TYPE_HEADER, contentType.asText().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Encode the data of the CloudEvent as record value.
+     *
+     * @param cloudEvent the CloudEvent
+     * @return the encoded data (empty if there is no data)
+     * @throws IllegalStateException if the data could not be encoded
+     */
+    public static byte[] encodeData(MicoCloudEventImpl<JsonNode> cloudEvent) throws IllegalStateException {
+        return encodeData(cloudEvent.getData().orElse(null), cloudEvent.getContentType().orElse(null));
+    }
+
+    /**
+     * Decode a CloudEvent from the record headers and value.
+     *
+     * @param headers the record headers
+     * @param value   the record value containing the data
+     * @return the decoded CloudEvent
+     * @throws IllegalStateException if the CloudEvent could not be decoded
+     */
+    public static MicoCloudEventImpl<JsonNode> decode(Headers headers, byte[] value) throws IllegalStateException {
+        ObjectNode attributes = JsonNodeFactory.instance.objectNode();
+        for (Header header : headers) {
+            if (header.key().startsWith(HEADER_PREFIX) && header.value() != null) {
+                String name = header.key().substring(HEADER_PREFIX.length());
+                attributes.set(name, decodeAttribute(name, header.value()));
+            }
+        }
+        String contentType = getContentType(headers);
+        if (contentType != null) {
+            attributes.put(FIELD_CONTENT_TYPE, contentType);
+        }
+        JsonNode data = decodeData(value, contentType);
+        if (data != null) {
+            attributes.set(FIELD_DATA, data);
+        }
+        try {
+            return Json.MAPPER.readValue(Json.MAPPER.treeAsTokens(attributes), CloudEventCodec.CLOUD_EVENT_TYPE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode a single attribute header value.
+     *
+     * @param name  the attribute name (without prefix)
+     * @param value the header value
+     * @return the attribute as json node
+     */
+    public static JsonNode decodeAttribute(String name, byte[] value) {
+        boolean extension = !DECLARED_ATTRIBUTES.contains(name);
+        if (STRUCTURED_ATTRIBUTES.contains(name) || (extension && value.length > 0 && (value[0] == '{' || value[0] == '['))) {
+            try {
+                return Json.MAPPER.readTree(value);
+            } catch (IOException e) {
+                if (STRUCTURED_ATTRIBUTES.contains(name)) {
+                    throw new IllegalStateException("Failed to decode header '" + HEADER_PREFIX + name + "': " + e.getMessage(), e);
+                }
+                // extensions that only look like json stay plain strings
+            }
+        }
+        return TextNode.valueOf(new String(value, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the content type of the data or {@code null}.
+     */
+    public static String getContentType(Headers headers) {
+        Header header = headers.lastHeader(CONTENT_TYPE_HEADER);
+        return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encodeAttribute(JsonNode value) {
+        if (value.isValueNode()) {
+            return value.asText().getBytes(StandardCharsets.UTF_8);
+        }
+        return CloudEventCodec.encode(value);
+    }
+
+    private static byte[] encodeData(JsonNode data, String contentType) {
+        if (data == null || data.isNull()) {
+            // a null value would be a tombstone
+            return EMPTY;
+        }
+        if (!isJson(contentType) && data.isTextual()) {
+            return data.textValue().getBytes(StandardCharsets.UTF_8);
+        }
+        return CloudEventCodec.encode(data);
+    }
+
+    private static JsonNode decodeData(byte[] value, String contentType) {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        if (!isJson(contentType)) {
+            return TextNode.valueOf(new String(value, StandardCharsets.UTF_8));
+        }
+        try {
+            return Json.MAPPER.readTree(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode data: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType == null || contentType.toLowerCase().contains("json");
+    }
+
+    private static void setHeader(Headers headers, String key, byte[] value) {
+        headers.remove(key);
+        headers.add(key, value);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cloudevents.json.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Byte-oriented JSON codec for CloudEvents.
+ * <p>
+ * Events are written as UTF-8 directly into a reusable per-thread buffer and read
+ * directly from the bytes, so no intermediate {@code String} is created.
+ */
+public final class CloudEventCodec {
+
+    public static final JavaType CLOUD_EVENT_TYPE = Json.MAPPER.getTypeFactory()
+        .constructType(new TypeReference<MicoCloudEventImpl<JsonNode>>() {
+        });
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Buffers that grew larger than this are not kept for the next call.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    private CloudEventCodec() {
+    }
+
+    /**
+     * Encode a value as UTF-8 JSON.
+     *
+     * @param value the value to encode
+     * @return the encoded value
+     * @throws IllegalStateException if the value could not be encoded
+     */
+    public static byte[] encode(Object value) throws IllegalStateException {
+        return encode(Json.MAPPER, value);
+    }
+
+    /**
+     * Encode a value as UTF-8 JSON with the given mapper.
+     *
+     * @param mapper the mapper to use (e.g. {@link RouteHistoryCodec#COMPACT_MAPPER})
+     * @param value  the value to encode
+     * @return the encoded value
+     * @throws IllegalStateException if the value could not be encoded
+     */
+    public static byte[] encode(ObjectMapper mapper, Object value) throws IllegalStateException {
+        ByteArrayOutputStream buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            mapper.writeValue(buffer, value);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode as JSON: " + e.getMessage(), e);
+        } finally {
+            if (buffer.size() > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * Decode a UTF-8 JSON value.
+     *
+     * @param bytes the encoded value
+     * @param type  the type of the value
+     * @return the decoded value
+     * @throws IllegalStateException if the value could not be decoded
+     */
+    public static <T> T decode(byte[] bytes, JavaType type) throws IllegalStateException {
+        try {
+            return Json.MAPPER.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode a single CloudEvent.
+     *
+     * @param bytes the UTF-8 JSON CloudEvent
+     * @return the decoded CloudEvent
+     * @throws IllegalStateException if the CloudEvent could not be decoded
+     */
+    public static MicoCloudEventImpl<JsonNode> decodeCloudEvent(byte[] bytes) throws IllegalStateException {
+        return decode(bytes, CLOUD_EVENT_TYPE);
+    }
+}
@@ -19,33 +19,59 @@
 
 package io.github.ust.mico.kafkafaasconnector.kafka;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import io.cloudevents.json.Json;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+/**
+ * Deserializes CloudEvents. The content mode (structured or binary) is detected from the record headers.
+ */
 @Slf4j
-public class CloudEventDeserializer implements Deserializer<MicoCloudEventImpl<JsonNode>> {
+public class CloudEventDeserializer implements ExtendedDeserializer<MicoCloudEventImpl<JsonNode>> {
     @Override
     public void configure(Map<String, ?> configs, boolean isKey) {
 
     }
 
+    @Override
+    public MicoCloudEventImpl<JsonNode> deserialize(String topic, Headers headers, byte[] data) {
+        if (!BinaryCloudEventCodec.isBinary(headers)) {
+            MicoCloudEventImpl<JsonNode> micoCloudEvent = deserialize(topic, data);
+            Header routeHeader = headers == null ? null : headers.lastHeader(BinaryCloudEventCodec.ROUTE_HEADER);
+            if (micoCloudEvent == null || routeHeader == null || routeHeader.value() == null) {
+                return micoCloudEvent;
+            }
+            try {
+                return micoCloudEvent.toBuilder().route(RouteHistoryCodec.decodeRoute(routeHeader.value())).build();
+            } catch (IllegalStateException e) {
+                throw new SerializationException("Could not decode the route history header", e);
+            }
+        }
+        try {
+            MicoCloudEventImpl<JsonNode> micoCloudEvent = BinaryCloudEventCodec.decode(headers, data);
+            log.debug("Deserialized binary micoCloudEvent '{}' on topic: '{}'", micoCloudEvent, topic);
+            return micoCloudEvent;
+        } catch (IllegalStateException e) {
+            throw new SerializationException("Could not create an CloudEvent message", e);
+        }
+    }
+
     @Override
     public MicoCloudEventImpl<JsonNode> deserialize(String topic, byte[] data) {
         if (data == null) {
             return null;
         }
         try {
-            String message = new String(data, StandardCharsets.UTF_8);
-            log.debug("Trying to parse the message:" + message);
-            MicoCloudEventImpl<JsonNode> micoCloudEvent = Json.decodeValue(message, new TypeReference<MicoCloudEventImpl<JsonNode>>() {
-            });
+            if (log.isDebugEnabled()) {
+                log.debug("Trying to parse the message:" + new String(data, StandardCharsets.UTF_8));
+            }
+            MicoCloudEventImpl<JsonNode> micoCloudEvent = CloudEventCodec.decodeCloudEvent(data);
             log.debug("Deserialized micoCloudEvent '{}' on topic: '{}'", micoCloudEvent.toString(), topic);
 
             if (!micoCloudEvent.getData().isPresent()) {
@@ -20,18 +20,103 @@
 package io.github.ust.mico.kafkafaasconnector.kafka;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig.ContentMode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig.RouteHistoryFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Serializes CloudEvents in the structured (default) or binary content mode.
+ * The mode is configured with {@link #CONTENT_MODE_CONFIG}.
+ * <p>
+ * The route history is written in the verbose (default) or compact encoding of the {@link RouteHistoryCodec},
+ * configured with {@link #ROUTE_HISTORY_FORMAT_CONFIG}. In the structured content mode it can be written to the
+ * {@code ce_route} header instead of the record value ({@link #ROUTE_HISTORY_HEADER_CONFIG}).
+ * <p>
+ * The copies of a cloud event for the topics of a fan-out reuse their {@link SharedEncoding}, so only their
+ * route history is encoded per topic.
+ * <p>
+ * The serializer is created by the Kafka client, so its meters are registered in the global registry.
+ */
 @Slf4j
-public class CloudEventSerializer implements Serializer<MicoCloudEventImpl<JsonNode>> {
+public class CloudEventSerializer implements ExtendedSerializer<MicoCloudEventImpl<JsonNode>> {
+
+    public static final String CONTENT_MODE_CONFIG = "mico.cloudevents.content-mode";
+    public static final String ROUTE_HISTORY_FORMAT_CONFIG = "mico.cloudevents.route-history-format";
+    public static final String ROUTE_HISTORY_HEADER_CONFIG = "mico.cloudevents.route-history-header";
+
+    private static final Timer SERIALIZATION = Timer.builder("mico.connector.serialize")
+        .description("The time needed to serialize a cloud event for kafka")
+        .register(Metrics.globalRegistry);
+
+    private static final DistributionSummary MESSAGE_SIZE = DistributionSummary.builder("mico.connector.output.size")
+        .description("The size of the serialized cloud events sent to kafka")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
+
+    private static final Counter SHARED_ENCODINGS = Counter.builder("mico.connector.serialize.shared")
+        .description("The number of cloud events serialized with the shared encoding of a fan-out")
+        .register(Metrics.globalRegistry);
+
+    private ContentMode contentMode = ContentMode.STRUCTURED;
+
+    private ObjectMapper mapper = Json.MAPPER;
+
+    private boolean routeHistoryHeader = false;
+
     @Override
     public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configuredMode = configs.get(CONTENT_MODE_CONFIG);
+        if (configuredMode != null) {
+            contentMode = ContentMode.valueOf(configuredMode.toString().toUpperCase());
+        }
+        Object configuredFormat = configs.get(ROUTE_HISTORY_FORMAT_CONFIG);
+        if (configuredFormat != null && RouteHistoryFormat.valueOf(configuredFormat.toString().toUpperCase()) == RouteHistoryFormat.COMPACT) {
+            mapper = RouteHistoryCodec.COMPACT_MAPPER;
+        }
+        Object configuredHeader = configs.get(ROUTE_HISTORY_HEADER_CONFIG);
+        if (configuredHeader != null) {
+            routeHistoryHeader = Boolean.parseBoolean(configuredHeader.toString());
+        }
+    }
 
+    @Override
+    public byte[] serialize(String topic, Headers headers, MicoCloudEventImpl<JsonNode> data) {
+        if (data == null || headers == null) {
+            return serialize(topic, data);
+        }
+        if (contentMode != ContentMode.BINARY) {
+            return routeHistoryHeader ? serializeWithRouteHeader(headers, data) : serialize(topic, data);
+        }
+        try {
+            long start = System.nanoTime();
+            SharedEncoding sharedEncoding = getSharedEncoding(data);
+            byte[] dataAsBytes;
+            if (sharedEncoding != null) {
+                BinaryCloudEventCodec.encodeAttributes(data, headers, mapper);
+                dataAsBytes = sharedEncoding.getData();
+            } else {
+                dataAsBytes = BinaryCloudEventCodec.encode(data, headers, mapper);
+            }
+            SERIALIZATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            MESSAGE_SIZE.record(dataAsBytes.length);
+            log.debug("Serializing the event:'{}' in binary content mode", data);
+            return dataAsBytes;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new SerializationException("Could not serialize the CloudEvent message", e);
+        }
     }
 
     @Override
@@ -39,11 +124,53 @@ public class CloudEventSerializer implements Serializer<MicoCloudEventImpl<JsonN
         if (data == null)
             return null;
         else {
-            String eventAsString = Json.encode(data);
-            byte[] eventAsBytes = eventAsString.getBytes(StandardCharsets.UTF_8);
-            log.debug("Serializing the event:'{}' to '{}'", data, eventAsString);
+            try {
+                long start = System.nanoTime();
+                SharedEncoding sharedEncoding = getSharedEncoding(data);
+                byte[] eventAsBytes = sharedEncoding != null ? sharedEncoding.encodeStructured(data, mapper) : CloudEventCodec.encode(mapper, data);
+                SERIALIZATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                MESSAGE_SIZE.record(eventAsBytes.length);
+                if (log.isDebugEnabled()) {
+                    log.debug("Serializing the event:'{}' to '{}'", data, new String(eventAsBytes, StandardCharsets.UTF_8));
+                }
+                return eventAsBytes;
+            } catch (IllegalStateException e) {
+                throw new SerializationException("Could not serialize the CloudEvent message", e);
+            }
+        }
+    }
+
+    private byte[] serializeWithRouteHeader(Headers headers, MicoCloudEventImpl<JsonNode> data) {
+        try {
+            long start = System.nanoTime();
+            headers.remove(BinaryCloudEventCodec.ROUTE_HEADER);
+            MicoCloudEventImpl<JsonNode> body = data;
+            if (data.getRoute().isPresent()) {
+                byte[] route = CloudEventCodec.encode(mapper, data.getRoute().get());
+                headers.add(BinaryCloudEventCodec.ROUTE_HEADER, route);
+                body = data.toBuilder().route(null).build();
+            }
+            SharedEncoding sharedEncoding = getSharedEncoding(data);
+            byte[] eventAsBytes = sharedEncoding != null ? sharedEncoding.getBodyWithoutRoute(mapper) : CloudEventCodec.encode(mapper, body);
+            SERIALIZATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            MESSAGE_SIZE.record(eventAsBytes.length);
+            log.debug("Serializing the event:'{}' with the route history in a header", data);
             return eventAsBytes;
+        } catch (IllegalStateException e) {
+            throw new SerializationException("Could not serialize the CloudEvent message", e);
+        }
+    }
+
+    /**
+     * Get the shared encoding of a fan-out copy if it can be used for the cloud event.
+     */
+    private static SharedEncoding getSharedEncoding(MicoCloudEventImpl<JsonNode> data) {
+        SharedEncoding sharedEncoding = data.getSharedEncoding();
+        if (sharedEncoding == null || !sharedEncoding.isEncodingOf(data)) {
+            return null;
         }
+        SHARED_ENCODINGS.increment();
+        return sharedEncoding;
     }
 
     @Override
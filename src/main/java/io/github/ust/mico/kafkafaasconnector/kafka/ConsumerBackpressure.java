@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Pauses the listener containers while too many records are in process.
+ * <p>
+ * The containers are paused if the number of in-flight records or their size in bytes reaches the
+ * high watermark and resumed once both are below the low watermark. Paused containers keep polling
+ * without fetching records, so the consumer stays in the group instead of exceeding
+ * {@code max.poll.interval.ms} while the FaaS function catches up.
+ * <p>
+ * The consumer is also paused while function calls wait for a permit of the concurrency limit or the circuit
+ * breaker. These calls wait on their own thread, so they do not block the consumer, and no further records are
+ * fetched until every waiting call got its permit.
+ */
+@Slf4j
+@Component
+public class ConsumerBackpressure {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer pauseTime;
+
+    private int inFlightRecords = 0;
+
+    private long inFlightBytes = 0;
+
+    private int waitingCalls = 0;
+
+    private boolean paused = false;
+
+    private long pausedSince;
+
+    @PostConstruct
+    public void init() {
+        this.pauseTime = Timer.builder("mico.connector.consumer.paused")
+            .description("The time the consumer was paused because too many records were in process")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.consumer.in.flight.records", this, ConsumerBackpressure::getInFlightRecords)
+            .description("The number of records in process")
+            .baseUnit("records")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.consumer.in.flight.bytes", this, ConsumerBackpressure::getInFlightBytes)
+            .description("The size of the records in process")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.consumer.waiting.calls", this, ConsumerBackpressure::getWaitingCalls)
+            .description("The number of function calls waiting for a permit")
+            .baseUnit("calls")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.consumer.pause.active", this, backpressure -> backpressure.isPaused() ? 1 : 0)
+            .description("Whether the consumer is paused (1) or not (0)")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Register a record before it is processed. Pauses the consumer if a high watermark is reached.
+     *
+     * @param size the size of the record in bytes
+     */
+    public synchronized void register(long size) {
+        inFlightRecords++;
+        inFlightBytes += size;
+        if (kafkaConfig.isBackpressure()
+            && (inFlightRecords >= kafkaConfig.getPauseHighWatermarkRecords() || inFlightBytes >= kafkaConfig.getPauseHighWatermarkBytes())) {
+            pause();
+        }
+    }
+
+    /**
+     * Mark a registered record as completed. Resumes the consumer if both low watermarks are undercut.
+     *
+     * @param size the size of the record in bytes
+     */
+    public synchronized void complete(long size) {
+        inFlightRecords--;
+        inFlightBytes -= size;
+        resumeIfPossible();
+    }
+
+    /**
+     * Register a function call that waits for its permit. Pauses the consumer, even if backpressure is disabled,
+     * because the call no longer blocks the thread that received its record.
+     */
+    public synchronized void registerWaitingCall() {
+        waitingCalls++;
+        pause();
+    }
+
+    /**
+     * Mark a waiting function call as started or failed. Resumes the consumer if no call waits any more
+     * and both low watermarks are undercut.
+     */
+    public synchronized void completeWaitingCall() {
+        waitingCalls--;
+        resumeIfPossible();
+    }
+
+    private void pause() {
+        if (!paused) {
+            paused = true;
+            pausedSince = System.nanoTime();
+            log.debug("Pause the consumer with {} records ({} bytes) in process and {} calls waiting.", inFlightRecords, inFlightBytes, waitingCalls);
+            getListenerContainers().forEach(MessageListenerContainer::pause);
+        }
+    }
+
+    private void resumeIfPossible() {
+        if (paused && waitingCalls == 0
+            && inFlightRecords < kafkaConfig.getPauseLowWatermarkRecords() && inFlightBytes < kafkaConfig.getPauseLowWatermarkBytes()) {
+            paused = false;
+            pauseTime.record(System.nanoTime() - pausedSince, TimeUnit.NANOSECONDS);
+            log.debug("Resume the consumer with {} records ({} bytes) in process.", inFlightRecords, inFlightBytes);
+            getListenerContainers().forEach(MessageListenerContainer::resume);
+        }
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized int getInFlightRecords() {
+        return inFlightRecords;
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getWaitingCalls() {
+        return waitingCalls;
+    }
+
+    /**
+     * Get the running listener containers. The containers of the disabled listener modes are not started.
+     */
+    private List<MessageListenerContainer> getListenerContainers() {
+        return kafkaListenerEndpointRegistry.getListenerContainers().stream()
+            .filter(MessageListenerContainer::isRunning)
+            .collect(Collectors.toList());
+    }
+}
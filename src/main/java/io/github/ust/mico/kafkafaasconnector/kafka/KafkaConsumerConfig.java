@@ -21,6 +21,7 @@ package io.github.ust.mico.kafkafaasconnector.kafka;
 
 import io.github.ust.mico.kafkafaasconnector.MessageListener;
 import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KeyOrderedExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -33,9 +34,12 @@ import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchLoggingErrorHandler;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.SeekToCurrentErrorHandler;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer2;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -45,6 +49,14 @@ import java.util.Map;
 @Slf4j
 public class KafkaConsumerConfig {
 
+    private static final long IDLE_EVENT_INTERVAL_MS = 1000;
+
+    /**
+     * A consumer paused by the {@link ConsumerBackpressure} keeps polling. The poll timeout
+     * bounds the time until a resume takes effect.
+     */
+    private static final long POLL_TIMEOUT_MS = 1000;
+
     @Autowired
     private KafkaConfig kafkaConfig;
 
@@ -64,27 +76,117 @@ public class KafkaConsumerConfig {
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
             ErrorHandlingDeserializer2.class);
         properties.put(ErrorHandlingDeserializer2.VALUE_DESERIALIZER_CLASS,
-            CloudEventDeserializer.class);
+            LazyCloudEventDeserializer.class);
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, kafkaConfig.getMaxPollRecords());
 
         return properties;
     }
 
     @Bean
-    public ConsumerFactory<String, MicoCloudEventImpl> consumerFactory() {
+    public ConsumerFactory<String, LazyCloudEvent> consumerFactory() {
         return new DefaultKafkaConsumerFactory<>(consumerConfigs());
     }
 
+    /**
+     * Consumer factory with disabled auto commit, used if the offsets are committed by the container or the listener.
+     */
     @Bean
-    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, MicoCloudEventImpl>> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, MicoCloudEventImpl> factory =
+    public ConsumerFactory<String, LazyCloudEvent> manualCommitConsumerFactory() {
+        Map<String, Object> properties = new HashMap<>(consumerConfigs());
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return new DefaultKafkaConsumerFactory<>(properties);
+    }
+
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, LazyCloudEvent>> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, LazyCloudEvent> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.setErrorHandler(new SeekToCurrentErrorHandler(1));
+        factory.getContainerProperties().setPollTimeout(POLL_TIMEOUT_MS);
         //TODO Add DeadLetterPublishingRecoverer later
         return factory;
     }
 
+    /**
+     * Container factory for the batch listener mode.
+     * <p>
+     * The listener receives the whole poll result. The offsets of a batch are
+     * committed after the listener returned, i.e. after every record of the batch was processed.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, LazyCloudEvent>> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, LazyCloudEvent> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(manualCommitConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setBatchErrorHandler(new BatchLoggingErrorHandler());
+        return factory;
+    }
+
+    /**
+     * Container factory for the key-ordered and unordered processing.
+     * <p>
+     * The listener does not wait for the records to be processed. The offsets are committed
+     * gap-aware by the {@link OffsetTracker} instead of the container.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, LazyCloudEvent>> parallelKafkaListenerContainerFactory(OffsetTracker offsetTracker) {
+        ConcurrentKafkaListenerContainerFactory<String, LazyCloudEvent> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(manualCommitConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(offsetTracker);
+        // idle events are used to commit completed offsets if no new records arrive
+        factory.getContainerProperties().setIdleEventInterval(IDLE_EVENT_INTERVAL_MS);
+        factory.getContainerProperties().setPollTimeout(POLL_TIMEOUT_MS);
+        factory.setBatchErrorHandler(new BatchLoggingErrorHandler());
+        return factory;
+    }
+
+    /**
+     * Container factory for the transactional mode.
+     * <p>
+     * The offsets are committed with the transactions of the {@link TransactionBatcher} instead of the container.
+     * Only committed messages of transactional producers are read.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, LazyCloudEvent>> transactionalKafkaListenerContainerFactory() {
+        Map<String, Object> properties = new HashMap<>(consumerConfigs());
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        ConcurrentKafkaListenerContainerFactory<String, LazyCloudEvent> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(properties));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.setBatchErrorHandler(new BatchLoggingErrorHandler());
+        return factory;
+    }
+
+    /**
+     * Runs the processing of records with the same key in order on the batch worker pool.
+     */
+    @Bean
+    public KeyOrderedExecutor keyOrderedExecutor() {
+        return new KeyOrderedExecutor(batchWorkerPool());
+    }
+
+    /**
+     * Bounded worker pool used to call the FaaS function for the records of a batch concurrently.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor batchWorkerPool() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(kafkaConfig.getBatchParallelism());
+        executor.setMaxPoolSize(kafkaConfig.getBatchParallelism());
+        executor.setThreadNamePrefix("batch-worker-");
+        return executor;
+    }
+
     @Bean
     public MessageListener receiver() {
         return new MessageListener();
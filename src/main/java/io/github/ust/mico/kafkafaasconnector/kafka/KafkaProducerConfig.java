@@ -39,10 +39,17 @@ public class KafkaProducerConfig {
     @Autowired
     private KafkaConfig kafkaConfig;
 
+    /**
+     * The producer factory for the results. It is transactional in the transactional mode.
+     */
     @Bean
     public ProducerFactory<String, MicoCloudEventImpl<JsonNode>> producerFactory() {
         Map<String, Object> configProps = putConfig();
-        return new DefaultKafkaProducerFactory<>(configProps);
+        DefaultKafkaProducerFactory<String, MicoCloudEventImpl<JsonNode>> producerFactory = new DefaultKafkaProducerFactory<>(configProps);
+        if (kafkaConfig.isTransactional()) {
+            producerFactory.setTransactionIdPrefix(kafkaConfig.getTransactionIdPrefix());
+        }
+        return producerFactory;
     }
 
     @Bean
@@ -61,6 +68,12 @@ public class KafkaProducerConfig {
         configProps.put(
             ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
             CloudEventSerializer.class);
+        configProps.put(CloudEventSerializer.CONTENT_MODE_CONFIG, kafkaConfig.getContentMode().name());
+        configProps.put(CloudEventSerializer.ROUTE_HISTORY_FORMAT_CONFIG, kafkaConfig.getRouteHistoryFormat().name());
+        configProps.put(CloudEventSerializer.ROUTE_HISTORY_HEADER_CONFIG, kafkaConfig.isRouteHistoryHeader());
+        if (kafkaConfig.isAcknowledgedSends()) {
+            configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
         return configProps;
     }
 
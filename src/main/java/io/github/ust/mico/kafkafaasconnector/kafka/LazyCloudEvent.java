@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cloudevents.json.Json;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-only view of a serialized CloudEvent.
+ * <p>
+ * In the structured content mode the raw bytes are scanned once to record where the top-level fields are.
+ * In the binary content mode the fields are read from the record headers and the bytes are not touched.
+ * Single fields (e.g. {@code expirydate}) are only decoded when they are read,
+ * so routing and filtering decisions never build the {@code data} tree.
+ * Use {@link #toCloudEvent()} to decode the whole event.
+ * <p>
+ * A route history in the {@code ce_route} header of a structured record takes precedence over the route
+ * in the record value.
+ */
+public class LazyCloudEvent {
+
+    // field names of the MicoCloudEventImpl (lower case naming strategy)
+    public static final String FIELD_ID = "id";
+    public static final String FIELD_CORRELATION_ID = "correlationid";
+    public static final String FIELD_EXPIRY_DATE = "expirydate";
+    public static final String FIELD_IS_TEST_MESSAGE = "istestmessage";
+    public static final String FIELD_FILTER_OUT_BEFORE_TOPIC = "filteroutbeforetopic";
+    public static final String FIELD_ROUTE = "route";
+    public static final String FIELD_ROUTING_SLIP = "routingslip";
+    public static final String FIELD_IS_ERROR_MESSAGE = "iserrormessage";
+    public static final String FIELD_DATA = "data";
+
+    private static final JavaType ROUTING_SLIP_TYPE = Json.MAPPER.getTypeFactory()
+        .constructType(new TypeReference<LinkedList<List<String>>>() {
+        });
+
+    private final byte[] bytes;
+
+    /**
+     * Start and length of the value of each top-level field (structured content mode).
+     */
+    private final Map<String, int[]> fieldIndex;
+
+    /**
+     * The record headers holding the fields (binary content mode).
+     */
+    private final Headers headers;
+
+    /**
+     * The route history header of a record in the structured content mode or {@code null}.
+     */
+    private final byte[] routeHeader;
+
+    /**
+     * The already decoded field values.
+     */
+    private final Map<String, Optional<?>> decodedFields = new HashMap<>();
+
+    private LazyCloudEvent(byte[] bytes, Map<String, int[]> fieldIndex, Headers headers, byte[] routeHeader) {
+        this.bytes = bytes;
+        this.fieldIndex = fieldIndex;
+        this.headers = headers;
+        this.routeHeader = routeHeader;
+    }
+
+    /**
+     * Create a lazy CloudEvent from a record in binary content mode.
+     *
+     * @param headers the record headers holding the attributes
+     * @param data    the record value holding the data
+     * @return the lazy CloudEvent
+     */
+    public static LazyCloudEvent fromBinary(Headers headers, byte[] data) {
+        return new LazyCloudEvent(data, null, headers, null);
+    }
+
+    /**
+     * Scan the serialized CloudEvent and index its top-level fields.
+     * <p>
+     * The scan checks that the bytes contain a single well-formed JSON object,
+     * but does not build any objects for the field values.
+     *
+     * @param bytes the UTF-8 encoded JSON CloudEvent
+     * @return the lazy CloudEvent
+     * @throws IOException if the bytes are no well-formed JSON object
+     */
+    public static LazyCloudEvent parse(byte[] bytes) throws IOException {
+        return parse(bytes, null);
+    }
+
+    /**
+     * Scan the serialized CloudEvent of a record in the structured content mode and index its top-level fields.
+     *
+     * @param bytes   the UTF-8 encoded JSON CloudEvent
+     * @param headers the record headers, may hold the route history
+     * @return the lazy CloudEvent
+     * @throws IOException if the bytes are no well-formed JSON object
+     */
+    public static LazyCloudEvent parse(byte[] bytes, Headers headers) throws IOException {
+        Map<String, int[]> fieldIndex = new HashMap<>();
+        try (JsonParser parser = Json.MAPPER.getFactory().createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object as CloudEvent");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                int start = (int) parser.getTokenLocation().getByteOffset();
+                if (parser.currentToken().isStructStart()) {
+                    parser.skipChildren();
+                } else {
+                    // scalar values (e.g. strings) are parsed lazily by jackson
+                    parser.finishToken();
+                }
+                int end = (int) parser.getCurrentLocation().getByteOffset();
+                fieldIndex.put(name, new int[]{start, end - start});
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the CloudEvent");
+            }
+        }
+        Header route = headers == null ? null : headers.lastHeader(BinaryCloudEventCodec.ROUTE_HEADER);
+        return new LazyCloudEvent(bytes, fieldIndex, null, route == null ? null : route.value());
+    }
+
+    /**
+     * Decode the whole CloudEvent.
+     *
+     * @return the decoded CloudEvent
+     * @throws IllegalStateException if the CloudEvent could not be decoded
+     */
+    public MicoCloudEventImpl<JsonNode> toCloudEvent() throws IllegalStateException {
+        if (isBinary()) {
+            return BinaryCloudEventCodec.decode(headers, bytes);
+        }
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventCodec.decodeCloudEvent(bytes);
+        if (routeHeader != null) {
+            return cloudEvent.toBuilder().route(RouteHistoryCodec.decodeRoute(routeHeader)).build();
+        }
+        return cloudEvent;
+    }
+
+    /**
+     * Checks if the CloudEvent was received in binary content mode.
+     */
+    public boolean isBinary() {
+        return headers != null;
+    }
+
+    /**
+     * Get the serialized CloudEvent (structured content mode) or the serialized data (binary content mode).
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Checks if the CloudEvent has a top-level field with the given name.
+     */
+    public boolean hasField(String name) {
+        if (isBinary()) {
+            return FIELD_DATA.equals(name) ? bytes.length > 0 : headers.lastHeader(BinaryCloudEventCodec.HEADER_PREFIX + name) != null;
+        }
+        return fieldIndex.containsKey(name) || (FIELD_ROUTE.equals(name) && routeHeader != null);
+    }
+
+    public String getId() {
+        return readField(FIELD_ID, String.class).orElse(null);
+    }
+
+    public Optional<String> getCorrelationId() {
+        return readField(FIELD_CORRELATION_ID, String.class);
+    }
+
+    public Optional<ZonedDateTime> getExpiryDate() {
+        return readField(FIELD_EXPIRY_DATE, ZonedDateTime.class);
+    }
+
+    public Optional<Boolean> isTestMessage() {
+        return readField(FIELD_IS_TEST_MESSAGE, Boolean.class);
+    }
+
+    public Optional<String> getFilterOutBeforeTopic() {
+        return readField(FIELD_FILTER_OUT_BEFORE_TOPIC, String.class);
+    }
+
+    public Optional<LinkedList<List<String>>> getRoutingSlip() {
+        return readField(FIELD_ROUTING_SLIP, ROUTING_SLIP_TYPE);
+    }
+
+    public Optional<Boolean> isErrorMessage() {
+        return readField(FIELD_IS_ERROR_MESSAGE, Boolean.class);
+    }
+
+    /**
+     * Decode a single top-level field.
+     *
+     * @param name the name of the field
+     * @param type the type of the field value
+     * @return the field value or an empty optional if the field is missing or null
+     * @throws IllegalStateException if the field could not be decoded
+     */
+    public <T> Optional<T> readField(String name, Class<T> type) throws IllegalStateException {
+        return readField(name, Json.MAPPER.getTypeFactory().constructType(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Optional<T> readField(String name, JavaType type) throws IllegalStateException {
+        Optional<?> decoded = decodedFields.get(name);
+        if (decoded != null) {
+            return (Optional<T>) decoded;
+        }
+        Optional<T> value = Optional.empty();
+        if (isBinary()) {
+            value = readHeader(name, type);
+        } else if (FIELD_ROUTE.equals(name) && routeHeader != null) {
+            try {
+                value = Optional.ofNullable(Json.MAPPER.readValue(routeHeader, type));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decode header '" + BinaryCloudEventCodec.ROUTE_HEADER + "': " + e.getMessage(), e);
+            }
+        } else if (fieldIndex.containsKey(name)) {
+            int[] range = fieldIndex.get(name);
+            try {
+                value = Optional.ofNullable(Json.MAPPER.readValue(bytes, range[0], range[1], type));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decode field '" + name + "': " + e.getMessage(), e);
+            }
+        }
+        decodedFields.put(name, value);
+        return value;
+    }
+
+    private <T> Optional<T> readHeader(String name, JavaType type) throws IllegalStateException {
+        Header header = headers.lastHeader(BinaryCloudEventCodec.HEADER_PREFIX + name);
+        if (header == null || header.value() == null) {
+            return Optional.empty();
+        }
+        JsonNode node = BinaryCloudEventCodec.decodeAttribute(name, header.value());
+        try {
+            return Optional.ofNullable(Json.MAPPER.readValue(Json.MAPPER.treeAsTokens(node), type));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode header '" + header.key() + "': " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyCloudEvent(id=" + getId() + ", size=" + bytes.length + ", binary=" + isBinary() + ")";
+    }
+}
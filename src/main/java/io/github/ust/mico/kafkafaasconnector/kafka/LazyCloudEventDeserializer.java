@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserializes records into a {@link LazyCloudEvent} that only indexes the top-level fields.
+ * Records in binary content mode are detected by their headers.
+ * <p>
+ * The deserializer is created by the Kafka client, so its meters are registered in the global registry.
+ */
+@Slf4j
+public class LazyCloudEventDeserializer implements ExtendedDeserializer<LazyCloudEvent> {
+
+    private static final Timer DESERIALIZATION = Timer.builder("mico.connector.deserialize")
+        .description("The time needed to index a cloud event received from kafka")
+        .register(Metrics.globalRegistry);
+
+    private static final DistributionSummary MESSAGE_SIZE = DistributionSummary.builder("mico.connector.input.size")
+        .description("The size of the serialized cloud events received from kafka")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+
+    }
+
+    @Override
+    public LazyCloudEvent deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!BinaryCloudEventCodec.isBinary(headers)) {
+            return parse(topic, headers, data);
+        }
+        long start = System.nanoTime();
+        LazyCloudEvent cloudEvent = LazyCloudEvent.fromBinary(headers, data);
+        DESERIALIZATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        MESSAGE_SIZE.record(data.length);
+        log.debug("Deserialized lazy CloudEvent '{}' on topic: '{}'", cloudEvent, topic);
+        return cloudEvent;
+    }
+
+    @Override
+    public LazyCloudEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return parse(topic, null, data);
+    }
+
+    private LazyCloudEvent parse(String topic, Headers headers, byte[] data) {
+        try {
+            long start = System.nanoTime();
+            LazyCloudEvent cloudEvent = LazyCloudEvent.parse(data, headers);
+            DESERIALIZATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            MESSAGE_SIZE.record(data.length);
+            log.debug("Deserialized lazy CloudEvent '{}' on topic: '{}'", cloudEvent, topic);
+            return cloudEvent;
+        } catch (IOException | IllegalStateException e) {
+            throw new SerializationException("Could not create an CloudEvent message", e);
+        }
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
@@ -21,20 +21,25 @@ package io.github.ust.mico.kafkafaasconnector.kafka;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 import io.cloudevents.CloudEvent;
 import io.cloudevents.Extension;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-import lombok.experimental.Accessors;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
 import java.net.URI;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,23 +49,34 @@ import java.util.UUID;
 
 
 /**
+ * Immutable cloud event. Use {@link #builder()} to create and {@link #toBuilder()} to modify a cloud event.
+ * <p>
+ * The {@code route} and the {@code routingSlip} are {@link PersistentList}s, so adding a routing step or
+ * removing the next destinations shares the lists of the original cloud event instead of copying them.
+ * Cloud events can therefore be passed between threads and sent to several topics without copies.
+ * The {@code data} is not copied either and must not be modified.
+ * <p>
  * For more information read https://mico-docs.readthedocs.io/en/latest/messaging/cloudevents.html
  */
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
-@Accessors(chain = true)
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@lombok.Builder(toBuilder = true, builderClassName = "Builder")
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 @JsonDeserialize(as = MicoCloudEventImpl.class)
 @JsonNaming(value = PropertyNamingStrategy.LowerCaseStrategy.class)
-public class MicoCloudEventImpl<T> implements CloudEvent<T> {
+public final class MicoCloudEventImpl<T> implements CloudEvent<T> {
 
     protected static final String SPEC_VERSION = "0.2";
 
+    // the fields are only written by the constructors and by Jackson while deserializing
+
     //mandatory
     private String id;
     private URI source;
     private String type;
-    private String specVersion = SPEC_VERSION;
+    private String specVersion;
 
 
     //Optional
@@ -69,12 +85,13 @@ public class MicoCloudEventImpl<T> implements CloudEvent<T> {
     private String contentType;
     private T data;
     @JsonIgnore
-    private Map<String, JsonNode> extensionsMap = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private Map<String, JsonNode> extensionsMap;
 
     private String correlationId;
     private String createdFrom;
-    private List<RouteHistory> route;
-    private LinkedList<List<String>> routingSlip;
+    private PersistentList<RouteHistory> route;
+    private PersistentList<List<String>> routingSlip;
     private Boolean isTestMessage;
     private String filterOutBeforeTopic;
     private Boolean isErrorMessage;
@@ -89,67 +106,43 @@ public class MicoCloudEventImpl<T> implements CloudEvent<T> {
     private String subject;
 
     /**
-     * Copy constructor providing a shallow copy of the cloud event.
-     *
-     * @param cloudEvent the event to copy
+     * The encoding shared with the copies of this cloud event for the other topics of a fan-out, see {@link SharedEncoding}.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private transient SharedEncoding sharedEncoding;
+
+    /**
+     * Create an empty cloud event for Jackson with the same defaults as the {@link Builder}.
      */
-    public MicoCloudEventImpl(MicoCloudEventImpl<T> cloudEvent) {
-        this(
-            cloudEvent.id,
-            cloudEvent.source,
-            cloudEvent.type,
-            cloudEvent.specVersion,
-            cloudEvent.time,
-            cloudEvent.schemaURL,
-            cloudEvent.contentType,
-            cloudEvent.data,
-            cloudEvent.extensionsMap,
-            cloudEvent.correlationId,
-            cloudEvent.createdFrom,
-            cloudEvent.route,
-            cloudEvent.routingSlip,
-            cloudEvent.isTestMessage,
-            cloudEvent.filterOutBeforeTopic,
-            cloudEvent.isErrorMessage,
-            cloudEvent.errorMessage,
-            cloudEvent.errorTrace,
-            cloudEvent.expiryDate,
-            cloudEvent.sequenceId,
-            cloudEvent.sequenceNumber,
-            cloudEvent.sequenceSize,
-            cloudEvent.returnTopic,
-            cloudEvent.dataRef,
-            cloudEvent.subject
-        );
-    }
-
-    public MicoCloudEventImpl<T> setRandomId() {
-        id = UUID.randomUUID().toString();
-        return this;
-    }
-
-
-    public MicoCloudEventImpl<T> setBaseCloudEvent(MicoCloudEventImpl<T> cloudEvent) {
-        id = cloudEvent.getId();
-        specVersion = cloudEvent.getSpecVersion();
-        source = cloudEvent.getSource();
-        type = cloudEvent.getType();
-        data = cloudEvent.getData().orElse(null);
-        contentType = cloudEvent.getContentType().orElse(null);
-        schemaURL = cloudEvent.getSchemaURL().orElse(null);
-        extensionsMap = cloudEvent.getExtensionsAsMap().orElse(new HashMap<String, JsonNode>());
-        time = cloudEvent.getTime().orElse(null);
-        return this;
+    private MicoCloudEventImpl() {
+        Builder<T> defaults = new Builder<>();
+        this.specVersion = defaults.specVersion;
+        this.extensionsMap = defaults.extensionsMap;
+    }
+
+    @JsonSetter("route")
+    private void deserializeRoute(List<RouteHistory> route) {
+        this.route = route == null ? null : PersistentList.copyOf(route);
+    }
+
+    @JsonSetter("routingslip")
+    private void deserializeRoutingSlip(List<List<String>> routingSlip) {
+        this.routingSlip = Builder.toRoutingSlip(routingSlip);
     }
 
     @JsonAnySetter
-    public void setExtension(String key, JsonNode value) {
+    private void deserializeExtension(String key, JsonNode value) {
+        if (!(extensionsMap instanceof HashMap)) {
+            extensionsMap = new HashMap<>(extensionsMap);
+        }
         extensionsMap.put(key, value);
     }
 
     @JsonAnyGetter
     public Map<String, JsonNode> getExtensionsForSerializer() {
-        return extensionsMap;
+        return Collections.unmodifiableMap(extensionsMap);
     }
 
     public Optional<ZonedDateTime> getTime() {
@@ -170,7 +163,7 @@ public class MicoCloudEventImpl<T> implements CloudEvent<T> {
 
     @JsonIgnore
     public Optional<Map<String, JsonNode>> getExtensionsAsMap() {
-        return Optional.ofNullable(extensionsMap);
+        return Optional.of(Collections.unmodifiableMap(extensionsMap));
     }
 
     /**
@@ -195,11 +188,14 @@ public class MicoCloudEventImpl<T> implements CloudEvent<T> {
         return Optional.ofNullable(createdFrom);
     }
 
-    public Optional<List<RouteHistory>> getRoute() {
+    public Optional<PersistentList<RouteHistory>> getRoute() {
         return Optional.ofNullable(route);
     }
 
-    public Optional<LinkedList<List<String>>> getRoutingSlip() {
+    /**
+     * Get the routing slip. The last element contains the next destinations.
+     */
+    public Optional<PersistentList<List<String>>> getRoutingSlip() {
         return Optional.ofNullable(routingSlip);
     }
 
@@ -250,4 +246,97 @@ public class MicoCloudEventImpl<T> implements CloudEvent<T> {
     public Optional<String> getSubject() {
         return Optional.ofNullable(subject);
     }
+
+    SharedEncoding getSharedEncoding() {
+        return sharedEncoding;
+    }
+
+    /**
+     * Checks if the other cloud event has the same attributes and data except for the route history.
+     * The attributes are compared by identity, which holds for copies made with {@link #toBuilder()}.
+     */
+    boolean differsOnlyInRoute(MicoCloudEventImpl<?> other) {
+        return id == other.id && source == other.source && type == other.type && specVersion == other.specVersion
+            && time == other.time && schemaURL == other.schemaURL && contentType == other.contentType && data == other.data
+            && extensionsMap == other.extensionsMap && correlationId == other.correlationId && createdFrom == other.createdFrom
+            && routingSlip == other.routingSlip && isTestMessage == other.isTestMessage
+            && filterOutBeforeTopic == other.filterOutBeforeTopic && isErrorMessage == other.isErrorMessage
+            && errorMessage == other.errorMessage && errorTrace == other.errorTrace && expiryDate == other.expiryDate
+            && sequenceId == other.sequenceId && sequenceNumber == other.sequenceNumber && sequenceSize == other.sequenceSize
+            && returnTopic == other.returnTopic && dataRef == other.dataRef && subject == other.subject;
+    }
+
+    /**
+     * Builder for cloud events. Builders are not thread-safe, the built cloud events are.
+     */
+    public static class Builder<T> {
+
+        private String specVersion = SPEC_VERSION;
+
+        private Map<String, JsonNode> extensionsMap = Collections.emptyMap();
+
+        /**
+         * Set a random id.
+         */
+        public Builder<T> randomId() {
+            this.id = UUID.randomUUID().toString();
+            return this;
+        }
+
+        /**
+         * Set the route history. The list is shared if it is a {@code PersistentList} and copied otherwise.
+         */
+        public Builder<T> route(List<RouteHistory> route) {
+            this.route = route == null ? null : PersistentList.copyOf(route);
+            return this;
+        }
+
+        /**
+         * Add a step to the route history.
+         */
+        public Builder<T> addRoute(RouteHistory step) {
+            this.route = (this.route == null ? PersistentList.<RouteHistory>empty() : this.route).append(step);
+            return this;
+        }
+
+        /**
+         * Set the routing slip. The list is shared if it is a {@code PersistentList}, otherwise it and its
+         * destination lists are copied.
+         */
+        public Builder<T> routingSlip(List<List<String>> routingSlip) {
+            this.routingSlip = toRoutingSlip(routingSlip);
+            return this;
+        }
+
+        /**
+         * Set the extensions. The map is copied.
+         */
+        public Builder<T> extensionsMap(Map<String, JsonNode> extensionsMap) {
+            this.extensionsMap = extensionsMap == null || extensionsMap.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(extensionsMap));
+            return this;
+        }
+
+        /**
+         * Add an extension.
+         */
+        public Builder<T> extension(String key, JsonNode value) {
+            Map<String, JsonNode> extensions = new HashMap<>(this.extensionsMap);
+            extensions.put(key, value);
+            this.extensionsMap = Collections.unmodifiableMap(extensions);
+            return this;
+        }
+
+        private static PersistentList<List<String>> toRoutingSlip(List<List<String>> routingSlip) {
+            if (routingSlip == null || routingSlip instanceof PersistentList) {
+                return (PersistentList<List<String>>) routingSlip;
+            }
+            PersistentList<List<String>> copy = PersistentList.empty();
+            for (List<String> destinations : routingSlip) {
+                copy = copy.append(Collections.unmodifiableList(new ArrayList<>(destinations)));
+            }
+            return copy;
+        }
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the records that are processed out of order and commits the offsets gap-aware.
+ * <p>
+ * The committed offset of a partition is the lowest offset that is not completed yet,
+ * so a crash never skips a record. All commits are done on the consumer thread.
+ */
+@Slf4j
+@Component
+public class OffsetTracker implements ConsumerAwareRebalanceListener {
+
+    /**
+     * Maximum time to wait for pending records of revoked partitions.
+     */
+    private static final long REVOKE_TIMEOUT_MS = 10000;
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+    private final Object pendingLock = new Object();
+
+    private int pendingRecords = 0;
+
+    /**
+     * Register a record before it is processed.
+     *
+     * @param record the record
+     */
+    public void register(ConsumerRecord<?, ?> record) {
+        TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        partitions.computeIfAbsent(topicPartition, key -> new PartitionOffsets()).register(record.offset());
+        synchronized (pendingLock) {
+            pendingRecords++;
+        }
+    }
+
+    /**
+     * Mark a registered record as completed.
+     *
+     * @param record the record
+     */
+    public void complete(ConsumerRecord<?, ?> record) {
+        PartitionOffsets offsets = partitions.get(new TopicPartition(record.topic(), record.partition()));
+        if (offsets == null || !offsets.complete(record.offset())) {
+            // partition was revoked in the meantime
+            return;
+        }
+        synchronized (pendingLock) {
+            pendingRecords--;
+            pendingLock.notifyAll();
+        }
+    }
+
+    /**
+     * Get the number of registered records that are not completed yet.
+     */
+    public int getPendingRecords() {
+        synchronized (pendingLock) {
+            return pendingRecords;
+        }
+    }
+
+    /**
+     * Wait until less than {@code limit} records are pending.
+     *
+     * @param limit     the maximum number of pending records
+     * @param timeoutMs the maximum time to wait
+     * @return {@code true} if less than {@code limit} records are pending
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitPendingBelow(int limit, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (pendingLock) {
+            while (pendingRecords >= limit) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                pendingLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Commit the offsets of all completed records without gaps. Must be called on the consumer thread.
+     *
+     * @param consumer the consumer owning the partitions
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = getCommittableOffsets(consumer.assignment());
+        if (!offsets.isEmpty()) {
+            log.debug("Commit offsets '{}'", offsets);
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.error("Failed to commit offsets '{}'. Caused by: {}", committed, exception.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the offsets that can be committed for the given partitions.
+     * Only partitions with progress since the last call are returned.
+     *
+     * @param assignment the partitions to commit
+     * @return the offsets to commit
+     */
+    public Map<TopicPartition, OffsetAndMetadata> getCommittableOffsets(Collection<TopicPartition> assignment) {
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+        for (TopicPartition topicPartition : assignment) {
+            PartitionOffsets offsets = partitions.get(topicPartition);
+            if (offsets != null) {
+                long offset = offsets.nextCommittableOffset();
+                if (offset >= 0) {
+                    committable.put(topicPartition, new OffsetAndMetadata(offset));
+                }
+            }
+        }
+        return committable;
+    }
+
+    /**
+     * Commit the offsets of revoked partitions after waiting (bounded) for their pending records.
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        long deadline = System.currentTimeMillis() + REVOKE_TIMEOUT_MS;
+        for (TopicPartition topicPartition : revoked) {
+            PartitionOffsets offsets = partitions.get(topicPartition);
+            if (offsets != null && !offsets.awaitCompletion(deadline)) {
+                log.warn("Pending records of revoked partition '{}' did not complete in time. They will be redelivered.", topicPartition);
+            }
+        }
+        Map<TopicPartition, OffsetAndMetadata> committable = getCommittableOffsets(revoked);
+        if (!committable.isEmpty()) {
+            try {
+                consumer.commitSync(committable);
+            } catch (RuntimeException e) {
+                log.error("Failed to commit offsets '{}' of revoked partitions. Caused by: {}", committable, e.getMessage());
+            }
+        }
+        forget(revoked);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+        // drop stale state from a previous assignment
+        forget(assigned);
+    }
+
+    /**
+     * Commit the completed offsets while the container is idle.
+     * Idle events are published on the consumer thread.
+     */
+    @EventListener
+    public void onIdleContainer(ListenerContainerIdleEvent event) {
+        if (!partitions.isEmpty()) {
+            commit(event.getConsumer());
+        }
+    }
+
+    private void forget(Collection<TopicPartition> topicPartitions) {
+        for (TopicPartition topicPartition : topicPartitions) {
+            PartitionOffsets offsets = partitions.remove(topicPartition);
+            if (offsets != null) {
+                int dropped = offsets.pendingCount();
+                synchronized (pendingLock) {
+                    pendingRecords -= dropped;
+                    pendingLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * The pending offsets of a single partition.
+     */
+    private static class PartitionOffsets {
+
+        private final TreeSet<Long> pending = new TreeSet<>();
+
+        private long nextOffset = -1;
+
+        private long lastCommitted = -1;
+
+        synchronized void register(long offset) {
+            pending.add(offset);
+            nextOffset = Math.max(nextOffset, offset + 1);
+        }
+
+        synchronized boolean complete(long offset) {
+            boolean removed = pending.remove(offset);
+            if (pending.isEmpty()) {
+                notifyAll();
+            }
+            return removed;
+        }
+
+        synchronized int pendingCount() {
+            return pending.size();
+        }
+
+        /**
+         * @return the lowest offset not completed yet or -1 if there was no progress since the last call
+         */
+        synchronized long nextCommittableOffset() {
+            long offset = pending.isEmpty() ? nextOffset : pending.first();
+            if (offset <= lastCommitted) {
+                return -1;
+            }
+            lastCommitted = offset;
+            return offset;
+        }
+
+        synchronized boolean awaitCompletion(long deadline) {
+            while (!pending.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable list that shares its structure with the lists it was derived from.
+ * <p>
+ * Every list only stores its last element and a reference to the list without it. Appending an
+ * element ({@link #append(Object)}) or dropping the last one ({@link #removeLast()}) returns a new list
+ * in constant time without copying, so the route history and the routing slip of a cloud event
+ * can be updated per hop and shared between threads and fan-out copies.
+ * Indexed access is linear, iterating the whole list is linear as well.
+ *
+ * @param <E> the element type
+ */
+public final class PersistentList<E> extends AbstractList<E> {
+
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null, null, 0);
+
+    /**
+     * The list without the last element or {@code null} for the empty list.
+     */
+    private final PersistentList<E> init;
+
+    private final E last;
+
+    private final int size;
+
+    private PersistentList(PersistentList<E> init, E last, int size) {
+        this.init = init;
+        this.last = last;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty list.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    /**
+     * Create a list with the given elements.
+     */
+    @SafeVarargs
+    public static <E> PersistentList<E> of(E... elements) {
+        return copyOf(Arrays.asList(elements));
+    }
+
+    /**
+     * Create a list with the elements of the given collection.
+     * A {@code PersistentList} is returned as is.
+     *
+     * @param elements the elements in list order
+     * @return the list
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> copyOf(Collection<? extends E> elements) {
+        if (elements instanceof PersistentList) {
+            return (PersistentList<E>) elements;
+        }
+        PersistentList<E> list = empty();
+        for (E element : elements) {
+            list = list.append(element);
+        }
+        return list;
+    }
+
+    /**
+     * Get a list with the element added at the end.
+     */
+    public PersistentList<E> append(E element) {
+        return new PersistentList<>(this, element, size + 1);
+    }
+
+    /**
+     * Get the list without the last element.
+     *
+     * @throws NoSuchElementException if the list is empty
+     */
+    public PersistentList<E> removeLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return init;
+    }
+
+    /**
+     * Get the last element.
+     *
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E getLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return last;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        PersistentList<E> list = this;
+        for (int i = size - 1; i > index; i--) {
+            list = list.init;
+        }
+        return list.last;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return Collections.unmodifiableList(Arrays.asList(toArrayInOrder())).listIterator(index);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArrayInOrder();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] toArrayInOrder() {
+        Object[] elements = new Object[size];
+        PersistentList<E> list = this;
+        for (int i = size - 1; i >= 0; i--) {
+            elements[i] = list.last;
+            list = list.init;
+        }
+        return (E[]) elements;
+    }
+}
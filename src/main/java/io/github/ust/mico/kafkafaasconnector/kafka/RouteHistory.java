@@ -22,20 +22,34 @@ package io.github.ust.mico.kafkafaasconnector.kafka;
 import java.time.ZonedDateTime;
 import java.util.Optional;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-import lombok.experimental.Accessors;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
-@Data
-@NoArgsConstructor
+/**
+ * Immutable routing step. Routing steps are shared by the route histories of several cloud events.
+ * <p>
+ * See {@link RouteHistoryCodec} for the JSON encodings.
+ */
+@EqualsAndHashCode
+@ToString
 @AllArgsConstructor
-@Accessors(chain = true)
-@JsonDeserialize(as = RouteHistory.class)
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+@JsonDeserialize(using = RouteHistoryCodec.Deserializer.class)
 public class RouteHistory {
 
+    public static final String TYPE_TOPIC = "topic";
+    public static final String TYPE_FAAS_FUNCTION = "faas-function";
+
+    /**
+     * Type of the step that replaces the oldest steps of a capped route history.
+     * Its id is the number of replaced steps and its timestamp the timestamp of the oldest replaced step.
+     */
+    public static final String TYPE_SUMMARY = "summary";
+
     private String type;
     private String id;
     private ZonedDateTime timestamp;
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import io.cloudevents.json.Json;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON encodings of the route history.
+ * <p>
+ * The verbose encoding writes every routing step as object with an ISO-8601 timestamp, e.g.
+ * {@code {"type":"topic","id":"input","timestamp":"2019-10-16T10:00:00.123Z"}}.
+ * The compact encoding writes it as array of the type code, the id and the timestamp in epoch
+ * milliseconds, e.g. {@code ["t","input",1571220000123]}. The known types are written as single
+ * letter codes, other types are written as they are.
+ * <p>
+ * Both encodings are always accepted when reading. The known types are replaced with shared
+ * constants while reading, so long route histories do not hold a copy of the type per step.
+ */
+public final class RouteHistoryCodec {
+
+    public static final JavaType ROUTE_TYPE = Json.MAPPER.getTypeFactory()
+        .constructType(new TypeReference<List<RouteHistory>>() {
+        });
+
+    /**
+     * Mapper that writes the route history in the compact encoding and everything else like {@link Json#MAPPER}.
+     */
+    public static final ObjectMapper COMPACT_MAPPER = Json.MAPPER.copy()
+        .registerModule(new SimpleModule("compact-route-history").addSerializer(RouteHistory.class, new CompactSerializer()));
+
+    private static final Map<String, String> TYPE_CODES;
+
+    /**
+     * Maps the type codes and the types themselves to the shared type constants.
+     */
+    private static final Map<String, String> TYPES;
+
+    static {
+        Map<String, String> typeCodes = new HashMap<>();
+        typeCodes.put(RouteHistory.TYPE_TOPIC, "t");
+        typeCodes.put(RouteHistory.TYPE_FAAS_FUNCTION, "f");
+        typeCodes.put(RouteHistory.TYPE_SUMMARY, "s");
+        Map<String, String> types = new HashMap<>();
+        typeCodes.forEach((type, code) -> {
+            types.put(type, type);
+            types.put(code, type);
+        });
+        TYPE_CODES = Collections.unmodifiableMap(typeCodes);
+        TYPES = Collections.unmodifiableMap(types);
+    }
+
+    private RouteHistoryCodec() {
+    }
+
+    /**
+     * Get the code of a routing step type for the compact encoding.
+     */
+    public static String encodeType(String type) {
+        return type == null ? null : TYPE_CODES.getOrDefault(type, type);
+    }
+
+    /**
+     * Get the routing step type of a type code or type. Known types are returned as shared constants.
+     */
+    public static String decodeType(String code) {
+        return code == null ? null : TYPES.getOrDefault(code, code);
+    }
+
+    /**
+     * Decode a route history in the verbose or the compact encoding.
+     *
+     * @param bytes the UTF-8 JSON array of routing steps
+     * @return the route history
+     * @throws IllegalStateException if the route history could not be decoded
+     */
+    public static List<RouteHistory> decodeRoute(byte[] bytes) throws IllegalStateException {
+        return CloudEventCodec.decode(bytes, ROUTE_TYPE);
+    }
+
+    /**
+     * Writes a routing step in the compact encoding.
+     */
+    public static class CompactSerializer extends StdSerializer<RouteHistory> {
+
+        public CompactSerializer() {
+            super(RouteHistory.class);
+        }
+
+        @Override
+        public void serialize(RouteHistory value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray();
+            String type = value.getType().orElse(null);
+            if (type == null) {
+                gen.writeNull();
+            } else {
+                gen.writeString(encodeType(type));
+            }
+            String id = value.getId().orElse(null);
+            if (id == null) {
+                gen.writeNull();
+            } else {
+                gen.writeString(id);
+            }
+            ZonedDateTime timestamp = value.getTimestamp().orElse(null);
+            if (timestamp == null) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(timestamp.toInstant().toEpochMilli());
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    /**
+     * Reads a routing step in the verbose or the compact encoding.
+     */
+    public static class Deserializer extends StdDeserializer<RouteHistory> {
+
+        public Deserializer() {
+            super(RouteHistory.class);
+        }
+
+        @Override
+        public RouteHistory deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() == JsonToken.START_ARRAY) {
+                return deserializeCompact(p, ctxt);
+            }
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                return (RouteHistory) ctxt.handleUnexpectedToken(RouteHistory.class, p);
+            }
+            String type = null;
+            String id = null;
+            ZonedDateTime timestamp = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                switch (name) {
+                    case "type":
+                        type = decodeType(p.getValueAsString());
+                        break;
+                    case "id":
+                        id = p.getValueAsString();
+                        break;
+                    case "timestamp":
+                        timestamp = readTimestamp(p, ctxt);
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            return new RouteHistory(type, id, timestamp);
+        }
+
+        private RouteHistory deserializeCompact(JsonParser p, DeserializationContext ctxt) throws IOException {
+            p.nextToken();
+            String type = decodeType(p.getValueAsString());
+            p.nextToken();
+            String id = p.getValueAsString();
+            p.nextToken();
+            ZonedDateTime timestamp = readTimestamp(p, ctxt);
+            if (p.nextToken() != JsonToken.END_ARRAY) {
+                return (RouteHistory) ctxt.handleUnexpectedToken(RouteHistory.class, p);
+            }
+            return new RouteHistory(type, id, timestamp);
+        }
+
+        private static ZonedDateTime readTimestamp(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (p.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+                return Instant.ofEpochMilli(p.getLongValue()).atZone(ZoneOffset.UTC);
+            }
+            return ctxt.readValue(p, ZonedDateTime.class);
+        }
+    }
+}
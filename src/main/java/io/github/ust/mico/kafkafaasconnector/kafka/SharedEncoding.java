@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The encoding of a cloud event that is sent to several topics of a routing slip step.
+ * <p>
+ * The copies for the topics only differ in the route history, so everything else (including the data)
+ * is encoded once and shared. The {@link CloudEventSerializer} only encodes the route history of each copy
+ * and splices it into the shared encoding, so the cost of a fan-out grows with the size of the route history
+ * and the headers instead of the size of the data. Encodings are created lazily per mapper and are thread-safe.
+ */
+public final class SharedEncoding {
+
+    private static final byte[] ROUTE_FIELD = ("{\"" + LazyCloudEvent.FIELD_ROUTE + "\":").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Mappers that leave out the route history, by the mapper they are derived from.
+     */
+    private static final Map<ObjectMapper, ObjectMapper> MAPPERS_WITHOUT_ROUTE = new ConcurrentHashMap<>();
+
+    private final MicoCloudEventImpl<JsonNode> cloudEvent;
+
+    private final Map<ObjectMapper, byte[]> bodies = new ConcurrentHashMap<>();
+
+    private volatile byte[] data;
+
+    /**
+     * @param cloudEvent the cloud event shared by all topics (the route history is ignored)
+     */
+    public SharedEncoding(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        this.cloudEvent = cloudEvent;
+    }
+
+    /**
+     * Checks if the shared encoding can be used for the cloud event, i.e. it only differs in the route history.
+     */
+    public boolean isEncodingOf(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        return this.cloudEvent.differsOnlyInRoute(cloudEvent);
+    }
+
+    /**
+     * Get the structured encoding of the cloud event without the route history.
+     *
+     * @param mapper the mapper to use (e.g. {@link RouteHistoryCodec#COMPACT_MAPPER})
+     * @return the encoded cloud event without the route history
+     * @throws IllegalStateException if the cloud event could not be encoded
+     */
+    public byte[] getBodyWithoutRoute(ObjectMapper mapper) throws IllegalStateException {
+        byte[] body = bodies.get(mapper);
+        if (body == null) {
+            ObjectMapper mapperWithoutRoute = MAPPERS_WITHOUT_ROUTE.computeIfAbsent(mapper,
+                key -> key.copy().addMixIn(MicoCloudEventImpl.class, WithoutRoute.class));
+            body = CloudEventCodec.encode(mapperWithoutRoute, cloudEvent);
+            bodies.put(mapper, body);
+        }
+        return body;
+    }
+
+    /**
+     * Get the encoded data for the binary content mode, see {@link BinaryCloudEventCodec#encodeData(MicoCloudEventImpl)}.
+     *
+     * @throws IllegalStateException if the data could not be encoded
+     */
+    public byte[] getData() throws IllegalStateException {
+        byte[] encoded = data;
+        if (encoded == null) {
+            encoded = BinaryCloudEventCodec.encodeData(cloudEvent);
+            data = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Encode a copy of the cloud event in the structured content mode by splicing its route history
+     * into the shared encoding.
+     *
+     * @param copy   the copy for one topic, see {@link #isEncodingOf(MicoCloudEventImpl)}
+     * @param mapper the mapper to use (e.g. {@link RouteHistoryCodec#COMPACT_MAPPER})
+     * @return the encoded copy
+     * @throws IllegalStateException if the copy could not be encoded
+     */
+    public byte[] encodeStructured(MicoCloudEventImpl<JsonNode> copy, ObjectMapper mapper) throws IllegalStateException {
+        byte[] body = getBodyWithoutRoute(mapper);
+        if (!copy.getRoute().isPresent()) {
+            return body;
+        }
+        byte[] route = CloudEventCodec.encode(mapper, copy.getRoute().get());
+        // the body is a json object, it is either empty ("{}") or its fields follow the route history
+        boolean emptyBody = body.length <= 2;
+        byte[] encoded = new byte[ROUTE_FIELD.length + route.length + (emptyBody ? 1 : body.length)];
+        System.arraycopy(ROUTE_FIELD, 0, encoded, 0, ROUTE_FIELD.length);
+        System.arraycopy(route, 0, encoded, ROUTE_FIELD.length, route.length);
+        int position = ROUTE_FIELD.length + route.length;
+        if (emptyBody) {
+            encoded[position] = '}';
+        } else {
+            encoded[position] = ',';
+            System.arraycopy(body, 1, encoded, position + 1, body.length - 1);
+        }
+        return encoded;
+    }
+
+    @JsonIgnoreProperties(LazyCloudEvent.FIELD_ROUTE)
+    private abstract static class WithoutRoute {
+    }
+}
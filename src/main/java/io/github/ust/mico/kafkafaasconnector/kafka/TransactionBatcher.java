@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Processes the records of a poll in Kafka transactions for exactly-once consume-transform-produce.
+ * <p>
+ * One transaction covers up to {@link KafkaConfig#getTransactionMaxRecords()} records or
+ * the records processed within {@link KafkaConfig#getTransactionMaxTimeMs()}. The offsets of the
+ * records are committed with the transaction after every message sent within it was acknowledged.
+ * If a transaction or one of its sends fails, the consumer is rewound to the first record
+ * of the transaction so that the records are processed again.
+ */
+@Slf4j
+@Component
+public class TransactionBatcher {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    @Autowired
+    private ProducerFactory<String, MicoCloudEventImpl<JsonNode>> producerFactory;
+
+    @Autowired
+    private KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> kafkaTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private KafkaTransactionManager<String, MicoCloudEventImpl<JsonNode>> transactionManager;
+
+    private DistributionSummary transactionSize;
+
+    private Timer commitLatency;
+
+    private Counter abortedTransactions;
+
+    @PostConstruct
+    public void init() {
+        if (kafkaConfig.isTransactional()) {
+            this.transactionManager = new KafkaTransactionManager<>(producerFactory);
+        }
+        this.transactionSize = DistributionSummary.builder("mico.connector.transaction.size")
+            .description("The number of input records per transaction")
+            .baseUnit("records")
+            .register(meterRegistry);
+        this.commitLatency = Timer.builder("mico.connector.transaction.commit")
+            .description("The time needed to commit a transaction")
+            .register(meterRegistry);
+        this.abortedTransactions = Counter.builder("mico.connector.transaction.aborted")
+            .description("The number of aborted transactions")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Process the records in transactions. Must be called on the consumer thread.
+     * <p>
+     * The messages sent by {@code processor} with the {@code KafkaTemplate} on the calling thread
+     * are part of the current transaction. The offsets are only sent to the transaction after the
+     * futures returned by {@code processor} completed, the transaction is aborted if one of them failed.
+     *
+     * @param records   the records of one poll
+     * @param consumer  the consumer, used to rewind after a failed transaction
+     * @param processor processes a single record, sends the results and returns a future that completes
+     *                  after they were acknowledged
+     * @return {@code true} if all records were committed
+     */
+    public <V> boolean process(List<ConsumerRecord<String, V>> records, Consumer<?, ?> consumer,
+                               Function<ConsumerRecord<String, V>, CompletableFuture<?>> processor) {
+        int index = 0;
+        while (index < records.size()) {
+            int start = index;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(kafkaConfig.getTransactionMaxTimeMs());
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRED));
+            try {
+                do {
+                    ConsumerRecord<String, V> record = records.get(index);
+                    sends.add(processor.apply(record));
+                    offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+                    index++;
+                } while (index < records.size() && index - start < kafkaConfig.getTransactionMaxRecords() && System.nanoTime() < deadline);
+                // fails the transaction if a message was not acknowledged
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+                kafkaTemplate.sendOffsetsToTransaction(offsets, kafkaConfig.getGroupId());
+                long commitStart = System.nanoTime();
+                transactionManager.commit(transaction);
+                commitLatency.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS);
+                transactionSize.record(index - start);
+            } catch (RuntimeException e) {
+                log.error("Transaction with {} records failed. The records will be processed again. Caused by: {}", index - start, e.getMessage());
+                if (!transaction.isCompleted()) {
+                    transactionManager.rollback(transaction);
+                }
+                abortedTransactions.increment();
+                rewind(consumer, records.subList(start, records.size()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Seek every partition to the first of the given records.
+     */
+    private void rewind(Consumer<?, ?> consumer, List<? extends ConsumerRecord<?, ?>> records) {
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        for (ConsumerRecord<?, ?> record : records) {
+            firstOffsets.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+        }
+        firstOffsets.forEach(consumer::seek);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive limit for the number of concurrent calls to a single function (AIMD driven by the round-trip time).
+ * <p>
+ * The limit grows by one for every successful call while at least half of it is used.
+ * It shrinks by the backoff ratio if a call failed because the function is overloaded or if the smoothed
+ * round-trip time exceeds the long-term baseline by more than the tolerance, i.e. requests are queueing up.
+ * The limit always stays between the minimum and the maximum.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * Weight of a new sample in the smoothed round-trip time.
+     */
+    private static final double SHORT_RTT_WEIGHT = 0.1;
+
+    /**
+     * Weight of a new sample in the long-term baseline of the round-trip time.
+     */
+    private static final double LONG_RTT_WEIGHT = 0.01;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double rttTolerance;
+
+    private double limit;
+
+    private int inFlight = 0;
+
+    private double shortRttNanos = 0;
+
+    private double longRttNanos = 0;
+
+    /**
+     * @param initialLimit the limit to start with
+     * @param minLimit     the minimum limit
+     * @param maxLimit     the maximum limit
+     * @param rttTolerance the factor by which the smoothed round-trip time may exceed the baseline before the limit shrinks
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.rttTolerance = rttTolerance;
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Block until a call is allowed.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Start a call if the limit is not reached.
+     *
+     * @return {@code true} if the call may start
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Complete a successful call.
+     *
+     * @param rttNanos the round-trip time of the call
+     */
+    public synchronized void onSuccess(long rttNanos) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+        } else {
+            shortRttNanos += (rttNanos - shortRttNanos) * SHORT_RTT_WEIGHT;
+            longRttNanos += (rttNanos - longRttNanos) * LONG_RTT_WEIGHT;
+        }
+        if (shortRttNanos > longRttNanos * rttTolerance) {
+            decrease();
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        release();
+    }
+
+    /**
+     * Complete a call that failed because the function is overloaded or unavailable (e.g. timeout or http status 5xx).
+     */
+    public synchronized void onDropped() {
+        decrease();
+        release();
+    }
+
+    /**
+     * Complete a call without adapting the limit, e.g. if the call was rejected because of its input.
+     */
+    public synchronized void onIgnored() {
+        release();
+    }
+
+    /**
+     * Get the current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of calls in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the smoothed round-trip time in milliseconds.
+     */
+    public synchronized double getRttMillis() {
+        return shortRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for the calls to a single function.
+ * <p>
+ * The breaker opens if the share of failed calls among the last calls (the window) reaches the threshold.
+ * While it is open, calls are not permitted. After the open duration a single probe call is permitted (half-open).
+ * If the probe succeeds the breaker closes, otherwise it opens again.
+ * <p>
+ * Every permission is a {@link Permit} that is passed back with the outcome of its call. Only the probe decides
+ * the half-open state, calls that were permitted before the breaker opened are only recorded while it is closed.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public enum Permit {
+        /**
+         * A call permitted while the breaker is closed.
+         */
+        CALL,
+        /**
+         * The single probe call permitted while the breaker is half-open.
+         */
+        PROBE
+    }
+
+    private final boolean[] window;
+
+    private final double failureRateThreshold;
+
+    private final long openDurationNanos;
+
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+
+    private int calls = 0;
+
+    private int failures = 0;
+
+    private int next = 0;
+
+    private long openedAt;
+
+    private boolean probeInFlight = false;
+
+    /**
+     * @param windowSize           the number of recent calls the failure rate is computed of
+     * @param failureRateThreshold the failure rate (0 to 1) that opens the breaker
+     * @param openDurationNanos    the time the breaker stays open before a probe call is permitted
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openDurationNanos) {
+        this(windowSize, failureRateThreshold, openDurationNanos, System::nanoTime);
+    }
+
+    /**
+     * @param windowSize           the number of recent calls the failure rate is computed of
+     * @param failureRateThreshold the failure rate (0 to 1) that opens the breaker
+     * @param openDurationNanos    the time the breaker stays open before a probe call is permitted
+     * @param nanoClock            the source of the current time in nanoseconds
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openDurationNanos, LongSupplier nanoClock) {
+        this.window = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Check if a call is permitted. A permitted call has to be completed with its permit and
+     * {@link #onSuccess(Permit)}, {@link #onFailure(Permit)} or {@link #releasePermission(Permit)}.
+     *
+     * @return the permit of the call or {@code null} if the call is not permitted
+     */
+    public synchronized Permit tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return Permit.CALL;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return Permit.PROBE;
+            default:
+                if (probeInFlight) {
+                    return null;
+                }
+                probeInFlight = true;
+                return Permit.PROBE;
+        }
+    }
+
+    /**
+     * Block until a call is permitted.
+     *
+     * @return the permit of the call
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized Permit acquirePermission() throws InterruptedException {
+        Permit permit;
+        while ((permit = tryAcquirePermission()) == null) {
+            long remainingNanos = openedAt + openDurationNanos - nanoClock.getAsLong();
+            long waitMillis = Math.max(1, remainingNanos / 1_000_000);
+            // woken up early if a probe completes
+            wait(state == State.OPEN ? waitMillis : 0);
+        }
+        return permit;
+    }
+
+    /**
+     * Complete a permitted call that succeeded.
+     *
+     * @param permit the permit of the call
+     */
+    public synchronized void onSuccess(Permit permit) {
+        if (permit == Permit.PROBE) {
+            if (isProbeInFlight()) {
+                reset();
+                state = State.CLOSED;
+                notifyAll();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Give back the permission of a call that did not happen or whose outcome says nothing about the health
+     * of the function. No outcome is recorded, only the probe permission is returned.
+     *
+     * @param permit the permit of the call
+     */
+    public synchronized void releasePermission(Permit permit) {
+        if (permit == Permit.PROBE && isProbeInFlight()) {
+            probeInFlight = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Complete a permitted call that failed.
+     *
+     * @param permit the permit of the call
+     * @return {@code true} if the breaker was opened by this failure
+     */
+    public synchronized boolean onFailure(Permit permit) {
+        if (permit == Permit.PROBE) {
+            if (isProbeInFlight()) {
+                open();
+                return true;
+            }
+            return false;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (calls == window.length && failures >= failureRateThreshold * calls) {
+                open();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the current state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    private boolean isProbeInFlight() {
+        return state == State.HALF_OPEN && probeInFlight;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        probeInFlight = false;
+        reset();
+        notifyAll();
+    }
+
+    private void reset() {
+        calls = 0;
+        failures = 0;
+        next = 0;
+        probeInFlight = false;
+    }
+}
@@ -22,6 +22,7 @@ package io.github.ust.mico.kafkafaasconnector.messageprocessing;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
 import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,16 +32,12 @@ import org.springframework.util.StringUtils;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 @Service
 public class CloudEventManipulator {
 
-    private static final String ROUTE_HISTORY_TYPE_TOPIC = "topic";
-    private static final String ROUTE_HISTORY_TYPE_FAAS_FUNCTION = "faas-function";
-
     @Autowired
     private KafkaConfig kafkaConfig;
 
@@ -52,22 +49,72 @@ public class CloudEventManipulator {
      * @return the updated cloud event
      */
     public MicoCloudEventImpl<JsonNode> updateRouteHistoryWithTopic(MicoCloudEventImpl<JsonNode> cloudEvent, String topic) {
-        return this.updateRouteHistory(cloudEvent, topic, ROUTE_HISTORY_TYPE_TOPIC);
+        return this.updateRouteHistory(cloudEvent, topic, RouteHistory.TYPE_TOPIC);
     }
 
     /**
      * Update the routing history in the `route` header field of the cloud event.
+     * The route of the given cloud event is shared, not copied, unless it has to be capped
+     * to the configured maximum number of steps.
      *
-     * @param cloudEvent the cloud event to update
+     * @param cloudEvent the cloud event
      * @param id         the string id of the next routing step the message will take
      * @param type       the type of the routing step ("topic" or "faas-function")
-     * @return the updated cloud event
+     * @return the updated copy of the cloud event
      */
     public MicoCloudEventImpl<JsonNode> updateRouteHistory(MicoCloudEventImpl<JsonNode> cloudEvent, String id, String type) {
         RouteHistory routingStep = new RouteHistory(type, id, ZonedDateTime.now());
-        List<RouteHistory> history = cloudEvent.getRoute().map(ArrayList::new).orElse(new ArrayList<>());
-        history.add(routingStep);
-        return new MicoCloudEventImpl<>(cloudEvent).setRoute(history);
+        PersistentList<RouteHistory> route = cloudEvent.getRoute().orElse(PersistentList.empty()).append(routingStep);
+        return cloudEvent.toBuilder().route(capRouteHistory(route)).build();
+    }
+
+    /**
+     * Remove the oldest routing steps if the route history has more steps than configured.
+     * A leading summary step is not counted and is merged with the removed steps.
+     *
+     * @param route the route history
+     * @return the route history with at most {@code routeHistoryMaxHops} steps (plus a summary step)
+     */
+    private PersistentList<RouteHistory> capRouteHistory(PersistentList<RouteHistory> route) {
+        int maxHops = kafkaConfig.getRouteHistoryMaxHops();
+        if (maxHops <= 0 || route.size() <= maxHops) {
+            return route;
+        }
+        Object[] steps = route.toArray();
+        int first = 0;
+        long summarizedSteps = 0;
+        ZonedDateTime summarizedSince = null;
+        RouteHistory oldestStep = (RouteHistory) steps[0];
+        if (RouteHistory.TYPE_SUMMARY.equals(oldestStep.getType().orElse(null))) {
+            first = 1;
+            summarizedSteps = parseSummarizedSteps(oldestStep);
+            summarizedSince = oldestStep.getTimestamp().orElse(null);
+        }
+        int removedSteps = steps.length - first - maxHops;
+        if (removedSteps <= 0) {
+            return route;
+        }
+        if (summarizedSince == null) {
+            summarizedSince = ((RouteHistory) steps[first]).getTimestamp().orElse(null);
+        }
+        PersistentList<RouteHistory> cappedRoute = PersistentList.empty();
+        if (kafkaConfig.getRouteHistoryOverflow() == KafkaConfig.RouteHistoryOverflow.SUMMARIZE) {
+            String summary = String.valueOf(summarizedSteps + removedSteps);
+            cappedRoute = cappedRoute.append(new RouteHistory(RouteHistory.TYPE_SUMMARY, summary, summarizedSince));
+        }
+        for (int i = first + removedSteps; i < steps.length; i++) {
+            cappedRoute = cappedRoute.append((RouteHistory) steps[i]);
+        }
+        return cappedRoute;
+    }
+
+    private long parseSummarizedSteps(RouteHistory summary) {
+        try {
+            return Long.parseLong(summary.getId().orElse("0"));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring the invalid summary step '{}' in the route history.", summary);
+            return 0;
+        }
     }
 
     /**
@@ -78,7 +125,7 @@ public class CloudEventManipulator {
      * @return the updated cloud event
      */
     public MicoCloudEventImpl<JsonNode> updateRouteHistoryWithFunctionCall(MicoCloudEventImpl<JsonNode> cloudEvent, String functionId) {
-        return this.updateRouteHistory(cloudEvent, functionId, ROUTE_HISTORY_TYPE_FAAS_FUNCTION);
+        return this.updateRouteHistory(cloudEvent, functionId, RouteHistory.TYPE_FAAS_FUNCTION);
     }
 
     /**
@@ -86,32 +133,35 @@ public class CloudEventManipulator {
      *
      * @param cloudEvent        the cloud event to send
      * @param originalMessageId the id of the original message
+     * @return the cloud event with the missing fields set
      */
-    public void setMissingHeaderFields(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+    public MicoCloudEventImpl<JsonNode> setMissingHeaderFields(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+        MicoCloudEventImpl.Builder<JsonNode> builder = cloudEvent.toBuilder();
 
-        setMissingId(cloudEvent);
-        setMissingTime(cloudEvent);
+        String id = setMissingId(cloudEvent, builder);
+        setMissingTime(cloudEvent, builder);
 
         if (!StringUtils.isEmpty(originalMessageId)) {
-            setMissingCorrelationId(cloudEvent, originalMessageId);
-            setMissingCreatedFrom(cloudEvent, originalMessageId);
+            setMissingCorrelationId(cloudEvent, builder, originalMessageId);
+            setMissingCreatedFrom(cloudEvent, builder, id, originalMessageId);
         }
 
         // Add source if it is an error message, e.g.: kafka://mico/transform-request
         if (cloudEvent.isErrorMessage().orElse(false)) {
-            setMissingSource(cloudEvent);
+            setMissingSource(builder);
         }
+        return builder.build();
     }
 
     /**
      * Sets the source field of an cloud event message to "kafka://{groupId}/{inputTopic}".
      *
-     * @param cloudEvent
+     * @param builder
      */
-    private void setMissingSource(MicoCloudEventImpl<JsonNode> cloudEvent) {
+    private void setMissingSource(MicoCloudEventImpl.Builder<JsonNode> builder) {
         try {
             URI source = new URI("kafka://" + this.kafkaConfig.getGroupId() + "/" + this.kafkaConfig.getInputTopic());
-            cloudEvent.setSource(source);
+            builder.source(source);
         } catch (URISyntaxException e) {
             log.error("Could not construct a valid source attribute for the error message. " +
                 "Caused by: {}", e.getMessage());
@@ -123,13 +173,15 @@ public class CloudEventManipulator {
      * the createdFrom field is empty.
      *
      * @param cloudEvent
+     * @param builder
+     * @param id                the (possibly generated) id of the message
      * @param originalMessageId
      */
-    private void setMissingCreatedFrom(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
-        if (!cloudEvent.getId().equals(originalMessageId)) {
+    private void setMissingCreatedFrom(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl.Builder<JsonNode> builder, String id, String originalMessageId) {
+        if (!id.equals(originalMessageId)) {
             if (!cloudEvent.isErrorMessage().orElse(false) ||
                 (cloudEvent.isErrorMessage().orElse(false) && StringUtils.isEmpty(cloudEvent.getCreatedFrom().orElse("")))) {
-                cloudEvent.setCreatedFrom(originalMessageId);
+                builder.createdFrom(originalMessageId);
             }
         }
     }
@@ -138,11 +190,12 @@ public class CloudEventManipulator {
      * Sets the message correlationId to the originalMessageId if the correlationId is missing
      *
      * @param cloudEvent
+     * @param builder
      * @param originalMessageId
      */
-    private void setMissingCorrelationId(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+    private void setMissingCorrelationId(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl.Builder<JsonNode> builder, String originalMessageId) {
         if (!cloudEvent.getCorrelationId().isPresent()) {
-            cloudEvent.setCorrelationId(originalMessageId);
+            builder.correlationId(originalMessageId);
         }
     }
 
@@ -150,11 +203,13 @@ public class CloudEventManipulator {
      * Adds the required field 'time' if it is missing.
      *
      * @param cloudEvent
+     * @param builder
      */
-    private void setMissingTime(MicoCloudEventImpl<JsonNode> cloudEvent) {
+    private void setMissingTime(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl.Builder<JsonNode> builder) {
         if (!cloudEvent.getTime().isPresent()) {
-            cloudEvent.setTime(ZonedDateTime.now());
-            log.debug("Added missing time '{}' to cloud event", cloudEvent.getTime().orElse(null));
+            ZonedDateTime time = ZonedDateTime.now();
+            builder.time(time);
+            log.debug("Added missing time '{}' to cloud event", time);
         }
     }
 
@@ -162,12 +217,17 @@ public class CloudEventManipulator {
      * Sets a missing message id to a randomly generated one.
      *
      * @param cloudEvent
+     * @param builder
+     * @return the id of the message
      */
-    private void setMissingId(MicoCloudEventImpl<JsonNode> cloudEvent) {
+    private String setMissingId(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl.Builder<JsonNode> builder) {
         if (StringUtils.isEmpty(cloudEvent.getId())) {
-            cloudEvent.setRandomId();
-            log.debug("Added missing id '{}' to cloud event", cloudEvent.getId());
+            String id = UUID.randomUUID().toString();
+            builder.id(id);
+            log.debug("Added missing id '{}' to cloud event", id);
+            return id;
         }
+        return cloudEvent.getId();
     }
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Request factory for the blocking HTTP client that applies the deadline of the current function call.
+ * <p>
+ * The connect, pool wait and read timeouts of a request created within {@link #begin(ZonedDateTime)} and
+ * {@link #end()} are capped to the time left until the deadline. The request can be aborted
+ * from another thread with {@link Call#cancel()}, which also interrupts a blocking read.
+ */
+public class DeadlineClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private static final ThreadLocal<Call> CURRENT_CALL = new ThreadLocal<>();
+
+    /**
+     * @param httpClient the (pooled) client that executes the requests
+     */
+    public DeadlineClientHttpRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    /**
+     * Start a function call with a deadline on the current thread.
+     *
+     * @param deadline the deadline of the call
+     * @return the call that can be cancelled from another thread
+     */
+    public static Call begin(ZonedDateTime deadline) {
+        Call call = new Call(deadline);
+        CURRENT_CALL.set(call);
+        return call;
+    }
+
+    /**
+     * End the function call of the current thread.
+     */
+    public static void end() {
+        CURRENT_CALL.remove();
+    }
+
+    @Override
+    protected RequestConfig createRequestConfig(Object client) {
+        RequestConfig config = super.createRequestConfig(client);
+        Call call = CURRENT_CALL.get();
+        if (call == null) {
+            return config;
+        }
+        if (config == null) {
+            config = RequestConfig.DEFAULT;
+        }
+        // 0 would disable the timeout
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, DeadlineTimer.getRemainingMillis(call.deadline)));
+        return RequestConfig.copy(config)
+            .setConnectTimeout(cap(config.getConnectTimeout(), remaining))
+            .setConnectionRequestTimeout(cap(config.getConnectionRequestTimeout(), remaining))
+            .setSocketTimeout(cap(config.getSocketTimeout(), remaining))
+            .build();
+    }
+
+    @Override
+    protected void postProcessHttpRequest(HttpUriRequest request) {
+        Call call = CURRENT_CALL.get();
+        if (call != null && !call.setRequest(request)) {
+            // executing an aborted request fails immediately
+            request.abort();
+        }
+    }
+
+    private static int cap(int timeout, int remaining) {
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    /**
+     * A function call with a deadline.
+     */
+    public static final class Call {
+
+        private final ZonedDateTime deadline;
+
+        private HttpUriRequest request;
+
+        private boolean cancelled = false;
+
+        private Call(ZonedDateTime deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return {@code false} if the call was already cancelled
+         */
+        private synchronized boolean setRequest(HttpUriRequest request) {
+            this.request = request;
+            return !cancelled;
+        }
+
+        /**
+         * Abort the request of the call and close its connection.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (request != null) {
+                request.abort();
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the deadlines (the {@code expirydate}) of the cloud events in process.
+ * <p>
+ * The deadlines are kept in a hashed timer wheel, so a deadline costs a bucket entry instead of
+ * a scheduled task and cancelling it is constant time. The deadline actions run on the single
+ * thread of the wheel up to one tick after the deadline and must not block.
+ */
+@Component
+public class DeadlineTimer {
+
+    /**
+     * The stage tag of cloud events that expired during the function call.
+     */
+    public static final String STAGE_FUNCTION = "function";
+
+    /**
+     * The stage tag of resulting cloud events that were expired before they were sent.
+     */
+    public static final String STAGE_SEND = "send";
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private HashedWheelTimer wheel;
+
+    /**
+     * The counters of the cloud events dropped after their deadline by stage.
+     */
+    private final Map<String, Counter> expiredCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.wheel = new HashedWheelTimer(new CustomizableThreadFactory("deadline-timer-"),
+            openFaaSConfig.getDeadlineTickMs(), TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+        Gauge.builder("mico.connector.deadlines.pending", this, timer -> timer.wheel.pendingTimeouts())
+            .description("The number of tracked deadlines of cloud events in process")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        wheel.stop();
+    }
+
+    /**
+     * Run an action at the deadline.
+     *
+     * @param deadline the deadline
+     * @param action   the action, must not block
+     * @return the timeout to cancel if the work completed before the deadline
+     */
+    public Timeout schedule(ZonedDateTime deadline, Runnable action) {
+        return wheel.newTimeout(timeout -> action.run(), Math.max(0, getRemainingMillis(deadline)), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run an action after a delay.
+     *
+     * @param delayNanos the delay in nanoseconds
+     * @param action     the action, must not block
+     * @return the timeout to cancel if the action is not needed anymore
+     */
+    public Timeout schedule(long delayNanos, Runnable action) {
+        return wheel.newTimeout(timeout -> action.run(), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count a cloud event that was dropped because it expired.
+     *
+     * @param stage the processing stage, e.g. {@link #STAGE_FUNCTION}
+     */
+    public void recordExpired(String stage) {
+        expiredCounters.computeIfAbsent(stage, key -> Counter.builder("mico.connector.events.expired.late")
+            .description("The number of cloud events that expired while they were processed")
+            .tag("stage", key)
+            .register(meterRegistry))
+            .increment();
+    }
+
+    /**
+     * Get the time left until the deadline in milliseconds (negative if it passed).
+     */
+    public static long getRemainingMillis(ZonedDateTime deadline) {
+        return deadline.toInstant().toEpochMilli() - System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if the deadline has passed.
+     */
+    public static boolean isExpired(ZonedDateTime deadline) {
+        return getRemainingMillis(deadline) < 0;
+    }
+}
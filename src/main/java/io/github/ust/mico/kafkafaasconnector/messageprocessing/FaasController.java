@@ -19,28 +19,80 @@
 
 package io.github.ust.mico.kafkafaasconnector.messageprocessing;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import io.cloudevents.json.Json;
 import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
 import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.ConsumerBackpressure;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class FaasController {
 
+    /**
+     * The status tag of function calls without a valid http response.
+     */
+    private static final String STATUS_CLIENT_ERROR = "CLIENT_ERROR";
+
+    /**
+     * The status tag of function calls cancelled at the deadline of the cloud event.
+     */
+    private static final String STATUS_EXPIRED = "EXPIRED";
+
+    /**
+     * The status tag of hedged requests cancelled because the other request of the call won.
+     */
+    private static final String STATUS_CANCELLED = "CANCELLED";
+
+    private static final String SHUTDOWN_MESSAGE = "The function was not called because the connector is shutting down.";
+
     @Autowired
     private CloudEventManipulator cloudEventManipulator;
 
@@ -50,6 +102,129 @@ public class FaasController {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private WebClient webClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DeadlineTimer deadlineTimer;
+
+    @Autowired
+    private ConsumerBackpressure consumerBackpressure;
+
+    /**
+     * The endpoints the function calls are balanced across.
+     */
+    private FunctionEndpoints functionEndpoints;
+
+    /**
+     * The concurrency limits and circuit breakers by function url.
+     */
+    private final Map<String, FunctionCallGuard> functionCallGuards = new ConcurrentHashMap<>();
+
+    /**
+     * The function call timers by function name and http status.
+     */
+    private final Map<String, Timer> functionCallTimers = new ConcurrentHashMap<>();
+
+    /**
+     * The cache of the function results or {@code null} if results are not cached.
+     */
+    private FunctionResultCache resultCache;
+
+    /**
+     * The function calls in flight by the key of their function and data, if calls are coalesced.
+     */
+    private final Map<String, CompletableFuture<FunctionResult>> inFlightCalls = new ConcurrentHashMap<>();
+
+    private Counter coalescedCalls;
+
+    /**
+     * The batcher of the function calls or {@code null} if every input is sent on its own.
+     */
+    private FunctionCallBatcher functionCallBatcher;
+
+    /**
+     * The hedging of slow function calls or {@code null} if every call sends a single request.
+     */
+    private RequestHedger requestHedger;
+
+    /**
+     * Waits for the permits of the non-blocking calls that found the concurrency limit reached or the circuit breaker open.
+     */
+    private ExecutorService permitWaiter;
+
+    private Timer resultParsing;
+
+    private Timer routeUpdate;
+
+    private Timer serialization;
+
+    private DistributionSummary requestSize;
+
+    private DistributionSummary responseSize;
+
+    private DistributionSummary resultEvents;
+
+    @PostConstruct
+    public void init() {
+        this.resultParsing = Timer.builder("mico.connector.faas.result.parse")
+            .description("The time needed to parse the result of a function call")
+            .register(meterRegistry);
+        this.routeUpdate = Timer.builder("mico.connector.route.update")
+            .description("The time needed to add a routing step to the route history")
+            .tag("type", "faas-function")
+            .register(meterRegistry);
+        this.serialization = Timer.builder("mico.connector.faas.request.serialize")
+            .description("The time needed to serialize the function input")
+            .register(meterRegistry);
+        this.requestSize = DistributionSummary.builder("mico.connector.faas.request.size")
+            .description("The size of the function input")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.responseSize = DistributionSummary.builder("mico.connector.faas.response.size")
+            .description("The size of the function result")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.resultEvents = DistributionSummary.builder("mico.connector.faas.result.events")
+            .description("The number of cloud events per function result")
+            .baseUnit("events")
+            .register(meterRegistry);
+        this.coalescedCalls = Counter.builder("mico.connector.faas.calls.coalesced")
+            .description("The number of function calls that waited for a call with the same data in flight")
+            .register(meterRegistry);
+        this.functionEndpoints = new FunctionEndpoints(openFaaSConfig, meterRegistry);
+        CustomizableThreadFactory waitThreadFactory = new CustomizableThreadFactory("faas-call-wait-");
+        waitThreadFactory.setDaemon(true);
+        this.permitWaiter = Executors.newSingleThreadExecutor(waitThreadFactory);
+        if (openFaaSConfig.isResultCache()) {
+            this.resultCache = new FunctionResultCache(openFaaSConfig.getResultCacheMaxEntries(), openFaaSConfig.getResultCacheMaxBytes(),
+                TimeUnit.MILLISECONDS.toNanos(openFaaSConfig.getResultCacheTtlMs()), meterRegistry);
+        }
+        if (openFaaSConfig.getBatchSize() > 1) {
+            this.functionCallBatcher = new FunctionCallBatcher(this, openFaaSConfig, webClient, meterRegistry);
+        }
+        if (openFaaSConfig.isHedgeRequests()) {
+            this.requestHedger = new RequestHedger(openFaaSConfig.getHedgePercentile(), openFaaSConfig.getHedgeBudget(),
+                openFaaSConfig.getHedgeWindow(), meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (functionCallBatcher != null) {
+            functionCallBatcher.shutdown();
+        }
+        for (Runnable waiting : permitWaiter.shutdownNow()) {
+            if (waiting instanceof WaitingCall) {
+                ((WaitingCall) waiting).fail(new MicoCloudEventException(SHUTDOWN_MESSAGE, ((WaitingCall) waiting).call.cloudEvent));
+            }
+        }
+        functionEndpoints.shutdown();
+    }
+
     /**
      * Synchronously call the configured openFaaS function.
      *
@@ -57,28 +232,956 @@ public class FaasController {
      * @return the result of the function call (in serialized form)
      */
     public List<MicoCloudEventImpl<JsonNode>> callFaasFunction(MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
-        if (this.openFaaSConfig.isSkipFunctionCall() || this.openFaaSConfig.getFunctionName() == null || this.openFaaSConfig.getFunctionName().isEmpty()) {
-            log.debug("Skip faas function call. Function name '{}'",this.openFaaSConfig.getFunctionName());
-            return Collections.singletonList(cloudEvent);
+        List<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>();
+        callFaasFunction(cloudEvent, result::add);
+        return result;
+    }
+
+    /**
+     * Synchronously call the configured openFaaS function and stream the result.
+     * <p>
+     * The response is parsed while it is read. Every resulting cloud event is passed to
+     * the {@code resultConsumer} as soon as it is complete. If the call fails after some
+     * cloud events were passed on, these cloud events are not revoked.
+     * Blocks while the concurrency limit of the function is reached.
+     * The call is cancelled at the {@code expirydate} of the cloud event.
+     * If the result cache is enabled, a cached result of the same data is replayed without calling the function.
+     * If calls are coalesced, a call with the same data that is already in flight is awaited instead.
+     * If requests are hedged, the resulting cloud events are only passed on after the complete response was read.
+     *
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     */
+    public void callFaasFunction(MicoCloudEventImpl<JsonNode> cloudEvent, Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) throws MicoCloudEventException {
+        callFaasFunction(cloudEvent, openFaaSConfig.getFunctionName(), resultConsumer);
+    }
+
+    /**
+     * Synchronously call an openFaaS function behind the configured gateway and stream the result,
+     * see {@link #callFaasFunction(MicoCloudEventImpl, Consumer)}.
+     * Only the configured function is called in batches, hedged and has its results cached or shared.
+     *
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param functionName   the name of the function
+     * @param resultConsumer receives the resulting cloud events
+     */
+    public void callFaasFunction(MicoCloudEventImpl<JsonNode> cloudEvent, String functionName,
+                                 Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) throws MicoCloudEventException {
+        if (isFunctionCallSkipped(functionName)) {
+            resultConsumer.accept(cloudEvent);
+            return;
+        }
+        String resultKey = getResultKey(functionName, cloudEvent);
+        if (resultKey == null) {
+            invokeFunction(functionName, cloudEvent, resultConsumer, false);
+            return;
+        }
+        if (replayCachedResult(resultKey, functionName, cloudEvent, resultConsumer)) {
+            return;
+        }
+        CompletableFuture<FunctionResult> sharedCall = new CompletableFuture<>();
+        CompletableFuture<FunctionResult> inFlightCall = openFaaSConfig.isCoalesceCalls() ? inFlightCalls.putIfAbsent(resultKey, sharedCall) : null;
+        if (inFlightCall != null) {
+            awaitSharedCall(inFlightCall, functionName, cloudEvent, resultConsumer);
+            return;
         }
-        URL functionUrl = null;
         try {
-            functionUrl = openFaaSConfig.getFunctionUrl();
+            FunctionResult functionResult = invokeFunction(functionName, cloudEvent, resultConsumer, true);
+            completeSharedCall(resultKey, sharedCall, cloudEvent, functionResult, null);
+        } catch (MicoCloudEventException | RuntimeException e) {
+            completeSharedCall(resultKey, sharedCall, cloudEvent, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Call the function and stream the result.
+     *
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     * @param keepResult     whether the complete result is kept to be shared
+     * @return the complete result if it is kept, otherwise {@code null}
+     */
+    private FunctionResult invokeFunction(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent, Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer,
+                                          boolean keepResult) throws MicoCloudEventException {
+        if (isHedged(functionName)) {
+            // a hedged call needs the non-blocking client, the result is passed on by the calling thread
+            FunctionResult functionResult = awaitCall(invokeFunctionAsync(functionName, cloudEvent, resultEvent -> { }, true), cloudEvent);
+            functionResult.getResults().forEach(resultConsumer);
+            return keepResult ? functionResult : null;
+        }
+        MicoCloudEventImpl<JsonNode> functionInput = createFunctionInput(functionName, cloudEvent);
+        if (isBatched(functionName)) {
+            FunctionResult functionResult = awaitCall(functionCallBatcher.submit(cloudEvent, functionInput), cloudEvent);
+            functionResult.getResults().forEach(resultConsumer);
+            return keepResult ? functionResult : null;
+        }
+        byte[] cloudEventSerialized = serializeFunctionInput(functionInput, cloudEvent);
+        List<MicoCloudEventImpl<JsonNode>> resultToKeep = keepResult ? new ArrayList<>() : null;
+        Consumer<MicoCloudEventImpl<JsonNode>> consumer = keepResult ? collectingConsumer(resultToKeep, resultConsumer) : resultConsumer;
+        AtomicLong responseBytes = new AtomicLong();
+        FunctionCallGuard guard = getFunctionCallGuard(functionName, cloudEvent);
+        URL functionUrl = guard.getFunctionUrl();
+        CircuitBreaker.Permit permit = guard.acquire(cloudEvent);
+        long start = System.nanoTime();
+        ZonedDateTime deadline = cloudEvent.getExpiryDate().orElse(null);
+        if (deadline != null && DeadlineTimer.isExpired(deadline)) {
+            // the deadline passed while waiting for the concurrency limit or the circuit breaker
+            expireFunctionCall(guard, permit, start);
+            throw expired(cloudEvent);
+        }
+        DeadlineClientHttpRequestFactory.Call call = deadline == null ? null : DeadlineClientHttpRequestFactory.begin(deadline);
+        Timeout deadlineTimeout = call == null ? null : deadlineTimer.schedule(deadline, call::cancel);
+        AtomicInteger responseStatus = new AtomicInteger();
+        try {
             log.debug("Start request to function '{}'", functionUrl.toString());
-            String cloudEventSerialized = Json.encode(cloudEventManipulator.updateRouteHistoryWithFunctionCall(cloudEvent, openFaaSConfig.getFunctionName()));
-            log.debug("Serialized cloud event: {}", cloudEventSerialized);
-            String result = restTemplate.postForObject(functionUrl.toString(), cloudEventSerialized, String.class);
-            log.debug("Faas call resulted in: '{}'", result);
-            return parseFunctionResult(result, cloudEvent);
-        } catch (MalformedURLException e) {
-            throw new MicoCloudEventException("Failed to call faas-function. Caused by: " + e.getMessage(), cloudEvent);
-        } catch (IllegalStateException e) {
-            log.error("Failed to serialize CloudEvent '{}'.", cloudEvent);
-            throw new MicoCloudEventException("Failed to serialize CloudEvent while calling the faas-function.", cloudEvent);
+            Integer events = restTemplate.execute(functionUrl.toString(), HttpMethod.POST, request -> {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                request.getBody().write(cloudEventSerialized);
+            }, response -> {
+                responseStatus.set(response.getRawStatusCode());
+                FunctionResultParser resultParser = createResultParser(consumer);
+                int parsedEvents = resultParser.parse(response.getBody());
+                recordFunctionResult(resultParser, parsedEvents);
+                responseBytes.set(resultParser.getResponseSize());
+                return parsedEvents;
+            });
+            completeFunctionCall(guard, permit, start, responseStatus.get(), FunctionCallGuard.Outcome.SUCCESS);
+            log.debug("Faas call resulted in {} cloud events", events);
+            return keepResult ? new FunctionResult(functionInput, resultToKeep, responseBytes.get()) : null;
         } catch (HttpStatusCodeException e) {
+            completeFunctionCall(guard, permit, start, e.getRawStatusCode(), getOutcome(e.getRawStatusCode()));
             log.error("FaaS function '{}' returned http status code '{}'. Expected 200 OK.", functionUrl, e.getStatusCode());
             throw new MicoCloudEventException(e.toString(), cloudEvent);
+        } catch (RestClientException e) {
+            if (call != null && call.isCancelled()) {
+                expireFunctionCall(guard, permit, start);
+                throw expired(cloudEvent);
+            }
+            // the response could not be read or parsed
+            int status = responseStatus.get();
+            completeFunctionCall(guard, permit, start, status, status == 0 ? FunctionCallGuard.Outcome.DROPPED : FunctionCallGuard.Outcome.IGNORED);
+            log.error("Failed to read the response of FaaS function '{}'. Caused by: {}", functionUrl, e.getMessage());
+            throw new MicoCloudEventException("Failed to parse JSON from response from the faas-function.", e, cloudEvent);
+        } catch (RuntimeException e) {
+            completeFunctionCall(guard, permit, start, responseStatus.get(), FunctionCallGuard.Outcome.IGNORED);
+            throw e;
+        } finally {
+            if (call != null) {
+                DeadlineClientHttpRequestFactory.end();
+                deadlineTimeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Asynchronously call the configured openFaaS function with the non-blocking HTTP client.
+     * <p>
+     * Only blocks the calling thread to send a full batch while the concurrency limit of the function is reached.
+     * A single call that has to wait for its permit pauses the consumer instead, see {@link ConsumerBackpressure}.
+     * The returned future completes exceptionally with a {@code MicoCloudEventException} if the call failed.
+     *
+     * @param cloudEvent the cloud event used as parameter for the function
+     * @return a future of the result of the function call
+     */
+    public CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> callFaasFunctionAsync(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        List<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>();
+        return callFaasFunctionAsync(cloudEvent, result::add).thenApply(ignored -> result);
+    }
+
+    /**
+     * Asynchronously call the configured openFaaS function with the non-blocking HTTP client and stream the result.
+     * <p>
+     * The response is parsed chunk by chunk as it arrives. Every resulting cloud event is passed to
+     * the {@code resultConsumer} (on the thread of the HTTP client) as soon as it is complete.
+     * Only blocks the calling thread to send a full batch while the concurrency limit of the function is reached.
+     * A single call that has to wait for its permit pauses the consumer instead, see {@link ConsumerBackpressure}.
+     * The returned future completes exceptionally with a {@code MicoCloudEventException} if the call failed.
+     * The call is cancelled at the {@code expirydate} of the cloud event.
+     * If the result cache is enabled, a cached result of the same data is replayed without calling the function.
+     * If calls are coalesced, a call with the same data that is already in flight is awaited instead.
+     * If requests are hedged, a second request is sent if the call is slow and the response that arrives first is streamed.
+     *
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     * @return a future that completes after the whole response was parsed
+     */
+    public CompletableFuture<Void> callFaasFunctionAsync(MicoCloudEventImpl<JsonNode> cloudEvent, Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        return callFaasFunctionAsync(cloudEvent, openFaaSConfig.getFunctionName(), resultConsumer);
+    }
+
+    /**
+     * Asynchronously call an openFaaS function behind the configured gateway and stream the result,
+     * see {@link #callFaasFunctionAsync(MicoCloudEventImpl, Consumer)}.
+     * Only the configured function is called in batches, hedged and has its results cached or shared.
+     *
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param functionName   the name of the function
+     * @param resultConsumer receives the resulting cloud events
+     * @return a future that completes after the whole response was parsed
+     */
+    public CompletableFuture<Void> callFaasFunctionAsync(MicoCloudEventImpl<JsonNode> cloudEvent, String functionName,
+                                                         Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        if (isFunctionCallSkipped(functionName)) {
+            resultConsumer.accept(cloudEvent);
+            return CompletableFuture.completedFuture(null);
+        }
+        String resultKey = getResultKey(functionName, cloudEvent);
+        if (resultKey == null) {
+            return invokeFunctionAsync(functionName, cloudEvent, resultConsumer, false).thenApply(ignored -> null);
         }
+        if (replayCachedResult(resultKey, functionName, cloudEvent, resultConsumer)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<FunctionResult> sharedCall = new CompletableFuture<>();
+        CompletableFuture<FunctionResult> inFlightCall = openFaaSConfig.isCoalesceCalls() ? inFlightCalls.putIfAbsent(resultKey, sharedCall) : null;
+        if (inFlightCall != null) {
+            return followSharedCall(inFlightCall, functionName, cloudEvent, resultConsumer);
+        }
+        CompletableFuture<FunctionResult> invocation = invokeFunctionAsync(functionName, cloudEvent, resultConsumer, true);
+        invocation.whenComplete((functionResult, error) -> completeSharedCall(resultKey, sharedCall, cloudEvent, functionResult, error));
+        return invocation.thenApply(ignored -> null);
+    }
+
+    /**
+     * Call the function with the non-blocking HTTP client and stream the result.
+     * <p>
+     * The calling thread never waits for a permit, it may be the consumer thread of the record listener.
+     * If the concurrency limit is reached or, in the {@code WAIT} mode, the circuit breaker is open, the call waits on the wait thread
+     * and the consumer is paused until the call got its permit.
+     *
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     * @param keepResult     whether the complete result is kept to be shared
+     * @return a future of the complete result if it is kept, otherwise of {@code null}
+     */
+    private CompletableFuture<FunctionResult> invokeFunctionAsync(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent,
+                                                                  Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer, boolean keepResult) {
+        CompletableFuture<FunctionResult> failed = new CompletableFuture<>();
+        List<MicoCloudEventImpl<JsonNode>> resultToKeep = keepResult ? new ArrayList<>() : null;
+        MicoCloudEventImpl<JsonNode> functionInput;
+        byte[] cloudEventSerialized;
+        FunctionResultParser resultParser;
+        FunctionCallGuard guard;
+        CircuitBreaker.Permit permit;
+        try {
+            functionInput = createFunctionInput(functionName, cloudEvent);
+            if (isBatched(functionName)) {
+                return functionCallBatcher.submit(cloudEvent, functionInput).thenApply(functionResult -> {
+                    functionResult.getResults().forEach(resultConsumer);
+                    return keepResult ? functionResult : null;
+                });
+            }
+            cloudEventSerialized = serializeFunctionInput(functionInput, cloudEvent);
+            resultParser = createResultParser(keepResult ? collectingConsumer(resultToKeep, resultConsumer) : resultConsumer);
+            guard = getFunctionCallGuard(functionName, cloudEvent);
+            permit = guard.tryAcquire(cloudEvent);
+        } catch (MicoCloudEventException e) {
+            failed.completeExceptionally(e);
+            return failed;
+        } catch (IOException e) {
+            failed.completeExceptionally(new MicoCloudEventException("Failed to call faas-function. Caused by: " + e.getMessage(), e, cloudEvent));
+            return failed;
+        }
+        AsyncCall call = new AsyncCall(functionName, cloudEventSerialized, cloudEvent, resultParser);
+        if (permit != null) {
+            call.start(guard, permit);
+        } else {
+            handOff(new WaitingCall(call, guard));
+        }
+        return call.result.thenApply(ignored -> keepResult ? new FunctionResult(functionInput, resultToKeep, resultParser.getResponseSize()) : null);
+    }
+
+    private void handOff(WaitingCall waitingCall) {
+        consumerBackpressure.registerWaitingCall();
+        try {
+            permitWaiter.execute(waitingCall);
+        } catch (RejectedExecutionException e) {
+            waitingCall.fail(new MicoCloudEventException(SHUTDOWN_MESSAGE, e, waitingCall.call.cloudEvent));
+        }
+    }
+
+    /**
+     * A non-blocking call that waits for its permit on the wait thread.
+     */
+    private final class WaitingCall implements Runnable {
+
+        private final AsyncCall call;
+
+        private final FunctionCallGuard guard;
+
+        private WaitingCall(AsyncCall call, FunctionCallGuard guard) {
+            this.call = call;
+            this.guard = guard;
+        }
+
+        @Override
+        public void run() {
+            CircuitBreaker.Permit permit;
+            try {
+                permit = guard.acquire(call.cloudEvent);
+            } catch (MicoCloudEventException e) {
+                fail(e);
+                return;
+            }
+            consumerBackpressure.completeWaitingCall();
+            call.start(guard, permit);
+        }
+
+        private void fail(MicoCloudEventException e) {
+            consumerBackpressure.completeWaitingCall();
+            call.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A non-blocking function call of a single request or, if it is hedged, of up to two requests.
+     * <p>
+     * The request whose response arrives first wins the call and the other request is cancelled. Only the response
+     * of the winner is fed into the result parser. A failed request only fails the call if no other request is in flight.
+     * The call is cancelled at the deadline of the cloud event. Whatever completes the call first (the response,
+     * an error or the deadline) completes it, later signals are ignored.
+     */
+    private final class AsyncCall {
+
+        private final String functionName;
+
+        private final byte[] cloudEventSerialized;
+
+        private final MicoCloudEventImpl<JsonNode> cloudEvent;
+
+        private final FunctionResultParser resultParser;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        /**
+         * The requests of the call. The state of the call and its requests is guarded by the call.
+         */
+        private final List<AsyncRequest> requests = new ArrayList<>(2);
+
+        private AsyncRequest winner;
+
+        private boolean completed;
+
+        private Timeout deadlineTimeout;
+
+        private Timeout hedgeTimeout;
+
+        /**
+         * @param functionName         the name of the function
+         * @param cloudEventSerialized the serialized function input
+         * @param cloudEvent           the cloud event used as parameter for the function
+         * @param resultParser         the parser for the response
+         */
+        private AsyncCall(String functionName, byte[] cloudEventSerialized, MicoCloudEventImpl<JsonNode> cloudEvent, FunctionResultParser resultParser) {
+            this.functionName = functionName;
+            this.cloudEventSerialized = cloudEventSerialized;
+            this.cloudEvent = cloudEvent;
+            this.resultParser = resultParser;
+        }
+
+        /**
+         * Send the first request and schedule the deadline and the hedge.
+         *
+         * @param guard  the acquired guard of the first request
+         * @param permit the permit of the first request
+         */
+        private void start(FunctionCallGuard guard, CircuitBreaker.Permit permit) {
+            log.debug("Start async request to function '{}'", guard.getFunctionUrl());
+            long start = System.nanoTime();
+            if (cloudEvent.getExpiryDate().map(DeadlineTimer::isExpired).orElse(false)) {
+                // the deadline passed while waiting for the concurrency limit or the circuit breaker
+                expireFunctionCall(guard, permit, start);
+                result.completeExceptionally(expired(cloudEvent));
+                return;
+            }
+            AsyncRequest request = new AsyncRequest(this, guard, permit, start, false);
+            synchronized (this) {
+                requests.add(request);
+            }
+            request.send();
+            cloudEvent.getExpiryDate().ifPresent(deadline -> {
+                Timeout timeout = deadlineTimer.schedule(deadline, this::expire);
+                synchronized (this) {
+                    if (completed) {
+                        // the call completed before the deadline was scheduled
+                        timeout.cancel();
+                    } else {
+                        deadlineTimeout = timeout;
+                    }
+                }
+            });
+            if (isHedged(functionName)) {
+                requestHedger.onCall();
+                long delayNanos = requestHedger.getDelayNanos();
+                if (delayNanos > 0) {
+                    Timeout timeout = deadlineTimer.schedule(delayNanos, this::hedge);
+                    synchronized (this) {
+                        if (completed) {
+                            timeout.cancel();
+                        } else {
+                            hedgeTimeout = timeout;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Send the hedged request if no response arrived yet. Runs on the timer thread, so it must not block:
+         * the hedge is skipped if the budget is spent or the concurrency limit is reached.
+         */
+        private void hedge() {
+            synchronized (this) {
+                if (completed || winner != null) {
+                    return;
+                }
+            }
+            if (!requestHedger.tryAcquire()) {
+                return;
+            }
+            FunctionCallGuard guard;
+            try {
+                guard = getFunctionCallGuard(functionName, cloudEvent);
+            } catch (MicoCloudEventException e) {
+                requestHedger.refund();
+                return;
+            }
+            CircuitBreaker.Permit permit = guard.tryAcquire();
+            if (permit == null) {
+                requestHedger.refund();
+                return;
+            }
+            AsyncRequest request = new AsyncRequest(this, guard, permit, System.nanoTime(), true);
+            boolean send;
+            synchronized (this) {
+                send = !completed && winner == null;
+                if (send) {
+                    requests.add(request);
+                }
+            }
+            if (!send) {
+                cancelFunctionCall(guard, permit, request.start, STATUS_CANCELLED);
+                requestHedger.refund();
+                return;
+            }
+            requestHedger.onHedgeSent();
+            log.debug("Hedge the call of function '{}' with a request to '{}'", functionName, guard.getFunctionUrl());
+            request.send();
+        }
+
+        /**
+         * Let a request win the call once its response arrives and cancel the other request.
+         *
+         * @return {@code false} if the call was completed or won by the other request
+         */
+        private boolean claim(AsyncRequest request) {
+            List<AsyncRequest> losers = new ArrayList<>(1);
+            synchronized (this) {
+                if (completed) {
+                    return false;
+                }
+                if (winner != null) {
+                    return winner == request;
+                }
+                if (request.done) {
+                    return false;
+                }
+                winner = request;
+                for (AsyncRequest other : requests) {
+                    if (other != request && !other.done) {
+                        other.done = true;
+                        losers.add(other);
+                    }
+                }
+                if (hedgeTimeout != null) {
+                    hedgeTimeout.cancel();
+                }
+            }
+            losers.forEach(loser -> loser.cancel(STATUS_CANCELLED));
+            if (request.hedge) {
+                requestHedger.onHedgeWon();
+            }
+            return true;
+        }
+
+        /**
+         * Complete the call with a failed request unless another request is still in flight.
+         *
+         * @return {@code true} if the failed request completed the call
+         */
+        private synchronized boolean fail(AsyncRequest request) {
+            if (completed) {
+                return false;
+            }
+            if (winner != request) {
+                for (AsyncRequest other : requests) {
+                    if (other != request && !other.done) {
+                        return false;
+                    }
+                }
+            }
+            complete();
+            return true;
+        }
+
+        /**
+         * Mark the call as completed and cancel its deadline and its hedge. Has to be called while holding the lock of the call.
+         */
+        private void complete() {
+            completed = true;
+            if (deadlineTimeout != null) {
+                deadlineTimeout.cancel();
+            }
+            if (hedgeTimeout != null) {
+                hedgeTimeout.cancel();
+            }
+        }
+
+        /**
+         * Cancel the requests in flight at the deadline of the cloud event.
+         */
+        private void expire() {
+            List<AsyncRequest> inFlight = new ArrayList<>(2);
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                complete();
+                for (AsyncRequest request : requests) {
+                    if (!request.done) {
+                        request.done = true;
+                        inFlight.add(request);
+                    }
+                }
+            }
+            inFlight.forEach(request -> request.cancel(STATUS_EXPIRED));
+            deadlineTimer.recordExpired(DeadlineTimer.STAGE_FUNCTION);
+            result.completeExceptionally(expired(cloudEvent));
+        }
+    }
+
+    /**
+     * A single request of a non-blocking function call.
+     */
+    private final class AsyncRequest {
+
+        private final AsyncCall call;
+
+        private final FunctionCallGuard guard;
+
+        private final CircuitBreaker.Permit permit;
+
+        private final long start;
+
+        private final boolean hedge;
+
+        /**
+         * Whether the request is completed or cancelled and its permit was (or is being) released.
+         */
+        private boolean done;
+
+        private Disposable subscription;
+
+        /**
+         * @param call  the function call of the request
+         * @param guard  the acquired guard of the function url
+         * @param permit the permit of the request
+         * @param start  the start of the request in nanoseconds
+         * @param hedge  whether the request is the hedged one
+         */
+        private AsyncRequest(AsyncCall call, FunctionCallGuard guard, CircuitBreaker.Permit permit, long start, boolean hedge) {
+            this.call = call;
+            this.guard = guard;
+            this.permit = permit;
+            this.start = start;
+            this.hedge = hedge;
+        }
+
+        /**
+         * Start the non-blocking request to the function.
+         */
+        private void send() {
+            Disposable request;
+            try {
+                request = webClient.post()
+                    .uri(guard.getFunctionUrl().toString())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .syncBody(call.cloudEventSerialized)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .timeout(Duration.ofMillis(openFaaSConfig.getTimeoutMs()))
+                    .subscribe(this::onChunk, this::onError, this::onComplete);
+            } catch (RuntimeException e) {
+                onError(e);
+                return;
+            }
+            boolean cancelled;
+            synchronized (call) {
+                cancelled = done;
+                subscription = request;
+            }
+            if (cancelled) {
+                // cancelled before the subscription was known
+                request.dispose();
+            }
+        }
+
+        /**
+         * Dispose the request that lost the call or expired. The request has to be marked as done before.
+         */
+        private void cancel(String statusTag) {
+            Disposable request;
+            synchronized (call) {
+                request = subscription;
+            }
+            if (request != null) {
+                request.dispose();
+            }
+            if (isHedged(call.functionName) && !hedge && STATUS_CANCELLED.equals(statusTag)) {
+                // the first request lost to its hedge, it took at least until now
+                requestHedger.onRoundTrip(System.nanoTime() - start);
+            }
+            cancelFunctionCall(guard, permit, start, statusTag);
+        }
+
+        private void onChunk(DataBuffer buffer) {
+            try {
+                if (!call.claim(this)) {
+                    // cancelled at the deadline or lost to the other request
+                    return;
+                }
+                byte[] chunk = new byte[buffer.readableByteCount()];
+                buffer.read(chunk);
+                call.resultParser.feed(chunk, 0, chunk.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        private void onError(Throwable error) {
+            synchronized (call) {
+                if (done) {
+                    // cancelled at the deadline or lost to the other request
+                    return;
+                }
+                done = true;
+            }
+            URL functionUrl = guard.getFunctionUrl();
+            if (error instanceof WebClientResponseException) {
+                int status = ((WebClientResponseException) error).getRawStatusCode();
+                completeFunctionCall(guard, permit, start, status, getOutcome(status));
+                log.error("FaaS function '{}' returned http status code '{}'. Expected 200 OK.",
+                    functionUrl, ((WebClientResponseException) error).getStatusCode());
+            } else if (error instanceof UncheckedIOException) {
+                // the response could not be parsed
+                completeFunctionCall(guard, permit, start, HttpStatus.OK.value(), FunctionCallGuard.Outcome.IGNORED);
+                log.error("Failed to parse the response of FaaS function '{}'. Caused by: {}", functionUrl, error.getMessage());
+            } else {
+                completeFunctionCall(guard, permit, start, 0, FunctionCallGuard.Outcome.DROPPED);
+                log.error("Failed to call FaaS function '{}'. Caused by: {}", functionUrl, error.getMessage());
+            }
+            if (call.fail(this)) {
+                call.result.completeExceptionally(new MicoCloudEventException(error.toString(), error, call.cloudEvent));
+            }
+        }
+
+        private void onComplete() {
+            if (!call.claim(this)) {
+                return;
+            }
+            synchronized (call) {
+                if (call.completed) {
+                    return;
+                }
+                done = true;
+                call.complete();
+            }
+            if (isHedged(call.functionName) && !hedge) {
+                requestHedger.onRoundTrip(System.nanoTime() - start);
+            }
+            completeFunctionCall(guard, permit, start, HttpStatus.OK.value(), FunctionCallGuard.Outcome.SUCCESS);
+            try {
+                int events = call.resultParser.finish();
+                recordFunctionResult(call.resultParser, events);
+                log.debug("Faas call resulted in {} cloud events", events);
+                call.result.complete(null);
+            } catch (IOException e) {
+                log.error("Failed to parse the response of FaaS function '{}'. Caused by: {}", guard.getFunctionUrl(), e.getMessage());
+                call.result.completeExceptionally(new MicoCloudEventException("Failed to parse JSON from response from the faas-function.", e, call.cloudEvent));
+            }
+        }
+    }
+
+    /**
+     * Checks if the calls of the function are batched. Only the configured function is called in batches.
+     */
+    private boolean isBatched(String functionName) {
+        return functionCallBatcher != null && functionName.equals(openFaaSConfig.getFunctionName());
+    }
+
+    /**
+     * Checks if slow calls of the function are hedged. Only the configured function is hedged, because
+     * only it is declared idempotent by enabling hedging. Chained functions and batched calls are never hedged.
+     */
+    private boolean isHedged(String functionName) {
+        return requestHedger != null && functionName.equals(openFaaSConfig.getFunctionName()) && !isBatched(functionName);
+    }
+
+    /**
+     * Wait for the result of a batched or hedged function call.
+     *
+     * @param call       the future result of the call
+     * @param cloudEvent the cloud event used as parameter for the function
+     * @return the result of the call
+     */
+    private static FunctionResult awaitCall(CompletableFuture<FunctionResult> call, MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MicoCloudEventException) {
+                throw (MicoCloudEventException) e.getCause();
+            }
+            throw new MicoCloudEventException(e.getCause().getMessage(), e.getCause(), cloudEvent);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MicoCloudEventException("Interrupted while waiting for the function call.", e, cloudEvent);
+        }
+    }
+
+    /**
+     * Get the key of the function call for the result cache and the coalescing of calls.
+     * Only the results of the configured function are cached or shared, because only it is declared pure
+     * by enabling them. Chained functions are always called.
+     *
+     * @return the key or {@code null} if results are neither cached nor shared
+     */
+    private String getResultKey(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent) {
+        if (resultCache == null && !openFaaSConfig.isCoalesceCalls() || !functionName.equals(openFaaSConfig.getFunctionName())) {
+            return null;
+        }
+        return FunctionResultCache.getKey(functionName, cloudEvent);
+    }
+
+    /**
+     * Pass the cached result of a function call on if there is one.
+     *
+     * @param resultKey      the key of the function call
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     * @return {@code true} if the cached result was passed on, {@code false} if the function has to be called
+     */
+    private boolean replayCachedResult(String resultKey, String functionName, MicoCloudEventImpl<JsonNode> cloudEvent,
+                                       Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        Optional<FunctionResult> cached = resultCache == null ? Optional.empty() : resultCache.get(resultKey);
+        if (!cached.isPresent()) {
+            return false;
+        }
+        replayFunctionResult(cached.get(), functionName, cloudEvent, resultConsumer);
+        return true;
+    }
+
+    /**
+     * Cache the result of a completed function call and pass it on to the calls waiting for it.
+     * <p>
+     * A call cancelled at the deadline of its own cloud event shares no result,
+     * the waiting calls call the function themselves.
+     *
+     * @param resultKey      the key of the function call
+     * @param sharedCall     the future the waiting calls wait for
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param functionResult the result of the call or {@code null} if it failed
+     * @param error          the error of the call or {@code null} if it succeeded
+     */
+    private void completeSharedCall(String resultKey, CompletableFuture<FunctionResult> sharedCall, MicoCloudEventImpl<JsonNode> cloudEvent,
+                                    FunctionResult functionResult, Throwable error) {
+        if (error == null) {
+            if (resultCache != null) {
+                resultCache.put(resultKey, functionResult);
+            }
+            sharedCall.complete(functionResult);
+        } else if (cloudEvent.getExpiryDate().map(DeadlineTimer::isExpired).orElse(false)) {
+            sharedCall.complete(null);
+        } else {
+            sharedCall.completeExceptionally(error);
+        }
+        if (openFaaSConfig.isCoalesceCalls()) {
+            inFlightCalls.remove(resultKey, sharedCall);
+        }
+    }
+
+    /**
+     * Wait for a function call with the same data that is already in flight and pass its result on.
+     * Calls the function if the call in flight shares no result.
+     *
+     * @param sharedCall     the call in flight
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     */
+    private void awaitSharedCall(CompletableFuture<FunctionResult> sharedCall, String functionName, MicoCloudEventImpl<JsonNode> cloudEvent,
+                                 Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) throws MicoCloudEventException {
+        coalescedCalls.increment();
+        log.debug("Wait for the function call in flight with the data of cloud event '{}'", cloudEvent.getId());
+        ZonedDateTime deadline = cloudEvent.getExpiryDate().orElse(null);
+        FunctionResult functionResult;
+        try {
+            functionResult = deadline == null
+                ? sharedCall.get()
+                : sharedCall.get(Math.max(0, DeadlineTimer.getRemainingMillis(deadline)), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            deadlineTimer.recordExpired(DeadlineTimer.STAGE_FUNCTION);
+            throw expired(cloudEvent);
+        } catch (ExecutionException e) {
+            throw sharedCallFailed(e.getCause(), cloudEvent);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MicoCloudEventException("Interrupted while waiting for the function call.", e, cloudEvent);
+        }
+        if (functionResult == null) {
+            invokeFunction(functionName, cloudEvent, resultConsumer, false);
+        } else {
+            replayFunctionResult(functionResult, functionName, cloudEvent, resultConsumer);
+        }
+    }
+
+    /**
+     * Pass the result of a function call with the same data that is already in flight on once it completes.
+     * Calls the function if the call in flight shares no result.
+     *
+     * @param sharedCall     the call in flight
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     * @return a future that completes after the result was passed on
+     */
+    private CompletableFuture<Void> followSharedCall(CompletableFuture<FunctionResult> sharedCall, String functionName,
+                                                     MicoCloudEventImpl<JsonNode> cloudEvent, Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        coalescedCalls.increment();
+        log.debug("Wait for the function call in flight with the data of cloud event '{}'", cloudEvent.getId());
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Timeout deadlineTimeout = cloudEvent.getExpiryDate().map(deadline -> deadlineTimer.schedule(deadline, () -> {
+            if (result.completeExceptionally(expired(cloudEvent))) {
+                deadlineTimer.recordExpired(DeadlineTimer.STAGE_FUNCTION);
+            }
+        })).orElse(null);
+        sharedCall.whenComplete((functionResult, error) -> {
+            if (deadlineTimeout != null) {
+                deadlineTimeout.cancel();
+            }
+            if (result.isDone()) {
+                // expired while waiting
+                return;
+            }
+            if (error != null) {
+                result.completeExceptionally(sharedCallFailed(error, cloudEvent));
+            } else if (functionResult == null) {
+                invokeFunctionAsync(functionName, cloudEvent, resultConsumer, false).whenComplete((ignored, callError) -> {
+                    if (callError == null) {
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(callError);
+                    }
+                });
+            } else {
+                try {
+                    replayFunctionResult(functionResult, functionName, cloudEvent, resultConsumer);
+                    result.complete(null);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Create the exception for a cloud event whose shared function call failed.
+     */
+    private static MicoCloudEventException sharedCallFailed(Throwable error, MicoCloudEventImpl<JsonNode> cloudEvent) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return new MicoCloudEventException(cause.getMessage(), cause, cloudEvent);
+    }
+
+    /**
+     * Pass the result of a function call with the same data on as if the function was called with the cloud event.
+     * The resulting cloud events are rebased onto the cloud event, see
+     * {@link #rebaseFunctionResult(MicoCloudEventImpl, MicoCloudEventImpl, MicoCloudEventImpl)}.
+     *
+     * @param functionResult the result of the function call with the same data
+     * @param functionName   the name of the function
+     * @param cloudEvent     the cloud event used as parameter for the function
+     * @param resultConsumer receives the resulting cloud events
+     */
+    private void replayFunctionResult(FunctionResult functionResult, String functionName, MicoCloudEventImpl<JsonNode> cloudEvent,
+                                      Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        MicoCloudEventImpl<JsonNode> functionInput = createFunctionInput(functionName, cloudEvent);
+        for (MicoCloudEventImpl<JsonNode> resultEvent : functionResult.getResults()) {
+            resultConsumer.accept(rebaseFunctionResult(resultEvent, functionResult.getInput(), functionInput));
+        }
+        log.debug("Replayed {} resulting cloud events for cloud event '{}'", functionResult.getResults().size(), cloudEvent.getId());
+    }
+
+    /**
+     * Rebase a resulting cloud event of another function call onto a new function input.
+     * <p>
+     * The result keeps the id of the input if it had the id of the other input, otherwise it gets a new random id.
+     * Every header the result copied from the other input (createdFrom, correlationId, expiry date, routing slip, ...)
+     * is replaced with the header of the new input. The route history is replaced with the route of the new input,
+     * which already contains the function call.
+     *
+     * @param resultEvent the resulting cloud event of the other function call
+     * @param otherInput  the input of the other function call
+     * @param input       the new function input
+     * @return the result event as if the function was called with the new input
+     */
+    private static MicoCloudEventImpl<JsonNode> rebaseFunctionResult(MicoCloudEventImpl<JsonNode> resultEvent, MicoCloudEventImpl<JsonNode> otherInput,
+                                                                     MicoCloudEventImpl<JsonNode> input) {
+        MicoCloudEventImpl.Builder<JsonNode> builder = resultEvent.toBuilder();
+        if (otherInput.getId().equals(resultEvent.getId())) {
+            builder.id(input.getId());
+        } else {
+            builder.randomId();
+        }
+        if (resultEvent.getCreatedFrom().map(otherInput.getId()::equals).orElse(false)) {
+            builder.createdFrom(input.getId());
+        } else {
+            builder.createdFrom(rebase(resultEvent.getCreatedFrom(), otherInput.getCreatedFrom(), input.getCreatedFrom()));
+        }
+        if (resultEvent.getRoute().isPresent()) {
+            builder.route(input.getRoute().orElse(null));
+        }
+        return builder
+            .correlationId(rebase(resultEvent.getCorrelationId(), otherInput.getCorrelationId(), input.getCorrelationId()))
+            .expiryDate(rebase(resultEvent.getExpiryDate(), otherInput.getExpiryDate(), input.getExpiryDate()))
+            .time(rebase(resultEvent.getTime(), otherInput.getTime(), input.getTime()))
+            .routingSlip(rebase(resultEvent.getRoutingSlip(), otherInput.getRoutingSlip(), input.getRoutingSlip()))
+            .isTestMessage(rebase(resultEvent.isTestMessage(), otherInput.isTestMessage(), input.isTestMessage()))
+            .filterOutBeforeTopic(rebase(resultEvent.getFilterOutBeforeTopic(), otherInput.getFilterOutBeforeTopic(), input.getFilterOutBeforeTopic()))
+            .build();
+    }
+
+    /**
+     * Get the header of the new input if the result copied it from the other input, otherwise the header of the result.
+     */
+    private static <T> T rebase(Optional<T> resultValue, Optional<T> otherInputValue, Optional<T> inputValue) {
+        return resultValue.equals(otherInputValue) ? inputValue.orElse(null) : resultValue.orElse(null);
+    }
+
+    /**
+     * Collect the resulting cloud events while passing them on.
+     */
+    private static Consumer<MicoCloudEventImpl<JsonNode>> collectingConsumer(List<MicoCloudEventImpl<JsonNode>> resultToKeep,
+                                                                            Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) {
+        return resultEvent -> {
+            resultToKeep.add(resultEvent);
+            resultConsumer.accept(resultEvent);
+        };
     }
 
     /**
@@ -88,13 +1191,191 @@ public class FaasController {
      * @return an ArrayList of cloud events
      */
     public ArrayList<MicoCloudEventImpl<JsonNode>> parseFunctionResult(String functionResult, MicoCloudEventImpl<JsonNode> sourceCloudEvent) throws MicoCloudEventException {
+        return parseFunctionResult(functionResult == null ? null : functionResult.getBytes(StandardCharsets.UTF_8), sourceCloudEvent);
+    }
+
+    /**
+     * Parse the UTF-8 encoded result of a faas function call.
+     *
+     * @param sourceCloudEvent only used for better error messages
+     * @return an ArrayList of cloud events
+     */
+    public ArrayList<MicoCloudEventImpl<JsonNode>> parseFunctionResult(byte[] functionResult, MicoCloudEventImpl<JsonNode> sourceCloudEvent) throws MicoCloudEventException {
+        if (functionResult == null) {
+            throw new MicoCloudEventException("The faas-function returned an empty response.", sourceCloudEvent);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Faas call resulted in: '{}'", new String(functionResult, StandardCharsets.UTF_8));
+        }
+        ArrayList<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>();
         try {
-            return Json.decodeValue(functionResult, new TypeReference<ArrayList<MicoCloudEventImpl<JsonNode>>>() {
-            });
-        } catch (IllegalStateException e) {
-            log.error("Failed to parse JSON from response '{}'.", functionResult);
+            FunctionResultParser resultParser = createResultParser(result::add);
+            resultParser.feed(functionResult, 0, functionResult.length);
+            recordFunctionResult(resultParser, resultParser.finish());
+            return result;
+        } catch (IOException e) {
+            log.error("Failed to parse JSON from response '{}'.", new String(functionResult, StandardCharsets.UTF_8));
             throw new MicoCloudEventException("Failed to parse JSON from response from the faas-function.", sourceCloudEvent);
         }
     }
 
+    /**
+     * Create a parser for a single function response with the configured limits.
+     *
+     * @param resultConsumer receives the resulting cloud events
+     */
+    private FunctionResultParser createResultParser(Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) throws IOException {
+        return new FunctionResultParser(openFaaSConfig.getMaxResponseSize(), openFaaSConfig.getMaxResultEvents(), resultConsumer);
+    }
+
+    /**
+     * Choose the endpoint for a call of a function and get the concurrency limit and circuit breaker of its function url.
+     *
+     * @param functionName the name of the function
+     * @param cloudEvent   only used for better error messages
+     * @return the guard of the function url at the chosen endpoint
+     */
+    FunctionCallGuard getFunctionCallGuard(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
+        FunctionEndpoints.Endpoint endpoint = functionEndpoints.choose(functionName);
+        URL functionUrl;
+        try {
+            functionUrl = endpoint.getFunctionUrl(functionName);
+        } catch (MalformedURLException e) {
+            endpoint.onSkipped();
+            throw new MicoCloudEventException("Failed to call faas-function. Caused by: " + e.getMessage(), cloudEvent);
+        }
+        return functionCallGuards.computeIfAbsent(functionUrl.toString(),
+            url -> new FunctionCallGuard(functionName, endpoint, functionUrl, openFaaSConfig, meterRegistry));
+    }
+
+    /**
+     * Release the permit of a completed function call and record its duration.
+     *
+     * @param guard   the guard of the function
+     * @param permit  the permit of the call
+     * @param start   the start of the call in nanoseconds
+     * @param status  the http status of the response or {@code 0} if there was no response
+     * @param outcome the outcome of the call for the concurrency limit and the circuit breaker
+     */
+    void completeFunctionCall(FunctionCallGuard guard, CircuitBreaker.Permit permit, long start, int status, FunctionCallGuard.Outcome outcome) {
+        long duration = System.nanoTime() - start;
+        guard.release(permit, outcome, duration);
+        String statusTag = status == 0 ? STATUS_CLIENT_ERROR : String.valueOf(status);
+        getFunctionCallTimer(guard.getFunctionName(), statusTag).record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Release the permit of a call that was cancelled at the deadline of the cloud event.
+     * The cancelled call says nothing about the health of the function.
+     *
+     * @param guard  the guard of the function
+     * @param permit the permit of the call
+     * @param start  the start of the call in nanoseconds
+     */
+    private void expireFunctionCall(FunctionCallGuard guard, CircuitBreaker.Permit permit, long start) {
+        cancelFunctionCall(guard, permit, start, STATUS_EXPIRED);
+        deadlineTimer.recordExpired(DeadlineTimer.STAGE_FUNCTION);
+    }
+
+    /**
+     * Release the permit of a cancelled call and record its duration.
+     * The cancelled call says nothing about the health of the function.
+     *
+     * @param guard     the guard of the function
+     * @param permit    the permit of the call
+     * @param start     the start of the call in nanoseconds
+     * @param statusTag the status tag of the call timer
+     */
+    private void cancelFunctionCall(FunctionCallGuard guard, CircuitBreaker.Permit permit, long start, String statusTag) {
+        long duration = System.nanoTime() - start;
+        guard.release(permit, FunctionCallGuard.Outcome.IGNORED, duration);
+        getFunctionCallTimer(guard.getFunctionName(), statusTag).record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Create the exception for a cloud event that expired during the function call.
+     */
+    private static MicoCloudEventException expired(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        log.debug("Cancelled the function call of the expired cloud event '{}'.", cloudEvent.getId());
+        return new MicoCloudEventException("CloudEvent expired during the function call!", cloudEvent);
+    }
+
+    /**
+     * Get the cached timer of the calls of a function with the given status tag.
+     */
+    private Timer getFunctionCallTimer(String functionName, String statusTag) {
+        return functionCallTimers.computeIfAbsent(functionName + ' ' + statusTag, key -> Timer.builder("mico.connector.faas.call")
+            .description("The duration of the function calls")
+            .tag("function", String.valueOf(functionName))
+            .tag("status", statusTag)
+            .register(meterRegistry));
+    }
+
+    /**
+     * Get the outcome of a call with an error status. Only overload (429) and server errors (5xx)
+     * indicate an unhealthy function.
+     */
+    static FunctionCallGuard.Outcome getOutcome(int status) {
+        return status == HttpStatus.TOO_MANY_REQUESTS.value() || status >= 500
+            ? FunctionCallGuard.Outcome.DROPPED
+            : FunctionCallGuard.Outcome.IGNORED;
+    }
+
+    /**
+     * Record the parse time, the size and the number of events of a completely parsed function result.
+     */
+    private void recordFunctionResult(FunctionResultParser resultParser, int events) {
+        resultParsing.record(resultParser.getParseTimeNanos(), TimeUnit.NANOSECONDS);
+        responseSize.record(resultParser.getResponseSize());
+        resultEvents.record(events);
+    }
+
+    /**
+     * Checks if the function call is disabled or no function is given.
+     */
+    private boolean isFunctionCallSkipped(String functionName) {
+        if (this.openFaaSConfig.isSkipFunctionCall() || functionName == null || functionName.isEmpty()) {
+            log.debug("Skip faas function call. Function name '{}'", functionName);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add the function call to the route history.
+     *
+     * @param functionName the name of the function
+     * @param cloudEvent   the cloud event used as parameter for the function
+     * @return the function input
+     */
+    private MicoCloudEventImpl<JsonNode> createFunctionInput(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent) {
+        long start = System.nanoTime();
+        MicoCloudEventImpl<JsonNode> functionInput = cloudEventManipulator.updateRouteHistoryWithFunctionCall(cloudEvent, functionName);
+        routeUpdate.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return functionInput;
+    }
+
+    /**
+     * Serialize the function input.
+     *
+     * @param functionInput the function input
+     * @param cloudEvent    the cloud event used as parameter for the function, only used for better error messages
+     * @return the UTF-8 encoded cloud event
+     */
+    private byte[] serializeFunctionInput(MicoCloudEventImpl<JsonNode> functionInput, MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
+        try {
+            long start = System.nanoTime();
+            byte[] cloudEventSerialized = CloudEventCodec.encode(functionInput);
+            serialization.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            requestSize.record(cloudEventSerialized.length);
+            if (log.isDebugEnabled()) {
+                log.debug("Serialized cloud event: {}", new String(cloudEventSerialized, StandardCharsets.UTF_8));
+            }
+            return cloudEventSerialized;
+        } catch (IllegalStateException e) {
+            log.error("Failed to serialize CloudEvent '{}'.", cloudEvent);
+            throw new MicoCloudEventException("Failed to serialize CloudEvent while calling the faas-function.", cloudEvent);
+        }
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.JettyClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP clients for the function calls.
+ * <p>
+ * Both clients keep a pool of keep-alive connections to the gateway. The blocking client uses HTTP/1.1,
+ * the non-blocking client optionally HTTP/2 over cleartext (h2c) to multiplex the calls.
+ */
+@Configuration
+public class FaasHttpClientConfig {
+
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * The pooled client of the blocking function calls. Idle and expired connections are evicted in the background.
+     */
+    @Bean
+    public CloseableHttpClient faasHttpClient() {
+        MeteredConnectionManager connectionManager = new MeteredConnectionManager(meterRegistry);
+        connectionManager.setMaxTotal(openFaaSConfig.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(openFaaSConfig.getMaxConnectionsPerRoute());
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout((int) openFaaSConfig.getConnectTimeoutMs())
+                .setConnectionRequestTimeout((int) openFaaSConfig.getPoolWaitTimeoutMs())
+                .setSocketTimeout((int) openFaaSConfig.getTimeoutMs())
+                .build())
+            .setKeepAliveStrategy((response, context) -> {
+                long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return keepAlive > 0 ? keepAlive : openFaaSConfig.getKeepAliveMs();
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(openFaaSConfig.getConnectionIdleTimeoutMs(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * The timeouts of a function call are capped to the deadline of the cloud event.
+     *
+     * @see <a href="https://gist.github.com/RealDeanZhao/38821bc1efeb7e2a9bcd554cc06cdf96">RealDeanZhao/autowire-resttemplate.md</a>
+     */
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder builder) {
+        return builder
+            .requestFactory(() -> new DeadlineClientHttpRequestFactory(faasHttpClient()))
+            .build();
+    }
+
+    /**
+     * The connection pool of the non-blocking HTTP/1.1 client.
+     */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "openfaas", name = "http2", havingValue = "false", matchIfMissing = true)
+    public ConnectionProvider faasConnectionProvider() {
+        return ConnectionProvider.fixed("openfaas", openFaaSConfig.getMaxConnectionsPerRoute(), openFaaSConfig.getPoolWaitTimeoutMs());
+    }
+
+    /**
+     * The non-blocking HTTP/2 client. Function calls are multiplexed over its connections.
+     */
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "openfaas", name = "http2", havingValue = "true")
+    public org.eclipse.jetty.client.HttpClient faasHttp2Client() throws Exception {
+        org.eclipse.jetty.client.HttpClient httpClient = new org.eclipse.jetty.client.HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), null);
+        httpClient.setConnectTimeout(openFaaSConfig.getConnectTimeoutMs());
+        httpClient.setIdleTimeout(openFaaSConfig.getConnectionIdleTimeoutMs());
+        httpClient.setMaxConnectionsPerDestination(openFaaSConfig.getMaxConnectionsPerRoute());
+        httpClient.start();
+        return httpClient;
+    }
+
+    /**
+     * Non-blocking HTTP client used for the async FaaS invocation and the batched calls.
+     */
+    @Bean
+    public WebClient webClient(WebClient.Builder builder, ObjectProvider<ConnectionProvider> connectionProvider,
+                               ObjectProvider<org.eclipse.jetty.client.HttpClient> http2Client) {
+        ClientHttpConnector connector;
+        if (openFaaSConfig.isHttp2()) {
+            connector = new JettyClientHttpConnector(http2Client.getObject());
+        } else {
+            connector = new ReactorClientHttpConnector(HttpClient.create(connectionProvider.getObject())
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) openFaaSConfig.getConnectTimeoutMs())));
+        }
+        return builder.clientConnector(connector).build();
+    }
+}
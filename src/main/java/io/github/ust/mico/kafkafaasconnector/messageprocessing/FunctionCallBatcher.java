@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects function inputs and calls the function with a batch of inputs per request.
+ * <p>
+ * A batch is sent once it has {@code batchSize} inputs or its first input waited {@code batchLingerMs}.
+ * The function receives a JSON array of cloud events and has to return a JSON array with one array
+ * of resulting cloud events per input, in the order of the inputs. A failed batch call fails every
+ * input of the batch. A batch call acquires a single permit of the function call guard.
+ * <p>
+ * The linger thread never waits for a permit: if the concurrency limit is reached, the lingering batch
+ * is handed off to the wait thread, so the other batches keep their linger time.
+ */
+@Slf4j
+public class FunctionCallBatcher {
+
+    private static final JavaType BATCH_RESULT_TYPE = Json.MAPPER.getTypeFactory().constructCollectionType(List.class,
+        Json.MAPPER.getTypeFactory().constructCollectionType(List.class, CloudEventCodec.CLOUD_EVENT_TYPE));
+
+    /**
+     * An input waiting for its batch.
+     */
+    private static final class PendingCall {
+
+        private final MicoCloudEventImpl<JsonNode> cloudEvent;
+
+        private final MicoCloudEventImpl<JsonNode> functionInput;
+
+        private final CompletableFuture<FunctionResult> result = new CompletableFuture<>();
+
+        private PendingCall(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl<JsonNode> functionInput) {
+            this.cloudEvent = cloudEvent;
+            this.functionInput = functionInput;
+        }
+    }
+
+    private final FaasController faasController;
+
+    private final OpenFaaSConfig openFaaSConfig;
+
+    private final WebClient webClient;
+
+    private static final String SHUTDOWN_MESSAGE = "The batch was not sent because the connector is shutting down.";
+
+    private final ScheduledExecutorService lingerScheduler;
+
+    /**
+     * Waits for the permits of the lingering batches that found the concurrency limit reached.
+     */
+    private final ExecutorService permitWaiter;
+
+    private final DistributionSummary batchSizes;
+
+    private List<PendingCall> batch = new ArrayList<>();
+
+    private ScheduledFuture<?> lingerTimeout;
+
+    private boolean shutdown;
+
+    /**
+     * @param faasController the controller that guards and records the function calls
+     * @param openFaaSConfig the configuration of the batch size and linger time
+     * @param webClient      the client for the batch calls
+     * @param meterRegistry  the registry for the batch meters
+     */
+    public FunctionCallBatcher(FaasController faasController, OpenFaaSConfig openFaaSConfig, WebClient webClient, MeterRegistry meterRegistry) {
+        this.faasController = faasController;
+        this.openFaaSConfig = openFaaSConfig;
+        this.webClient = webClient;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("faas-batch-");
+        threadFactory.setDaemon(true);
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        CustomizableThreadFactory waitThreadFactory = new CustomizableThreadFactory("faas-batch-wait-");
+        waitThreadFactory.setDaemon(true);
+        this.permitWaiter = Executors.newSingleThreadExecutor(waitThreadFactory);
+        this.batchSizes = DistributionSummary.builder("mico.connector.faas.batch.size")
+            .description("The number of cloud events per batched function call")
+            .baseUnit("events")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Add a function input to the current batch. Sends the batch on the calling thread if it is full.
+     *
+     * @param cloudEvent    the cloud event used as parameter for the function
+     * @param functionInput the function input
+     * @return a future of the result of the input, completes exceptionally with a {@code MicoCloudEventException} if the batch call failed
+     */
+    public CompletableFuture<FunctionResult> submit(MicoCloudEventImpl<JsonNode> cloudEvent, MicoCloudEventImpl<JsonNode> functionInput) {
+        PendingCall call = new PendingCall(cloudEvent, functionInput);
+        List<PendingCall> fullBatch = null;
+        synchronized (this) {
+            if (shutdown) {
+                call.result.completeExceptionally(new MicoCloudEventException(SHUTDOWN_MESSAGE, cloudEvent));
+                return call.result;
+            }
+            batch.add(call);
+            if (batch.size() >= openFaaSConfig.getBatchSize()) {
+                fullBatch = takeBatch();
+            } else if (batch.size() == 1) {
+                lingerTimeout = lingerScheduler.schedule(this::sendLingeringBatch, openFaaSConfig.getBatchLingerMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch, true);
+        }
+        return call.result;
+    }
+
+    /**
+     * Stop the linger timer and the wait thread. The inputs that were not sent yet fail.
+     */
+    public void shutdown() {
+        List<PendingCall> calls;
+        synchronized (this) {
+            shutdown = true;
+            calls = takeBatch();
+        }
+        lingerScheduler.shutdownNow();
+        for (Runnable waiting : permitWaiter.shutdownNow()) {
+            if (waiting instanceof WaitingBatch) {
+                fail(((WaitingBatch) waiting).calls, SHUTDOWN_MESSAGE, null);
+            }
+        }
+        fail(calls, SHUTDOWN_MESSAGE, null);
+    }
+
+    private synchronized List<PendingCall> takeBatch() {
+        List<PendingCall> calls = batch;
+        batch = new ArrayList<>();
+        if (lingerTimeout != null) {
+            lingerTimeout.cancel(false);
+            lingerTimeout = null;
+        }
+        return calls;
+    }
+
+    private void sendLingeringBatch() {
+        List<PendingCall> calls;
+        synchronized (this) {
+            calls = batch.isEmpty() ? null : takeBatch();
+        }
+        if (calls != null) {
+            send(calls, false);
+        }
+    }
+
+    /**
+     * Call the function with a batch of inputs. The endpoint is chosen for the whole batch.
+     *
+     * @param calls    the inputs of the batch
+     * @param mayBlock whether the thread may wait while the concurrency limit of the function is reached,
+     *                 otherwise the batch is handed off to the wait thread
+     */
+    private void send(List<PendingCall> calls, boolean mayBlock) {
+        batchSizes.record(calls.size());
+        PendingCall first = calls.get(0);
+        byte[] request;
+        FunctionCallGuard guard;
+        CircuitBreaker.Permit permit;
+        try {
+            List<MicoCloudEventImpl<JsonNode>> inputs = new ArrayList<>(calls.size());
+            calls.forEach(call -> inputs.add(call.functionInput));
+            request = CloudEventCodec.encode(inputs);
+            guard = faasController.getFunctionCallGuard(openFaaSConfig.getFunctionName(), first.cloudEvent);
+            if (mayBlock) {
+                permit = guard.acquire(first.cloudEvent);
+            } else if ((permit = guard.tryAcquire()) == null) {
+                handOff(new WaitingBatch(calls, request, guard));
+                return;
+            }
+        } catch (IllegalStateException | MicoCloudEventException e) {
+            fail(calls, e.getMessage(), e);
+            return;
+        }
+        post(calls, request, guard, permit);
+    }
+
+    private void handOff(WaitingBatch waitingBatch) {
+        try {
+            permitWaiter.execute(waitingBatch);
+        } catch (RejectedExecutionException e) {
+            fail(waitingBatch.calls, SHUTDOWN_MESSAGE, e);
+        }
+    }
+
+    /**
+     * A batch that waits for a permit on the wait thread.
+     */
+    private final class WaitingBatch implements Runnable {
+
+        private final List<PendingCall> calls;
+
+        private final byte[] request;
+
+        private final FunctionCallGuard guard;
+
+        private WaitingBatch(List<PendingCall> calls, byte[] request, FunctionCallGuard guard) {
+            this.calls = calls;
+            this.request = request;
+            this.guard = guard;
+        }
+
+        @Override
+        public void run() {
+            CircuitBreaker.Permit permit;
+            try {
+                permit = guard.acquire(calls.get(0).cloudEvent);
+            } catch (MicoCloudEventException e) {
+                fail(calls, e.getMessage(), e);
+                return;
+            }
+            post(calls, request, guard, permit);
+        }
+    }
+
+    /**
+     * Send the request of a batch that acquired its permit.
+     */
+    private void post(List<PendingCall> calls, byte[] request, FunctionCallGuard guard, CircuitBreaker.Permit permit) {
+        URL functionUrl = guard.getFunctionUrl();
+        log.debug("Start batch request with {} cloud events to function '{}'", calls.size(), functionUrl);
+        long start = System.nanoTime();
+        try {
+            webClient.post()
+                .uri(functionUrl.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody(request)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .defaultIfEmpty(new byte[0])
+                .timeout(Duration.ofMillis(openFaaSConfig.getTimeoutMs()))
+                .subscribe(response -> complete(calls, response, guard, permit, start), error -> {
+                    if (error instanceof WebClientResponseException) {
+                        int status = ((WebClientResponseException) error).getRawStatusCode();
+                        faasController.completeFunctionCall(guard, permit, start, status, FaasController.getOutcome(status));
+                        log.error("FaaS function '{}' returned http status code '{}' for a batch. Expected 200 OK.",
+                            functionUrl, ((WebClientResponseException) error).getStatusCode());
+                    } else {
+                        faasController.completeFunctionCall(guard, permit, start, 0, FunctionCallGuard.Outcome.DROPPED);
+                        log.error("Failed to call FaaS function '{}' with a batch. Caused by: {}", functionUrl, error.getMessage());
+                    }
+                    fail(calls, error.toString(), error);
+                });
+        } catch (RuntimeException e) {
+            faasController.completeFunctionCall(guard, permit, start, 0, FunctionCallGuard.Outcome.DROPPED);
+            fail(calls, "Failed to call faas-function. Caused by: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Split the response of a batch call into the results of the inputs.
+     */
+    private void complete(List<PendingCall> calls, byte[] response, FunctionCallGuard guard, CircuitBreaker.Permit permit, long start) {
+        List<List<MicoCloudEventImpl<JsonNode>>> results;
+        try {
+            if (response.length > openFaaSConfig.getMaxResponseSize()) {
+                throw new IllegalStateException("The response exceeds the maximum size of " + openFaaSConfig.getMaxResponseSize() + " bytes.");
+            }
+            results = CloudEventCodec.decode(response, BATCH_RESULT_TYPE);
+            if (results == null || results.size() != calls.size()) {
+                throw new IllegalStateException("The faas-function returned " + (results == null ? 0 : results.size())
+                    + " results for " + calls.size() + " inputs.");
+            }
+        } catch (IllegalStateException e) {
+            faasController.completeFunctionCall(guard, permit, start, HttpStatus.OK.value(), FunctionCallGuard.Outcome.IGNORED);
+            log.error("Failed to parse the batch response of FaaS function '{}'. Caused by: {}", guard.getFunctionUrl(), e.getMessage());
+            fail(calls, "Failed to parse JSON from response from the faas-function.", e);
+            return;
+        }
+        faasController.completeFunctionCall(guard, permit, start, HttpStatus.OK.value(), FunctionCallGuard.Outcome.SUCCESS);
+        long responseSizePerInput = response.length / calls.size();
+        for (int i = 0; i < calls.size(); i++) {
+            PendingCall call = calls.get(i);
+            List<MicoCloudEventImpl<JsonNode>> result = results.get(i) == null ? new ArrayList<>() : results.get(i);
+            if (result.size() > openFaaSConfig.getMaxResultEvents()) {
+                call.result.completeExceptionally(new MicoCloudEventException("The faas-function returned more than "
+                    + openFaaSConfig.getMaxResultEvents() + " cloud events.", call.cloudEvent));
+            } else {
+                call.result.complete(new FunctionResult(call.functionInput, result, responseSizePerInput));
+            }
+        }
+    }
+
+    private static void fail(List<PendingCall> calls, String message, Throwable cause) {
+        for (PendingCall call : calls) {
+            call.result.completeExceptionally(new MicoCloudEventException(message, cause, call.cloudEvent));
+        }
+    }
+}
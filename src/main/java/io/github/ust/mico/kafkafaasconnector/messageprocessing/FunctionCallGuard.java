@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards the calls to a single function url with an adaptive concurrency limit and a circuit breaker.
+ * <p>
+ * Every call has to {@link #acquire(MicoCloudEventImpl) acquire} a permit first and
+ * {@link #release(CircuitBreaker.Permit, Outcome, long) release} it with the outcome of the call. The calls are also recorded
+ * at the endpoint of the url, so the load balancing sees them.
+ */
+@Slf4j
+public class FunctionCallGuard {
+
+    public enum Outcome {
+        /**
+         * The function returned a result.
+         */
+        SUCCESS,
+        /**
+         * The function is overloaded or unavailable (e.g. timeout, no connection or http status 5xx).
+         */
+        DROPPED,
+        /**
+         * The call failed for reasons unrelated to the health of the function (e.g. http status 4xx).
+         */
+        IGNORED
+    }
+
+    @Getter
+    private final String functionName;
+
+    @Getter
+    private final FunctionEndpoints.Endpoint endpoint;
+
+    @Getter
+    private final URL functionUrl;
+
+    private final OpenFaaSConfig.CircuitBreakerMode circuitBreakerMode;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Counter rejectedCalls;
+
+    /**
+     * @param functionName   the name of the function
+     * @param endpoint       the endpoint of the function url
+     * @param functionUrl    the url of the function
+     * @param openFaaSConfig the configuration of the limit and the circuit breaker
+     * @param meterRegistry  the registry for the limit, round-trip time and circuit breaker meters
+     */
+    public FunctionCallGuard(String functionName, FunctionEndpoints.Endpoint endpoint, URL functionUrl, OpenFaaSConfig openFaaSConfig,
+                             MeterRegistry meterRegistry) {
+        this.functionName = functionName;
+        this.endpoint = endpoint;
+        this.functionUrl = functionUrl;
+        String url = functionUrl.toString();
+        this.circuitBreakerMode = openFaaSConfig.getCircuitBreakerMode();
+        int maxLimit = openFaaSConfig.getMaxInFlightRequests();
+        this.limiter = openFaaSConfig.isAdaptiveConcurrency()
+            ? new AdaptiveConcurrencyLimiter(openFaaSConfig.getInitialConcurrency(), openFaaSConfig.getMinConcurrency(), maxLimit, openFaaSConfig.getRttTolerance())
+            : new AdaptiveConcurrencyLimiter(maxLimit, maxLimit, maxLimit, Double.MAX_VALUE);
+        this.circuitBreaker = openFaaSConfig.isCircuitBreaker()
+            ? new CircuitBreaker(openFaaSConfig.getCircuitBreakerWindow(), openFaaSConfig.getCircuitBreakerFailureRate(),
+            TimeUnit.MILLISECONDS.toNanos(openFaaSConfig.getCircuitBreakerOpenMs()))
+            : null;
+
+        Gauge.builder("mico.connector.faas.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .description("The current limit of concurrent function calls")
+            .tag("url", url)
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.faas.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .description("The number of function calls in flight")
+            .tag("url", url)
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.faas.rtt", limiter, AdaptiveConcurrencyLimiter::getRttMillis)
+            .description("The smoothed round-trip time of successful function calls")
+            .baseUnit("milliseconds")
+            .tag("url", url)
+            .register(meterRegistry);
+        if (circuitBreaker != null) {
+            Gauge.builder("mico.connector.faas.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("The state of the circuit breaker (0 closed, 1 open, 2 half-open)")
+                .tag("url", url)
+                .register(meterRegistry);
+        }
+        this.rejectedCalls = Counter.builder("mico.connector.faas.circuit.rejected")
+            .description("The number of function calls rejected by the open circuit breaker")
+            .tag("url", url)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Acquire a permit for a function call. Blocks while the concurrency limit is reached
+     * and, in the {@code WAIT} mode, while the circuit breaker is open.
+     *
+     * @param cloudEvent the cloud event used as parameter for the function, only used for error messages
+     * @return the permit of the call, a probe of the half-open circuit breaker is a {@link CircuitBreaker.Permit#PROBE}
+     * @throws MicoCloudEventException if the circuit breaker is open (in the {@code FAIL_FAST} mode) or the thread was interrupted
+     */
+    public CircuitBreaker.Permit acquire(MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
+        CircuitBreaker.Permit permit = CircuitBreaker.Permit.CALL;
+        try {
+            if (circuitBreaker != null) {
+                if (circuitBreakerMode == OpenFaaSConfig.CircuitBreakerMode.WAIT) {
+                    permit = circuitBreaker.acquirePermission();
+                } else if ((permit = circuitBreaker.tryAcquirePermission()) == null) {
+                    throw reject(cloudEvent);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            endpoint.onSkipped();
+            throw new MicoCloudEventException("Interrupted while waiting for the circuit breaker of the faas-function.", e, cloudEvent);
+        }
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (circuitBreaker != null) {
+                // the call did not happen, so it says nothing about the health of the function
+                circuitBreaker.releasePermission(permit);
+            }
+            endpoint.onSkipped();
+            throw new MicoCloudEventException("Interrupted while waiting to call the faas-function.", e, cloudEvent);
+        }
+        endpoint.onStart();
+        return permit;
+    }
+
+    /**
+     * Acquire a permit for a function call without waiting, e.g. for a hedged request.
+     *
+     * @return the permit of the call or {@code null} if the circuit breaker is open or the concurrency limit is reached
+     */
+    public CircuitBreaker.Permit tryAcquire() {
+        CircuitBreaker.Permit permit = CircuitBreaker.Permit.CALL;
+        if (circuitBreaker != null && (permit = circuitBreaker.tryAcquirePermission()) == null) {
+            endpoint.onSkipped();
+            return null;
+        }
+        return tryAcquireLimit(permit);
+    }
+
+    /**
+     * Acquire a permit for a function call without waiting, but reject it like {@link #acquire(MicoCloudEventImpl)}
+     * if the circuit breaker is open in the {@code FAIL_FAST} mode.
+     *
+     * @param cloudEvent the cloud event used as parameter for the function, only used for error messages
+     * @return the permit of the call or {@code null} if the call has to wait for the concurrency limit
+     * or, in the {@code WAIT} mode, for the circuit breaker
+     * @throws MicoCloudEventException if the circuit breaker is open (in the {@code FAIL_FAST} mode)
+     */
+    public CircuitBreaker.Permit tryAcquire(MicoCloudEventImpl<JsonNode> cloudEvent) throws MicoCloudEventException {
+        CircuitBreaker.Permit permit = CircuitBreaker.Permit.CALL;
+        if (circuitBreaker != null && (permit = circuitBreaker.tryAcquirePermission()) == null) {
+            if (circuitBreakerMode != OpenFaaSConfig.CircuitBreakerMode.WAIT) {
+                throw reject(cloudEvent);
+            }
+            endpoint.onSkipped();
+            return null;
+        }
+        return tryAcquireLimit(permit);
+    }
+
+    private CircuitBreaker.Permit tryAcquireLimit(CircuitBreaker.Permit permit) {
+        if (!limiter.tryAcquire()) {
+            if (circuitBreaker != null) {
+                // the call did not happen, so it says nothing about the health of the function
+                circuitBreaker.releasePermission(permit);
+            }
+            endpoint.onSkipped();
+            return null;
+        }
+        endpoint.onStart();
+        return permit;
+    }
+
+    private MicoCloudEventException reject(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        rejectedCalls.increment();
+        endpoint.onSkipped();
+        return new MicoCloudEventException("The circuit breaker of the faas-function '" + functionUrl + "' is open.", cloudEvent);
+    }
+
+    /**
+     * Release the permit of a completed function call.
+     *
+     * @param permit   the permit returned when the call was acquired
+     * @param outcome  the outcome of the call
+     * @param rttNanos the round-trip time of the call
+     */
+    public void release(CircuitBreaker.Permit permit, Outcome outcome, long rttNanos) {
+        endpoint.onComplete(outcome, rttNanos);
+        switch (outcome) {
+            case SUCCESS:
+                limiter.onSuccess(rttNanos);
+                break;
+            case DROPPED:
+                limiter.onDropped();
+                break;
+            default:
+                limiter.onIgnored();
+        }
+        if (circuitBreaker != null) {
+            if (outcome == Outcome.DROPPED) {
+                if (circuitBreaker.onFailure(permit)) {
+                    log.warn("The circuit breaker of the faas-function '{}' is open.", functionUrl);
+                }
+            } else if (outcome == Outcome.SUCCESS) {
+                circuitBreaker.onSuccess(permit);
+            } else {
+                circuitBreaker.releasePermission(permit);
+            }
+        }
+    }
+
+    /**
+     * Get the concurrency limiter.
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Get the circuit breaker or {@code null} if it is disabled.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The endpoints the function calls are balanced across, either static or reloaded from a file.
+ * <p>
+ * Every call goes to the healthy endpoint with the fewest calls in flight (or the better of two random ones).
+ * An endpoint is ejected after consecutive failed calls. Once the ejection time is over, the next call is sent
+ * to it as a probe: if the probe succeeds, the endpoint is back in rotation, otherwise it is ejected again.
+ * If every endpoint is ejected, the calls still go to the one with the fewest calls in flight.
+ */
+@Slf4j
+public class FunctionEndpoints {
+
+    /**
+     * A gateway or an instance of the configured function.
+     */
+    public static final class Endpoint {
+
+        public enum State {
+            HEALTHY,
+            EJECTED,
+            PROBING
+        }
+
+        private final String baseUrl;
+
+        private final OpenFaaSConfig.EndpointType type;
+
+        private final Map<String, URL> functionUrls = new ConcurrentHashMap<>();
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final FunctionEndpoints endpoints;
+
+        private final Timer latency;
+
+        private final Counter ejections;
+
+        private State state = State.HEALTHY;
+
+        private int consecutiveFailures;
+
+        private long ejectedUntil;
+
+        private Endpoint(String baseUrl, OpenFaaSConfig.EndpointType type, FunctionEndpoints endpoints, MeterRegistry meterRegistry) {
+            this.baseUrl = baseUrl;
+            this.type = type;
+            this.endpoints = endpoints;
+            this.latency = Timer.builder("mico.connector.faas.endpoint.call")
+                .description("The duration of the function calls to an endpoint")
+                .tag("endpoint", baseUrl)
+                .register(meterRegistry);
+            this.ejections = Counter.builder("mico.connector.faas.endpoint.ejections")
+                .description("The number of times an endpoint was taken out of rotation")
+                .tag("endpoint", baseUrl)
+                .register(meterRegistry);
+            Gauge.builder("mico.connector.faas.endpoint.outstanding", outstanding, AtomicInteger::get)
+                .description("The number of function calls in flight to an endpoint")
+                .tag("endpoint", baseUrl)
+                .register(meterRegistry);
+            Gauge.builder("mico.connector.faas.endpoint.state", this, endpoint -> endpoint.getState().ordinal())
+                .description("The state of an endpoint (0 healthy, 1 ejected, 2 probing)")
+                .tag("endpoint", baseUrl)
+                .register(meterRegistry);
+        }
+
+        /**
+         * Get the base url of the endpoint.
+         */
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * Get the url of a function at this endpoint. The url is only resolved on the first call.
+         *
+         * @param functionName the name of the function
+         * @return the url of the function
+         * @throws MalformedURLException if the url is invalid
+         */
+        public URL getFunctionUrl(String functionName) throws MalformedURLException {
+            URL functionUrl = functionUrls.get(functionName);
+            if (functionUrl == null) {
+                functionUrl = type == OpenFaaSConfig.EndpointType.FUNCTION
+                    ? new URL(baseUrl)
+                    : OpenFaaSConfig.resolveFunctionUrl(baseUrl, functionName);
+                functionUrls.put(functionName, functionUrl);
+            }
+            return functionUrl;
+        }
+
+        /**
+         * Get the number of function calls in flight to this endpoint.
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        /**
+         * Record the start of a function call to this endpoint.
+         */
+        public void onStart() {
+            outstanding.incrementAndGet();
+        }
+
+        /**
+         * Record the end of a function call to this endpoint.
+         *
+         * @param outcome       the outcome of the call
+         * @param durationNanos the duration of the call
+         */
+        public void onComplete(FunctionCallGuard.Outcome outcome, long durationNanos) {
+            outstanding.decrementAndGet();
+            latency.record(durationNanos, TimeUnit.NANOSECONDS);
+            synchronized (this) {
+                switch (outcome) {
+                    case SUCCESS:
+                        consecutiveFailures = 0;
+                        if (state == State.PROBING) {
+                            state = State.HEALTHY;
+                            log.info("The endpoint '{}' is back in rotation.", baseUrl);
+                        }
+                        break;
+                    case DROPPED:
+                        consecutiveFailures++;
+                        if (state == State.PROBING || (state == State.HEALTHY && consecutiveFailures >= endpoints.failureThreshold)) {
+                            eject();
+                        }
+                        break;
+                    default:
+                        // the probe says nothing about the health of the endpoint, the next call probes again
+                        endProbe();
+                }
+            }
+        }
+
+        /**
+         * Record that the call the endpoint was chosen for was not sent (e.g. because the circuit breaker is open).
+         */
+        public synchronized void onSkipped() {
+            endProbe();
+        }
+
+        private void endProbe() {
+            if (state == State.PROBING) {
+                state = State.EJECTED;
+                ejectedUntil = endpoints.nanoClock.getAsLong();
+            }
+        }
+
+        private void eject() {
+            state = State.EJECTED;
+            ejectedUntil = endpoints.nanoClock.getAsLong() + endpoints.ejectionNanos;
+            ejections.increment();
+            log.warn("The endpoint '{}' is out of rotation after {} consecutive failed calls.", baseUrl, consecutiveFailures);
+        }
+
+        private synchronized boolean isHealthy() {
+            return state == State.HEALTHY;
+        }
+
+        /**
+         * Let the next call probe this endpoint if its ejection time is over.
+         */
+        private synchronized boolean tryStartProbe(long now) {
+            if (state == State.EJECTED && now - ejectedUntil >= 0) {
+                state = State.PROBING;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final OpenFaaSConfig openFaaSConfig;
+
+    private final MeterRegistry meterRegistry;
+
+    private final LongSupplier nanoClock;
+
+    private final int failureThreshold;
+
+    private final long ejectionNanos;
+
+    /**
+     * The gateway for the functions that are not served by the endpoints of the type {@code FUNCTION}.
+     */
+    private final Endpoint gateway;
+
+    private volatile Endpoint[] endpoints;
+
+    /**
+     * Every endpoint that was ever configured, by base url.
+     */
+    private final Map<String, Endpoint> knownEndpoints = new HashMap<>();
+
+    private ScheduledExecutorService refreshScheduler;
+
+    /**
+     * @param openFaaSConfig the configuration of the endpoints, the balancing and the ejection
+     * @param meterRegistry  the registry for the endpoint meters
+     */
+    public FunctionEndpoints(OpenFaaSConfig openFaaSConfig, MeterRegistry meterRegistry) {
+        this(openFaaSConfig, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param openFaaSConfig the configuration of the endpoints, the balancing and the ejection
+     * @param meterRegistry  the registry for the endpoint meters
+     * @param nanoClock      the clock for the ejection time
+     */
+    public FunctionEndpoints(OpenFaaSConfig openFaaSConfig, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.openFaaSConfig = openFaaSConfig;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        this.failureThreshold = openFaaSConfig.getEndpointFailureThreshold();
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(openFaaSConfig.getEndpointEjectionMs());
+        this.gateway = new Endpoint(normalize(openFaaSConfig.getGateway()), OpenFaaSConfig.EndpointType.GATEWAY, this, meterRegistry);
+        this.endpoints = new Endpoint[0];
+        refresh();
+        if (openFaaSConfig.getEndpointsFile() != null && !openFaaSConfig.getEndpointsFile().isEmpty()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("faas-endpoints-");
+            threadFactory.setDaemon(true);
+            this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long refreshMs = openFaaSConfig.getEndpointsRefreshMs();
+            refreshScheduler.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop reloading the endpoints file.
+     */
+    public void shutdown() {
+        if (refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Choose the endpoint for a call of a function. The call is recorded at the endpoint by the
+     * {@link FunctionCallGuard} of its function url.
+     *
+     * @param functionName the name of the function
+     * @return the chosen endpoint
+     */
+    public Endpoint choose(String functionName) {
+        Endpoint[] current = endpoints;
+        if (current.length == 0 || (openFaaSConfig.getEndpointType() == OpenFaaSConfig.EndpointType.FUNCTION
+            && !functionName.equals(openFaaSConfig.getFunctionName()))) {
+            return gateway;
+        }
+        if (current.length == 1) {
+            return current[0];
+        }
+        long now = nanoClock.getAsLong();
+        for (Endpoint endpoint : current) {
+            if (endpoint.tryStartProbe(now)) {
+                return endpoint;
+            }
+        }
+        Endpoint chosen = openFaaSConfig.getLoadBalancing() == OpenFaaSConfig.LoadBalancing.POWER_OF_TWO_CHOICES
+            ? powerOfTwoChoices(current)
+            : leastOutstanding(current, true);
+        return chosen != null ? chosen : leastOutstanding(current, false);
+    }
+
+    /**
+     * Get the endpoints in rotation or out of it. Empty if every call goes to the gateway.
+     */
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> list = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            list.add(endpoint);
+        }
+        return list;
+    }
+
+    private static Endpoint powerOfTwoChoices(Endpoint[] endpoints) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = random.nextInt(endpoints.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = endpoints[first];
+        Endpoint b = endpoints[second];
+        if (!a.isHealthy() || !b.isHealthy()) {
+            // fall back to the full scan instead of retrying random picks
+            return leastOutstanding(endpoints, true);
+        }
+        return b.getOutstanding() < a.getOutstanding() ? b : a;
+    }
+
+    /**
+     * Find the endpoint with the fewest calls in flight, starting at a random endpoint to spread the ties.
+     */
+    private static Endpoint leastOutstanding(Endpoint[] endpoints, boolean healthyOnly) {
+        int offset = ThreadLocalRandom.current().nextInt(endpoints.length);
+        Endpoint chosen = null;
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[(offset + i) % endpoints.length];
+            if ((!healthyOnly || endpoint.isHealthy()) && (chosen == null || endpoint.getOutstanding() < chosen.getOutstanding())) {
+                chosen = endpoint;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Reload the endpoints from the configuration and the endpoints file. Known endpoints keep their state.
+     */
+    public synchronized void refresh() {
+        Set<String> baseUrls = new LinkedHashSet<>();
+        openFaaSConfig.getEndpoints().stream()
+            .map(String::trim)
+            .filter(url -> !url.isEmpty())
+            .map(FunctionEndpoints::normalize)
+            .forEach(baseUrls::add);
+        String endpointsFile = openFaaSConfig.getEndpointsFile();
+        if (endpointsFile != null && !endpointsFile.isEmpty()) {
+            try {
+                for (String line : Files.readAllLines(Paths.get(endpointsFile), StandardCharsets.UTF_8)) {
+                    String url = line.trim();
+                    if (!url.isEmpty() && !url.startsWith("#")) {
+                        baseUrls.add(normalize(url));
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read the endpoints file '{}', keeping the current endpoints. Caused by: {}", endpointsFile, e.getMessage());
+                return;
+            }
+        }
+        List<Endpoint> updated = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            // removed endpoints are kept, so the guards of their function urls stay bound to them if they come back
+            updated.add(knownEndpoints.computeIfAbsent(baseUrl, url -> url.equals(gateway.baseUrl)
+                && openFaaSConfig.getEndpointType() == OpenFaaSConfig.EndpointType.GATEWAY
+                ? gateway
+                : new Endpoint(url, openFaaSConfig.getEndpointType(), this, meterRegistry)));
+        }
+        if (!updated.equals(Arrays.asList(endpoints))) {
+            log.info("The function calls are balanced across the endpoints {}.", baseUrls);
+        }
+        this.endpoints = updated.toArray(new Endpoint[0]);
+    }
+
+    private static String normalize(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The complete result of a function call that can be passed on to other inputs with the same data.
+ * The cloud events are immutable, so a function result can be shared between threads.
+ */
+@Getter
+public final class FunctionResult {
+
+    /**
+     * The input of the function call without its data.
+     */
+    private final MicoCloudEventImpl<JsonNode> input;
+
+    private final List<MicoCloudEventImpl<JsonNode>> results;
+
+    /**
+     * The size of the function response in bytes.
+     */
+    private final long responseSize;
+
+    /**
+     * @param input        the function input
+     * @param results      the resulting cloud events
+     * @param responseSize the size of the function response in bytes
+     */
+    public FunctionResult(MicoCloudEventImpl<JsonNode> input, List<MicoCloudEventImpl<JsonNode>> results, long responseSize) {
+        this.input = input.toBuilder().data(null).build();
+        this.results = Collections.unmodifiableList(results);
+        this.responseSize = responseSize;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of the results of an idempotent function, keyed by a hash of the function name and the {@code data} of the input.
+ * <p>
+ * The least recently used results are evicted if there are more entries or the cached responses are larger than
+ * configured. Results expire after the time to live. The cached results are shared between hits.
+ */
+public class FunctionResultCache {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private static final class Entry {
+
+        private final FunctionResult result;
+
+        private final long expiresAt;
+
+        private Entry(FunctionResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    private final long maxWeight;
+
+    private final long ttlNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter sizeEvictions;
+
+    private final Counter expiredEvictions;
+
+    private long weight = 0;
+
+    /**
+     * @param maxEntries    the maximum number of cached results
+     * @param maxWeight     the maximum total size of the cached responses in bytes
+     * @param ttlNanos      the time a result is cached
+     * @param meterRegistry the registry for the cache meters
+     */
+    public FunctionResultCache(int maxEntries, long maxWeight, long ttlNanos, MeterRegistry meterRegistry) {
+        this(maxEntries, maxWeight, ttlNanos, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param maxEntries    the maximum number of cached results
+     * @param maxWeight     the maximum total size of the cached responses in bytes
+     * @param ttlNanos      the time a result is cached
+     * @param meterRegistry the registry for the cache meters
+     * @param nanoClock     the source of the current time in nanoseconds
+     */
+    public FunctionResultCache(int maxEntries, long maxWeight, long ttlNanos, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+        this.hits = Counter.builder("mico.connector.faas.cache.gets")
+            .description("The number of function calls looked up in the result cache")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("mico.connector.faas.cache.gets")
+            .description("The number of function calls looked up in the result cache")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        this.sizeEvictions = Counter.builder("mico.connector.faas.cache.evictions")
+            .description("The number of function results evicted from the result cache")
+            .tag("cause", "size")
+            .register(meterRegistry);
+        this.expiredEvictions = Counter.builder("mico.connector.faas.cache.evictions")
+            .description("The number of function results evicted from the result cache")
+            .tag("cause", "expired")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.faas.cache.size", this, FunctionResultCache::getSize)
+            .description("The number of cached function results")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.faas.cache.weight", this, FunctionResultCache::getWeight)
+            .description("The size of the cached function responses")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Compute the cache key of a function call.
+     *
+     * @param functionName the name of the function
+     * @param cloudEvent   the function input
+     * @return the base64 encoded SHA-256 hash of the function name and the data of the cloud event
+     */
+    public static String getKey(String functionName, MicoCloudEventImpl<JsonNode> cloudEvent) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        digest.update(String.valueOf(functionName).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(CloudEventCodec.encode(cloudEvent.getData().orElse(NullNode.getInstance())));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Get the cached result of a function call.
+     *
+     * @param key the cache key
+     * @return the cached result or an empty optional if it is not cached or expired
+     */
+    public synchronized Optional<FunctionResult> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt - nanoClock.getAsLong() <= 0) {
+            remove(key);
+            expiredEvictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.result);
+    }
+
+    /**
+     * Cache the result of a function call and evict the least recently used results if the cache is full.
+     * Results larger than the whole cache are not cached.
+     *
+     * @param key    the cache key
+     * @param result the result of the function call
+     */
+    public synchronized void put(String key, FunctionResult result) {
+        if (result.getResponseSize() > maxWeight) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(result, nanoClock.getAsLong() + ttlNanos));
+        weight += result.getResponseSize();
+        Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= leastRecentlyUsed.next().getValue().result.getResponseSize();
+            leastRecentlyUsed.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.result.getResponseSize();
+        }
+    }
+}
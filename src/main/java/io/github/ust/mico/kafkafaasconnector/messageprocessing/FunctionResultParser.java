@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Incremental parser for the JSON array of cloud events returned by a FaaS function.
+ * <p>
+ * The response is fed in chunks as it arrives. Every array element is decoded and passed
+ * to the result consumer as soon as it is complete, so the whole response is never held in memory.
+ * A parser instance is used for a single response and is not thread-safe.
+ */
+public class FunctionResultParser {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final JsonParser parser;
+
+    private final ByteArrayFeeder feeder;
+
+    private final long maxResponseSize;
+
+    private final int maxEvents;
+
+    private final Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer;
+
+    private long responseSize = 0;
+
+    private int events = 0;
+
+    /**
+     * The time spent parsing, excluding the time spent waiting for chunks and in the result consumer.
+     */
+    private long parseTimeNanos = 0;
+
+    private boolean arrayStarted = false;
+
+    private boolean arrayEnded = false;
+
+    /**
+     * The tokens of the current array element.
+     */
+    private TokenBuffer element;
+
+    private int elementDepth = 0;
+
+    /**
+     * @param maxResponseSize the maximum size of the response in bytes
+     * @param maxEvents       the maximum number of cloud events in the response
+     * @param resultConsumer  receives every cloud event as soon as it is parsed
+     */
+    public FunctionResultParser(long maxResponseSize, int maxEvents, Consumer<MicoCloudEventImpl<JsonNode>> resultConsumer) throws IOException {
+        this.parser = Json.MAPPER.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.maxResponseSize = maxResponseSize;
+        this.maxEvents = maxEvents;
+        this.resultConsumer = resultConsumer;
+    }
+
+    /**
+     * Read and parse the whole stream.
+     *
+     * @param body the response body
+     * @return the number of parsed cloud events
+     * @throws IOException if the response could not be read or parsed or exceeds the limits
+     */
+    public int parse(InputStream body) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            feed(buffer, 0, read);
+        }
+        return finish();
+    }
+
+    /**
+     * Parse the next chunk of the response. The bytes are not used after this method returned.
+     *
+     * @throws IOException if the chunk could not be parsed or the response exceeds the limits
+     */
+    public void feed(byte[] bytes, int offset, int length) throws IOException {
+        responseSize += length;
+        if (responseSize > maxResponseSize) {
+            throw new IOException("The function result exceeds the maximum size of " + maxResponseSize + " bytes.");
+        }
+        feeder.feedInput(bytes, offset, offset + length);
+        parseAvailableTokens();
+    }
+
+    /**
+     * Get the number of bytes fed so far.
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * Get the time spent parsing so far, excluding the time spent in the result consumer.
+     */
+    public long getParseTimeNanos() {
+        return parseTimeNanos;
+    }
+
+    /**
+     * Signal the end of the response.
+     *
+     * @return the number of parsed cloud events
+     * @throws IOException if the response is incomplete
+     */
+    public int finish() throws IOException {
+        feeder.endOfInput();
+        parseAvailableTokens();
+        if (!arrayEnded) {
+            throw new JsonParseException(parser, "Unexpected end of the function result.");
+        }
+        parser.close();
+        return events;
+    }
+
+    private void parseAvailableTokens() throws IOException {
+        long start = System.nanoTime();
+        try {
+            parseTokens();
+        } finally {
+            parseTimeNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void parseTokens() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (!arrayStarted) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected a JSON array of cloud events as function result.");
+                }
+                arrayStarted = true;
+                continue;
+            }
+            if (arrayEnded) {
+                throw new JsonParseException(parser, "Unexpected content after the function result.");
+            }
+            if (element == null) {
+                if (token == JsonToken.END_ARRAY) {
+                    arrayEnded = true;
+                    continue;
+                }
+                element = new TokenBuffer(parser);
+            }
+            element.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                elementDepth++;
+            } else if (token.isStructEnd()) {
+                elementDepth--;
+            }
+            if (elementDepth == 0) {
+                completeElement();
+            }
+        }
+    }
+
+    private void completeElement() throws IOException {
+        events++;
+        if (events > maxEvents) {
+            throw new IOException("The function result contains more than " + maxEvents + " cloud events.");
+        }
+        MicoCloudEventImpl<JsonNode> cloudEvent;
+        try (JsonParser elementParser = element.asParser(Json.MAPPER)) {
+            cloudEvent = Json.MAPPER.readValue(elementParser, CloudEventCodec.CLOUD_EVENT_TYPE);
+        }
+        element = null;
+        long consumerStart = System.nanoTime();
+        resultConsumer.accept(cloudEvent);
+        parseTimeNanos -= System.nanoTime() - consumerStart;
+    }
+}
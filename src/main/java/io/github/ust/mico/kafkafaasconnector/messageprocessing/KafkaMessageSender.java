@@ -21,17 +21,35 @@ package io.github.ust.mico.kafkafaasconnector.messageprocessing;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
-import io.github.ust.mico.kafkafaasconnector.exception.BatchMicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
 import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
+import io.github.ust.mico.kafkafaasconnector.kafka.SharedEncoding;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @Service
@@ -43,76 +61,339 @@ public class KafkaMessageSender {
     @Autowired
     private KafkaConfig kafkaConfig;
 
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
+    @Autowired
+    private FaasController faasController;
+
     @Autowired
     private CloudEventManipulator cloudEventManipulator;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DeadlineTimer deadlineTimer;
+
+    @Autowired
+    private ThreadPoolTaskExecutor batchWorkerPool;
+
+    /**
+     * The send timers by topic.
+     */
+    private final Map<String, Timer> sendTimers = new ConcurrentHashMap<>();
+
+    private Timer routeUpdate;
+
+    private Counter filteredTestMessages;
+
+    private Counter errorMessages;
+
+    private Counter fanOutMessages;
+
+    private Counter chainedCalls;
+
+    @PostConstruct
+    public void init() {
+        this.routeUpdate = Timer.builder("mico.connector.route.update")
+            .description("The time needed to add a routing step to the route history")
+            .tag("type", "topic")
+            .register(meterRegistry);
+        this.filteredTestMessages = Counter.builder("mico.connector.events.filtered.test")
+            .description("The number of test messages sent to the test message output topic")
+            .register(meterRegistry);
+        this.errorMessages = Counter.builder("mico.connector.events.error")
+            .description("The number of error messages")
+            .register(meterRegistry);
+        this.fanOutMessages = Counter.builder("mico.connector.events.fanout")
+            .description("The number of messages sent to a routing slip step with multiple topics")
+            .register(meterRegistry);
+        this.chainedCalls = Counter.builder("mico.connector.events.chained")
+            .description("The number of routing slip steps whose function was called in process instead of sending to the topic")
+            .register(meterRegistry);
+    }
+
     /**
      * Send a cloud event using the sendCloudEvent method.
      * <p>
      * This method is safe in the sense that it does not throw exceptions and catches all exceptions during sending.
+     * Every destination that could not be sent to results in an error message instead.
+     * The returned future never completes exceptionally.
      *
      * @param cloudEvent        the cloud event to send
      * @param originalMessageId the id of the original message
+     * @return a future that completes after every message (or the error messages replacing them) was acknowledged
      */
-    public void safeSendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+    public CompletableFuture<Void> safeSendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
         try {
-            this.sendCloudEvent(cloudEvent, originalMessageId);
-        } catch (MicoCloudEventException e) {
-            this.safeSendErrorMessage(e.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
-        } catch (BatchMicoCloudEventException e) {
-            for (MicoCloudEventException error : e.exceptions) {
-                this.safeSendErrorMessage(error.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
-            }
+            return this.sendCloudEvent(cloudEvent, originalMessageId, false);
         } catch (Exception e) {
             MicoCloudEventException error = new MicoCloudEventException("An error occurred while sending the cloud event.", cloudEvent);
-            this.safeSendErrorMessage(error.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
+            return this.safeSendErrorMessage(error.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
+        }
+    }
+
+    /**
+     * Send the cloud events of a completed function call within the Kafka transaction of the calling thread.
+     * <p>
+     * If the function call failed or a cloud event could not be sent at all, an error message is sent instead.
+     * Unlike the safe methods, a send that fails after it was started is not replaced by an error message,
+     * because the error message would be sent on the callback thread of the producer outside of the transaction.
+     * The returned future completes exceptionally instead and the transaction has to be aborted.
+     *
+     * @param cloudEvents       the completed result of a function call
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after all cloud events were acknowledged or exceptionally if a send failed
+     */
+    public CompletableFuture<Void> sendCloudEventsInTransaction(CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> cloudEvents, String originalMessageId) {
+        List<MicoCloudEventImpl<JsonNode>> events;
+        try {
+            events = cloudEvents.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof MicoCloudEventException) {
+                return this.sendErrorMessageInTransaction(((MicoCloudEventException) cause).getErrorEvent(), originalMessageId);
+            }
+            log.error("Failed to process the cloud event '{}'. Caused by: {}", originalMessageId, cause.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[events.size()];
+        for (int i = 0; i < sends.length; i++) {
+            try {
+                sends[i] = this.sendCloudEvent(events.get(i), originalMessageId, true);
+            } catch (Exception e) {
+                MicoCloudEventException error = new MicoCloudEventException("An error occurred while sending the cloud event.", events.get(i));
+                sends[i] = this.sendErrorMessageInTransaction(error.getErrorEvent(), originalMessageId);
+            }
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+    /**
+     * Send the cloud events of a streaming function call as soon as each of them was parsed.
+     * <p>
+     * If the function call failed, an error message is sent in addition to the already sent cloud events.
+     * Cloud events whose next step is a chained function are held back until the function call is completed,
+     * so the chained call does not run within the call (and its permit) that produced the cloud event.
+     * This method is safe in the sense that the returned future never completes exceptionally.
+     *
+     * @param functionCall      starts the function call with the consumer for the resulting cloud events
+     *                          and returns a future that completes after the whole result was parsed
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after all cloud events were acknowledged
+     */
+    public CompletableFuture<Void> safeSendStreamedCloudEvents(Function<Consumer<MicoCloudEventImpl<JsonNode>>, CompletableFuture<Void>> functionCall,
+                                                               String originalMessageId) {
+        List<CompletableFuture<Void>> sends = Collections.synchronizedList(new ArrayList<>());
+        List<MicoCloudEventImpl<JsonNode>> chainedEvents = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> call = functionCall.apply(event -> {
+            if (isChained(event)) {
+                chainedEvents.add(event);
+            } else {
+                sends.add(this.safeSendCloudEvent(event, originalMessageId));
+            }
+        });
+        return call.handle((result, throwable) -> {
+            if (throwable != null) {
+                sends.add(this.safeSendProcessingError(throwable, originalMessageId));
+            }
+            synchronized (chainedEvents) {
+                chainedEvents.forEach(event -> sends.add(this.safeSendCloudEvent(event, originalMessageId)));
+            }
+            synchronized (sends) {
+                return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]));
+            }
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Send an error message for a failed processing step (e.g. the function call).
+     *
+     * @param throwable         the failure
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after the error message was acknowledged or failed
+     */
+    private CompletableFuture<Void> safeSendProcessingError(Throwable throwable, String originalMessageId) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof MicoCloudEventException) {
+            return this.safeSendErrorMessage(((MicoCloudEventException) cause).getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
         }
+        log.error("Failed to process the cloud event '{}'. Caused by: {}", originalMessageId, cause.getMessage());
+        return CompletableFuture.completedFuture(null);
     }
 
+    /**
+     * Send the cloud events resulting from a function call without waiting for the acknowledgements in between.
+     * <p>
+     * This method is safe in the sense that the returned future never completes exceptionally.
+     *
+     * @param cloudEvents       the cloud events to send
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after all cloud events were acknowledged
+     */
+    public CompletableFuture<Void> safeSendCloudEvents(List<MicoCloudEventImpl<JsonNode>> cloudEvents, String originalMessageId) {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[cloudEvents.size()];
+        for (int i = 0; i < sends.length; i++) {
+            sends[i] = this.safeSendCloudEvent(cloudEvents.get(i), originalMessageId);
+        }
+        return CompletableFuture.allOf(sends);
+    }
 
     /**
      * Send a cloud event error message using the sendCloudEvent method.
      * <p>
      * This method is safe in the sense that it does not throw exceptions and catches all exceptions during sending.
+     * The returned future never completes exceptionally, failures are only logged.
      *
      * @param cloudEvent        the cloud event to send
      * @param topic             the kafka topic to send the cloud event to
      * @param originalMessageId the id of the original message
+     * @return a future that completes after the error message was acknowledged or failed
      */
-    public void safeSendErrorMessage(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId) {
+    public CompletableFuture<Void> safeSendErrorMessage(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId) {
+        errorMessages.increment();
         try {
-            this.sendCloudEvent(cloudEvent, topic, originalMessageId);
+            return this.sendCloudEvent(cloudEvent, topic, originalMessageId)
+                .exceptionally(throwable -> {
+                    log.error("Failed to process error message. Caused by: {}", unwrap(throwable).getMessage());
+                    return null;
+                });
         } catch (Exception e) {
             log.error("Failed to process error message. Caused by: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
         }
     }
 
+    /**
+     * Send a cloud event error message to the invalid message topic within the Kafka transaction of the calling thread.
+     * <p>
+     * If the error message could not be sent at all, the failure is only logged.
+     *
+     * @param cloudEvent        the error message
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after the error message was acknowledged or exceptionally if the send failed
+     */
+    private CompletableFuture<Void> sendErrorMessageInTransaction(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+        errorMessages.increment();
+        try {
+            return this.sendCloudEvent(cloudEvent, this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
+        } catch (MicoCloudEventException e) {
+            log.error("Failed to process error message. Caused by: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Send a cloud event to a destination topic, see {@link #sendCloudEvent(MicoCloudEventImpl, String, String)}.
+     * <p>
+     * Outside of a transaction, a failed send is replaced by an error message. Within a transaction, only a send that
+     * could not be started is replaced (on the calling thread), a send that fails later fails the returned future.
+     *
+     * @param cloudEvent        the cloud event to send
+     * @param topic             the kafka topic to send the cloud event to
+     * @param originalMessageId the id of the original message
+     * @param inTransaction     whether the cloud event is sent within the Kafka transaction of the calling thread
+     * @return a future that completes after the message (or the error message replacing it) was acknowledged
+     */
+    private CompletableFuture<Void> sendToDestination(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId, boolean inTransaction) {
+        if (!inTransaction) {
+            return this.safeSendCloudEvent(cloudEvent, topic, originalMessageId);
+        }
+        try {
+            return this.sendCloudEvent(cloudEvent, topic, originalMessageId);
+        } catch (MicoCloudEventException e) {
+            log.error("Failed to send the cloud event '{}' to topic '{}'. Caused by: {}", cloudEvent.getId(), topic, e.getMessage());
+            return this.sendErrorMessageInTransaction(e.getErrorEvent(), originalMessageId);
+        }
+    }
+
+    /**
+     * Send a cloud event to the specified topic and send an error message if it fails.
+     *
+     * @param cloudEvent        the cloud event to send
+     * @param topic             the kafka topic to send the cloud event to
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after the message (or the error message replacing it) was acknowledged
+     */
+    private CompletableFuture<Void> safeSendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId) {
+        CompletableFuture<Void> sent;
+        try {
+            sent = this.sendCloudEvent(cloudEvent, topic, originalMessageId);
+        } catch (MicoCloudEventException e) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(e);
+        }
+        return sent.handle((result, throwable) -> {
+            if (throwable == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            Throwable cause = unwrap(throwable);
+            MicoCloudEventException error = cause instanceof MicoCloudEventException
+                ? (MicoCloudEventException) cause
+                : new MicoCloudEventException("An error occurred while sending the cloud event.", cause, cloudEvent);
+            log.error("Failed to send the cloud event '{}' to topic '{}'. Caused by: {}", cloudEvent.getId(), topic, cause.getMessage());
+            return this.safeSendErrorMessage(error.getErrorEvent(), this.kafkaConfig.getInvalidMessageTopic(), originalMessageId);
+        }).thenCompose(Function.identity());
+    }
+
     /**
      * Send cloud event to the specified topic.
      * <p>
      * This method also updates the route history of the cloud event before sending.
+     * The send is not blocking, the returned future completes after the broker acknowledged the message.
+     * Cloud events that expired before they were sent are dropped, error messages are always sent.
      *
      * @param cloudEvent        the cloud event to send
      * @param topic             the kafka topic to send the cloud event to
      * @param originalMessageId the id of the original message
+     * @return a future that completes after the message was acknowledged or dropped
      */
-    private void sendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId) throws MicoCloudEventException {
+    private CompletableFuture<Void> sendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String originalMessageId) throws MicoCloudEventException {
         try {
+            if (isExpired(cloudEvent)) {
+                deadlineTimer.recordExpired(DeadlineTimer.STAGE_SEND);
+                log.debug("Dropped the expired cloud event '{}' instead of sending it to topic '{}'.", cloudEvent.getId(), topic);
+                return CompletableFuture.completedFuture(null);
+            }
+            long start = System.nanoTime();
             cloudEvent = cloudEventManipulator.updateRouteHistoryWithTopic(cloudEvent, topic);
-            // TODO commit logic/transactions
-            cloudEventManipulator.setMissingHeaderFields(cloudEvent, originalMessageId);
+            routeUpdate.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            cloudEvent = cloudEventManipulator.setMissingHeaderFields(cloudEvent, originalMessageId);
+            ListenableFuture<SendResult<String, MicoCloudEventImpl<JsonNode>>> result;
+            String targetTopic;
             if (!isTestMessageCompleted(cloudEvent, topic)) {
                 log.debug("Is not necessary to filter the message. Is test message '{}', filterOutBeforeTopic: '{}', targetTopic: '{}'", cloudEvent.isTestMessage(), cloudEvent.getFilterOutBeforeTopic(), topic);
-                kafkaTemplate.send(topic, cloudEvent);
+                targetTopic = topic;
             } else {
                 log.info("Filter out test message: '{}' to topic: '{}'", cloudEvent, kafkaConfig.getTestMessageOutputTopic());
-                kafkaTemplate.send(kafkaConfig.getTestMessageOutputTopic(), cloudEvent);
+                targetTopic = kafkaConfig.getTestMessageOutputTopic();
+                filteredTestMessages.increment();
             }
+            Timer sendTimer = getSendTimer(targetTopic);
+            long sendStart = System.nanoTime();
+            result = kafkaTemplate.send(targetTopic, cloudEvent);
+            MicoCloudEventImpl<JsonNode> sentCloudEvent = cloudEvent;
+            return result.completable().handle((sendResult, throwable) -> {
+                sendTimer.record(System.nanoTime() - sendStart, TimeUnit.NANOSECONDS);
+                if (throwable != null) {
+                    throw new CompletionException(new MicoCloudEventException("An error occurred while sending the cloud event.", unwrap(throwable), sentCloudEvent));
+                }
+                return null;
+            });
         } catch (Exception e) {
             throw new MicoCloudEventException("An error occurred while sending the cloud event.", e, cloudEvent);
         }
     }
 
+    /**
+     * Checks if the cloud event is no error message and its {@code expirydate} has passed.
+     */
+    private static boolean isExpired(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        return !cloudEvent.isErrorMessage().orElse(false)
+            && cloudEvent.getExpiryDate().map(DeadlineTimer::isExpired).orElse(false);
+    }
+
     /**
      * This method checks if it is necessary to filter it out. This only works
      * for testMessages. It returns {@code true} if {@code isTestMessage} is
@@ -127,30 +408,145 @@ public class KafkaMessageSender {
 
     /**
      * Send cloud event to default topic or topic(s) next in the routingSlip.
+     * <p>
+     * The messages for all destinations are sent without waiting for each other. They share their encoding
+     * and only differ in the route history, see {@link #shareEncoding(MicoCloudEventImpl, String)}.
+     * If the next step is a single topic with a chained function, the function is called in process instead
+     * on the batch worker pool, see {@link #callChainedFunction(MicoCloudEventImpl, String, String, String)}.
      *
      * @param cloudEvent        the cloud event to send
      * @param originalMessageId the id of the original message
+     * @param inTransaction     whether the cloud event is sent within the Kafka transaction of the calling thread,
+     *                          see {@link #sendToDestination(MicoCloudEventImpl, String, String, boolean)}
+     * @return a future that completes after every destination (or the error message replacing it) was acknowledged
      */
-    private void sendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) throws MicoCloudEventException, BatchMicoCloudEventException {
-        LinkedList<List<String>> routingSlip = cloudEvent.getRoutingSlip().orElse(new LinkedList<>());
+    private CompletableFuture<Void> sendCloudEvent(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId, boolean inTransaction) {
+        PersistentList<List<String>> routingSlip = cloudEvent.getRoutingSlip().orElse(PersistentList.empty());
         if (!routingSlip.isEmpty()) {
-            List<String> destinations = routingSlip.removeLast();
-            ArrayList<MicoCloudEventException> exceptions = new ArrayList<>(destinations.size());
-            for (String topic : destinations) {
-                try {
-                    this.sendCloudEvent(cloudEvent, topic, originalMessageId);
-                } catch (MicoCloudEventException e) {
-                    // defer exception handling
-                    exceptions.add(e);
-                }
+            List<String> destinations = routingSlip.getLast();
+            if (destinations.size() > 1) {
+                fanOutMessages.increment(destinations.size());
+            }
+            // all destinations share the remaining routing slip
+            MicoCloudEventImpl<JsonNode> nextCloudEvent = cloudEvent.toBuilder().routingSlip(routingSlip.removeLast()).build();
+            Optional<String> chainedFunction = getChainedFunction(nextCloudEvent, destinations);
+            if (chainedFunction.isPresent()) {
+                // never block the calling thread, it may be the event loop of the HTTP client
+                MicoCloudEventImpl<JsonNode> chainedCloudEvent = nextCloudEvent;
+                return CompletableFuture.supplyAsync(() -> this.callChainedFunction(chainedCloudEvent, destinations.get(0),
+                    chainedFunction.get(), originalMessageId), batchWorkerPool).thenCompose(Function.identity());
             }
-            if (exceptions.size() > 0) {
-                throw new BatchMicoCloudEventException((MicoCloudEventException[]) exceptions.toArray());
+            if (destinations.size() > 1) {
+                nextCloudEvent = this.shareEncoding(nextCloudEvent, originalMessageId);
             }
+            CompletableFuture<?>[] sends = new CompletableFuture<?>[destinations.size()];
+            for (int i = 0; i < sends.length; i++) {
+                // errors are handled per destination
+                sends[i] = this.sendToDestination(nextCloudEvent, destinations.get(i), originalMessageId, inTransaction);
+            }
+            return CompletableFuture.allOf(sends);
         } else {
             // default case:
-            this.sendCloudEvent(cloudEvent, this.kafkaConfig.getOutputTopic(), originalMessageId);
+            return this.sendToDestination(cloudEvent, this.kafkaConfig.getOutputTopic(), originalMessageId, inTransaction);
+        }
+    }
+
+    /**
+     * Prepare a cloud event for the topics of a fan-out. The missing header fields are set once, so the copies
+     * for the topics only differ in the route history and the serializer encodes everything else only once.
+     *
+     * @param cloudEvent        the cloud event with the remaining routing slip
+     * @param originalMessageId the id of the original message
+     * @return the cloud event with its {@link SharedEncoding}
+     */
+    private MicoCloudEventImpl<JsonNode> shareEncoding(MicoCloudEventImpl<JsonNode> cloudEvent, String originalMessageId) {
+        MicoCloudEventImpl<JsonNode> sharedCloudEvent = cloudEventManipulator.setMissingHeaderFields(cloudEvent, originalMessageId);
+        return sharedCloudEvent.toBuilder().sharedEncoding(new SharedEncoding(sharedCloudEvent)).build();
+    }
+
+    /**
+     * Checks if the next routing slip step of the cloud event is called in process.
+     *
+     * @param cloudEvent the cloud event to send
+     * @return {@code true} if the cloud event is passed to a chained function instead of a topic
+     */
+    private boolean isChained(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        PersistentList<List<String>> routingSlip = cloudEvent.getRoutingSlip().orElse(PersistentList.empty());
+        return !routingSlip.isEmpty() && getChainedFunction(cloudEvent, routingSlip.getLast()).isPresent();
+    }
+
+    /**
+     * Get the function of the next routing slip step that is called in process.
+     * Only a step with a single topic is chained, test messages that are filtered out before the topic
+     * and error messages are always sent to Kafka. In the transactional mode nothing is chained, because
+     * the results of a chained call would be sent outside of the transaction of the input record.
+     *
+     * @param cloudEvent   the cloud event with the remaining routing slip
+     * @param destinations the topics of the next routing slip step
+     * @return the name of the function or empty if the cloud event is sent to Kafka
+     */
+    private Optional<String> getChainedFunction(MicoCloudEventImpl<JsonNode> cloudEvent, List<String> destinations) {
+        if (kafkaConfig.isTransactionalListenerEnabled() || destinations.size() != 1
+            || cloudEvent.isErrorMessage().orElse(false) || isTestMessageCompleted(cloudEvent, destinations.get(0))) {
+            return Optional.empty();
+        }
+        return openFaaSConfig.getChainedFunction(destinations.get(0));
+    }
+
+    /**
+     * Call the function of a routing slip step in process instead of sending the cloud event to its topic.
+     * <p>
+     * The route history records the topic as if the cloud event was sent to it and the function call
+     * (in {@link FaasController}). The resulting cloud events are sent on like the results of the configured
+     * function, so consecutive chained steps are called one after another and Kafka is only written at the
+     * end of the chain or at a topic step. If the function call fails, an error message is sent instead.
+     * Runs on the batch worker pool, because waiting for the concurrency limit of the function may block.
+     *
+     * @param cloudEvent        the cloud event with the remaining routing slip
+     * @param topic             the topic of the routing slip step
+     * @param functionName      the function of the topic
+     * @param originalMessageId the id of the original message
+     * @return a future that completes after all resulting cloud events were acknowledged
+     */
+    private CompletableFuture<Void> callChainedFunction(MicoCloudEventImpl<JsonNode> cloudEvent, String topic, String functionName, String originalMessageId) {
+        if (isExpired(cloudEvent)) {
+            deadlineTimer.recordExpired(DeadlineTimer.STAGE_SEND);
+            log.debug("Dropped the expired cloud event '{}' instead of calling the function of topic '{}'.", cloudEvent.getId(), topic);
+            return CompletableFuture.completedFuture(null);
         }
+        chainedCalls.increment();
+        long start = System.nanoTime();
+        MicoCloudEventImpl<JsonNode> routedCloudEvent = cloudEventManipulator.updateRouteHistoryWithTopic(cloudEvent, topic);
+        routeUpdate.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        MicoCloudEventImpl<JsonNode> functionInput = cloudEventManipulator.setMissingHeaderFields(routedCloudEvent, originalMessageId);
+        log.debug("Call the function '{}' of topic '{}' in process with cloud event '{}'", functionName, topic, functionInput.getId());
+        return this.safeSendStreamedCloudEvents(resultConsumer -> {
+            if (openFaaSConfig.isAsyncInvocation()) {
+                return faasController.callFaasFunctionAsync(functionInput, functionName, resultConsumer);
+            }
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            try {
+                faasController.callFaasFunction(functionInput, functionName, resultConsumer);
+                call.complete(null);
+            } catch (MicoCloudEventException | RuntimeException e) {
+                call.completeExceptionally(e);
+            }
+            return call;
+        }, functionInput.getId());
+    }
+
+    /**
+     * Get the cached timer for the sends to a topic.
+     */
+    private Timer getSendTimer(String topic) {
+        return sendTimers.computeIfAbsent(topic, key -> Timer.builder("mico.connector.kafka.send")
+            .description("The time from sending a message until it was acknowledged")
+            .tag("topic", key)
+            .register(meterRegistry));
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks with the same key one after another and tasks with different keys in parallel.
+ * <p>
+ * A task is started after the previous task with the same key completed (normally or exceptionally).
+ * Tasks without a key are not ordered at all.
+ */
+public class KeyOrderedExecutor {
+
+    private final Executor executor;
+
+    /**
+     * The last submitted task per key. Removed as soon as it completes without a successor.
+     */
+    private final Map<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public KeyOrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submit a task.
+     *
+     * @param key  the ordering key or {@code null} for unordered tasks
+     * @param task the task returning a future that completes when the task is done
+     * @return a future that completes when the task is done
+     */
+    public CompletableFuture<Void> submit(Object key, Supplier<CompletableFuture<Void>> task) {
+        if (key == null) {
+            return CompletableFuture.supplyAsync(task, executor).thenCompose(Function.identity());
+        }
+        CompletableFuture<Void> next = tails.compute(key, (k, previous) -> {
+            CompletableFuture<Void> start = previous == null
+                ? CompletableFuture.completedFuture(null)
+                : previous.handle((result, throwable) -> null);
+            return start.thenComposeAsync(ignored -> task.get(), executor);
+        });
+        next.whenComplete((result, throwable) -> tails.remove(key, next));
+        return next;
+    }
+
+    /**
+     * Get the number of keys with pending tasks.
+     */
+    public int getPendingKeys() {
+        return tails.size();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector.messageprocessing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Decides when a function call is hedged with a second request.
+ * <p>
+ * A call is hedged once it runs longer than a percentile of the round-trip times of the recent first requests.
+ * Only first requests are recorded, whether or not their hedge won, so the window is not biased towards the
+ * fast responses: a first request that lost to its hedge is recorded with the time until it was cancelled.
+ * The percentile is recomputed after every tenth of the window, so the first hedge is possible after a tenth of
+ * the window. The hedges are limited by a budget: every call earns a share of a hedge and a hedge spends a whole
+ * one, so at most that share of the calls sends a second request.
+ */
+public class RequestHedger {
+
+    /**
+     * The number of unused hedges that may be saved for a burst of slow calls.
+     */
+    private static final double MAX_SAVED_HEDGES = 10;
+
+    private final double percentile;
+
+    private final double budget;
+
+    private final long[] roundTripTimes;
+
+    private final int recomputeInterval;
+
+    private int next;
+
+    private int samples;
+
+    private int samplesSinceRecompute;
+
+    private double balance;
+
+    private volatile long delayNanos = -1;
+
+    private final Counter hedgesSent;
+
+    private final Counter hedgesWon;
+
+    private final Counter hedgesRejected;
+
+    /**
+     * @param percentile    the percentile (0 to 1) of the recent round-trip times after which a call is hedged
+     * @param budget        the maximum share (0 to 1) of the calls that may be hedged
+     * @param window        the number of recent round-trip times the percentile is computed of
+     * @param meterRegistry the registry for the hedge meters
+     */
+    public RequestHedger(double percentile, double budget, int window, MeterRegistry meterRegistry) {
+        this.percentile = percentile;
+        this.budget = budget;
+        this.roundTripTimes = new long[window];
+        this.recomputeInterval = Math.max(1, window / 10);
+        this.hedgesSent = Counter.builder("mico.connector.faas.hedges.sent")
+            .description("The number of hedged requests sent for slow function calls")
+            .register(meterRegistry);
+        this.hedgesWon = Counter.builder("mico.connector.faas.hedges.won")
+            .description("The number of hedged requests whose response arrived first")
+            .register(meterRegistry);
+        this.hedgesRejected = Counter.builder("mico.connector.faas.hedges.rejected")
+            .description("The number of hedged requests not sent because the budget or the concurrency limit was exhausted")
+            .register(meterRegistry);
+        Gauge.builder("mico.connector.faas.hedge.delay", this, hedger -> hedger.getDelayNanos() / 1e6)
+            .description("The time after which a function call is hedged")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Get the time after which a call is hedged or {@code -1} if there are not enough round-trip times yet.
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Record the start of a function call. Every call earns a share of a hedge.
+     */
+    public synchronized void onCall() {
+        balance = Math.min(MAX_SAVED_HEDGES, balance + budget);
+    }
+
+    /**
+     * Record the round-trip time of a first request that succeeded or the time until it lost to its hedge.
+     */
+    public void onRoundTrip(long rttNanos) {
+        long[] snapshot = null;
+        synchronized (this) {
+            roundTripTimes[next] = rttNanos;
+            next = (next + 1) % roundTripTimes.length;
+            samples = Math.min(samples + 1, roundTripTimes.length);
+            if (++samplesSinceRecompute >= recomputeInterval) {
+                samplesSinceRecompute = 0;
+                snapshot = Arrays.copyOf(roundTripTimes, samples);
+            }
+        }
+        if (snapshot != null) {
+            // sort outside of the lock, the delay does not have to be exact
+            Arrays.sort(snapshot);
+            int index = (int) Math.ceil(percentile * snapshot.length) - 1;
+            delayNanos = Math.max(1, snapshot[Math.max(0, Math.min(index, snapshot.length - 1))]);
+        }
+    }
+
+    /**
+     * Spend a hedge of the budget.
+     *
+     * @return {@code false} if the budget is exhausted
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (balance >= 1) {
+                balance -= 1;
+                return true;
+            }
+        }
+        hedgesRejected.increment();
+        return false;
+    }
+
+    /**
+     * Return a hedge to the budget that was acquired but not sent (e.g. because the concurrency limit was reached).
+     */
+    public void refund() {
+        synchronized (this) {
+            balance = Math.min(MAX_SAVED_HEDGES, balance + 1);
+        }
+        hedgesRejected.increment();
+    }
+
+    /**
+     * Record a hedged request that was sent.
+     */
+    public void onHedgeSent() {
+        hedgesSent.increment();
+    }
+
+    /**
+     * Record a hedged request whose response arrived first.
+     */
+    public void onHedgeWon() {
+        hedgesWon.increment();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {"kafka.batch-listener=true", "kafka.acknowledged-sends=true"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class AcknowledgedSendsTests {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    private KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template;
+
+    // https://docs.spring.io/spring-kafka/docs/2.2.6.RELEASE/reference/html/#kafka-testing-junit4-class-rule
+    @ClassRule
+    public static EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private MicoKafkaTestHelper micoKafkaTestHelper;
+
+    @PostConstruct
+    public void before() {
+        this.micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+        template = this.micoKafkaTestHelper.getTemplate();
+
+        Set<String> requiredTopics = this.micoKafkaTestHelper.getRequiredTopics();
+        Set<String> alreadySetTopics = this.micoKafkaTestHelper.requestActuallySetTopics();
+        requiredTopics.removeAll(alreadySetTopics);
+        requiredTopics.forEach(embeddedKafka::addTopics);
+    }
+
+    /**
+     * Tests that every destination of a fan-out routing step receives the messages with acknowledged sends.
+     */
+    @Test
+    public void testFanOutIsAcknowledged() {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(
+            TestConstants.ROUTING_TOPIC_1, TestConstants.ROUTING_TOPIC_2);
+
+        Set<String> sentIds = new HashSet<>(this.micoKafkaTestHelper.sendCloudEvents(10, i -> "0",
+            cloudEvent -> CloudEventTestUtils.addMultipleTopicRoutingSteps(cloudEvent,
+                Arrays.asList(TestConstants.ROUTING_TOPIC_1, TestConstants.ROUTING_TOPIC_2))));
+
+        ArrayList<ConsumerRecord<String, MicoCloudEventImpl<JsonNode>>> events = MicoKafkaTestHelper.consumeAllMessages(consumer);
+        Set<String> topic1Ids = new HashSet<>();
+        Set<String> topic2Ids = new HashSet<>();
+        events.forEach(record -> (TestConstants.ROUTING_TOPIC_1.equals(record.topic()) ? topic1Ids : topic2Ids).add(record.value().getId()));
+        assertThat("Every message should be sent to the first destination", topic1Ids, is(sentIds));
+        assertThat("Every message should be sent to the second destination", topic2Ids, is(sentIds));
+        assertThat("Every message should be sent once to each destination", events.size(), is(2 * sentIds.size()));
+
+        // Don't forget to detach the consumer from kafka!
+        MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.ConsumerBackpressure;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=limited-function",
+    "openfaas.adaptive-concurrency=false",
+    "openfaas.max-in-flight-requests=1",
+    "kafka.pause-high-watermark-records=500"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class AsyncConcurrencyLimitTests {
+
+    /**
+     * The latency of the stub function in milliseconds.
+     */
+    private static final long FUNCTION_LATENCY_MS = 500;
+
+    private static final int CALLS = 3;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:" + FUNCTION_LATENCY_MS, 0, 1, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private ConsumerBackpressure consumerBackpressure;
+
+    /**
+     * Tests that non-blocking calls beyond a concurrency limit below the high watermark of the records
+     * do not block the calling thread, but pause the consumer until every call got its permit.
+     */
+    @Test
+    public void testCallsBeyondLimitPauseInsteadOfBlocking() {
+        List<CompletableFuture<List<MicoCloudEventImpl<JsonNode>>>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            results.add(faasController.callFaasFunctionAsync(CloudEventTestUtils.basicCloudEventWithRandomId()));
+        }
+        assertThat("The calling thread should not wait for the concurrency limit",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(FUNCTION_LATENCY_MS)));
+        assertTrue("The consumer should be paused while calls wait for their permit", consumerBackpressure.isPaused());
+
+        for (CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> result : results) {
+            assertThat(result.join().size(), is(1));
+        }
+        assertThat(consumerBackpressure.getWaitingCalls(), is(0));
+        assertFalse("The consumer should be resumed once no call waits", consumerBackpressure.isPaused());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionCallBatcher;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=batched-function",
+    "openfaas.batch-size=" + BatchedFunctionCallTests.BATCH_SIZE,
+    "openfaas.batch-linger-ms=50"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class BatchedFunctionCallTests {
+
+    static final int BATCH_SIZE = 4;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:0", 0, 2, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
+    @Autowired
+    private WebClient webClient;
+
+    /**
+     * Tests that a full batch is sent in a single request and the results are split back to their inputs.
+     */
+    @Test
+    public void testFullBatchIsSentInOneRequest() throws Exception {
+        long callsBefore = gateway.getCalls();
+        List<MicoCloudEventImpl<JsonNode>> inputs = new ArrayList<>();
+        List<CompletableFuture<List<MicoCloudEventImpl<JsonNode>>>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MicoCloudEventImpl<JsonNode> input = cloudEventWithData(i);
+            inputs.add(input);
+            results.add(faasController.callFaasFunctionAsync(input));
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            List<MicoCloudEventImpl<JsonNode>> result = results.get(i).get(10, TimeUnit.SECONDS);
+            assertThat(result.size(), is(2));
+            for (MicoCloudEventImpl<JsonNode> resultEvent : result) {
+                assertThat(resultEvent.getData(), is(inputs.get(i).getData()));
+                assertThat(resultEvent.getCorrelationId(), is(inputs.get(i).getCorrelationId()));
+                assertThat(resultEvent.getRoute().get().get(0).getType().get(), is(RouteHistory.TYPE_FAAS_FUNCTION));
+            }
+        }
+        assertThat(gateway.getCalls(), is(callsBefore + 1));
+    }
+
+    /**
+     * Tests that an incomplete batch is sent after the linger time.
+     */
+    @Test
+    public void testIncompleteBatchIsSentAfterLinger() throws Exception {
+        long callsBefore = gateway.getCalls();
+        double batchesBefore = meterRegistry.get("mico.connector.faas.batch.size").summary().count();
+
+        List<MicoCloudEventImpl<JsonNode>> result = faasController.callFaasFunction(cloudEventWithData(42));
+
+        assertThat(result.size(), is(2));
+        assertThat(result.get(0).getData().get().get("value").asInt(), is(42));
+        assertThat(gateway.getCalls(), is(callsBefore + 1));
+        assertThat((double) meterRegistry.get("mico.connector.faas.batch.size").summary().count(), is(batchesBefore + 1));
+    }
+
+    /**
+     * Tests that the inputs waiting for their batch fail on shutdown instead of never completing.
+     */
+    @Test
+    public void testShutdownFailsWaitingInputs() throws Exception {
+        FunctionCallBatcher batcher = new FunctionCallBatcher(faasController, openFaaSConfig, webClient, meterRegistry);
+        MicoCloudEventImpl<JsonNode> input = cloudEventWithData(7);
+        CompletableFuture<FunctionResult> result = batcher.submit(input, input);
+
+        batcher.shutdown();
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("The waiting input should fail on shutdown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(MicoCloudEventException.class)));
+        }
+        assertTrue("Inputs after the shutdown should fail at once", batcher.submit(input, input).isCompletedExceptionally());
+    }
+
+    private static MicoCloudEventImpl<JsonNode> cloudEventWithData(int value) {
+        return CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .correlationId("correlation-" + value)
+            .data(JsonNodeFactory.instance.objectNode().put("value", value))
+            .build();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.BinaryCloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = "kafka.content-mode=binary")
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class BinaryContentModeTests {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    private KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template;
+
+    // https://docs.spring.io/spring-kafka/docs/2.2.6.RELEASE/reference/html/#kafka-testing-junit4-class-rule
+    @ClassRule
+    public static EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private MicoKafkaTestHelper micoKafkaTestHelper;
+
+    @PostConstruct
+    public void before() {
+        this.micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+        template = this.micoKafkaTestHelper.getTemplate();
+
+        Set<String> requiredTopics = this.micoKafkaTestHelper.getRequiredTopics();
+        Set<String> alreadySetTopics = this.micoKafkaTestHelper.requestActuallySetTopics();
+        requiredTopics.removeAll(alreadySetTopics);
+        requiredTopics.forEach(embeddedKafka::addTopics);
+    }
+
+    /**
+     * Tests that structured input is written in binary content mode and read back completely.
+     */
+    @Test
+    public void testOutputIsWrittenInBinaryMode() {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
+
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .correlationId("binary-correlation")
+            .build();
+        template.send(kafkaConfig.getInputTopic(), "0", cloudEvent);
+
+        ArrayList<ConsumerRecord<String, MicoCloudEventImpl<JsonNode>>> events = MicoKafkaTestHelper.consumeAllMessages(consumer);
+        assertThat(events.size(), is(1));
+        ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> record = events.get(0);
+        assertTrue("The attributes should be in the headers", BinaryCloudEventCodec.isBinary(record.headers()));
+        assertNotNull(record.headers().lastHeader(BinaryCloudEventCodec.HEADER_PREFIX + "route"));
+        MicoCloudEventImpl<JsonNode> received = record.value();
+        assertThat(received.getId(), is(cloudEvent.getId()));
+        assertThat(received.getCorrelationId().orElse(null), is("binary-correlation"));
+        assertThat(received.getData().orElse(null), is(cloudEvent.getData().orElse(null)));
+        assertTrue("The route history should be kept", received.getRoute().map(route -> !route.isEmpty()).orElse(false));
+
+        // Don't forget to detach the consumer from kafka!
+        MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+    }
+}
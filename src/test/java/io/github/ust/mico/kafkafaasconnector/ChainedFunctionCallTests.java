@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KafkaMessageSender;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=first-function",
+    "openfaas.chained-functions=" + ChainedFunctionCallTests.STEP_A + "=function-a," + ChainedFunctionCallTests.STEP_B + "=function-b"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class ChainedFunctionCallTests {
+
+    static final String STEP_A = "chained-step-a";
+
+    static final String STEP_B = "chained-step-b";
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:0", 0, 1, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    @Autowired
+    private KafkaMessageSender kafkaMessageSender;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    private MicoKafkaTestHelper micoKafkaTestHelper;
+
+    @PostConstruct
+    public void before() {
+        this.micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+
+        Set<String> requiredTopics = this.micoKafkaTestHelper.getRequiredTopics();
+        Set<String> alreadySetTopics = this.micoKafkaTestHelper.requestActuallySetTopics();
+        requiredTopics.removeAll(alreadySetTopics);
+        requiredTopics.forEach(embeddedKafka::addTopics);
+    }
+
+    /**
+     * Tests that consecutive chained steps are called in process and only the final topic step is sent to Kafka.
+     */
+    @Test
+    public void testConsecutiveFunctionStepsAreChained() throws Exception {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(TestConstants.ROUTING_TOPIC_1);
+        long callsBefore = gateway.getCalls();
+        // the last routing slip entry is the next step
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId();
+        cloudEvent = CloudEventTestUtils.addSingleTopicRoutingStep(cloudEvent, TestConstants.ROUTING_TOPIC_1);
+        cloudEvent = CloudEventTestUtils.addSingleTopicRoutingStep(cloudEvent, STEP_B);
+        cloudEvent = CloudEventTestUtils.addSingleTopicRoutingStep(cloudEvent, STEP_A);
+
+        kafkaMessageSender.safeSendCloudEvents(Collections.singletonList(cloudEvent), cloudEvent.getId()).get(10, TimeUnit.SECONDS);
+
+        ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> record = KafkaTestUtils.getSingleRecord(consumer, TestConstants.ROUTING_TOPIC_1, 10000);
+        List<RouteHistory> history = record.value().getRoute().orElse(PersistentList.empty());
+        List<String> steps = new ArrayList<>();
+        history.forEach(step -> steps.add(step.getType().orElse("") + ":" + step.getId().orElse("")));
+        assertThat(steps.subList(steps.size() - 5, steps.size()), is(Arrays.asList(
+            RouteHistory.TYPE_TOPIC + ":" + STEP_A,
+            RouteHistory.TYPE_FAAS_FUNCTION + ":function-a",
+            RouteHistory.TYPE_TOPIC + ":" + STEP_B,
+            RouteHistory.TYPE_FAAS_FUNCTION + ":function-b",
+            RouteHistory.TYPE_TOPIC + ":" + TestConstants.ROUTING_TOPIC_1)));
+        assertThat(record.value().getRoutingSlip().map(List::size).orElse(0), is(0));
+        assertThat(gateway.getCalls(), is(callsBefore + 2));
+
+        MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+    }
+}
@@ -19,11 +19,19 @@
 package io.github.ust.mico.kafkafaasconnector;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cloudevents.json.Json;
 import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventSerializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
 import org.apache.kafka.common.errors.SerializationException;
 import org.junit.Test;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 
 public class CloudEventDeserializerTests {
 
@@ -46,4 +54,25 @@ public class CloudEventDeserializerTests {
         byte[] message = {};
         cloudEventDeserializer.deserialize("",message);
     }
+
+    /**
+     * Tests that the byte serialization matches the JSON encoding and survives a round trip
+     */
+    @Test
+    public void testSerializationRoundTrip() throws Exception {
+        CloudEventSerializer cloudEventSerializer = new CloudEventSerializer();
+        CloudEventDeserializer cloudEventDeserializer = new CloudEventDeserializer();
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEvent("RoundTrip").toBuilder()
+            .data(Json.MAPPER.readTree("{\"text\": \"\u00fcml\u00e4ut \u2713\"}"))
+            .build();
+
+        byte[] serialized = cloudEventSerializer.serialize("", cloudEvent);
+        assertThat(new String(serialized, StandardCharsets.UTF_8), is(Json.encode(cloudEvent)));
+        // the per-thread buffer is reused, so the second call must not be affected by the first one
+        assertThat(cloudEventSerializer.serialize("", cloudEvent), is(serialized));
+
+        MicoCloudEventImpl<JsonNode> deserialized = cloudEventDeserializer.deserialize("", serialized);
+        assertThat(deserialized.getId(), is(cloudEvent.getId()));
+        assertThat(deserialized.getData().orElse(null), is(cloudEvent.getData().orElse(null)));
+    }
 }
@@ -19,12 +19,17 @@
 package io.github.ust.mico.kafkafaasconnector;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
 import io.github.ust.mico.kafkafaasconnector.messageprocessing.CloudEventManipulator;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class CloudEventManipulatorTests {
@@ -41,7 +46,7 @@ public class CloudEventManipulatorTests {
         MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         final String originalMessageId = "OriginalMessageId";
         CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
-        cloudEventManipulator.setMissingHeaderFields(cloudEventSimple, originalMessageId);
+        cloudEventSimple = cloudEventManipulator.setMissingHeaderFields(cloudEventSimple, originalMessageId);
         assertThat("If the id changes the createdFrom attribute has to be set", cloudEventSimple.getCreatedFrom().orElse(null), is(originalMessageId));
     }
 
@@ -52,7 +57,71 @@ public class CloudEventManipulatorTests {
     public void testNotCreatedFrom() {
         MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
-        cloudEventManipulator.setMissingHeaderFields(cloudEventSimple, cloudEventSimple.getId());
+        cloudEventSimple = cloudEventManipulator.setMissingHeaderFields(cloudEventSimple, cloudEventSimple.getId());
         assertThat("If the id stays the same the createdFrom attribute must be empty", cloudEventSimple.getCreatedFrom().orElse(null), is(nullValue()));
     }
+
+    /**
+     * Tests that a routing step is added to a copy that shares the route of the original cloud event
+     */
+    @Test
+    public void testUpdateRouteHistoryKeepsOriginal() {
+        MicoCloudEventImpl<JsonNode> original = CloudEventTestUtils.basicCloudEventWithRandomId();
+        CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
+        ReflectionTestUtils.setField(cloudEventManipulator, "kafkaConfig", new KafkaConfig());
+        MicoCloudEventImpl<JsonNode> firstHop = cloudEventManipulator.updateRouteHistoryWithTopic(original, "topic-1");
+        MicoCloudEventImpl<JsonNode> secondHop = cloudEventManipulator.updateRouteHistoryWithFunctionCall(firstHop, "function");
+        MicoCloudEventImpl<JsonNode> otherSecondHop = cloudEventManipulator.updateRouteHistoryWithTopic(firstHop, "topic-2");
+
+        assertThat(original.getRoute().isPresent(), is(false));
+        assertThat(firstHop.getRoute().get().size(), is(1));
+        assertThat(secondHop.getRoute().get().size(), is(2));
+        assertThat(secondHop.getRoute().get().getLast().getId().orElse(null), is("function"));
+        assertThat(otherSecondHop.getRoute().get().getLast().getId().orElse(null), is("topic-2"));
+        assertThat("The route of the previous hop is shared", secondHop.getRoute().get().removeLast(), is(sameInstance(firstHop.getRoute().get())));
+    }
+
+    /**
+     * Tests that the oldest routing steps of a capped route history are replaced with a summary step
+     */
+    @Test
+    public void testRouteHistoryIsSummarized() {
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        kafkaConfig.setRouteHistoryMaxHops(3);
+        CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
+        ReflectionTestUtils.setField(cloudEventManipulator, "kafkaConfig", kafkaConfig);
+
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId();
+        for (int i = 0; i < 10; i++) {
+            cloudEvent = cloudEventManipulator.updateRouteHistoryWithTopic(cloudEvent, "topic-" + i);
+        }
+
+        PersistentList<RouteHistory> route = cloudEvent.getRoute().get();
+        assertThat(route.size(), is(4));
+        assertThat(route.get(0).getType().orElse(null), is(RouteHistory.TYPE_SUMMARY));
+        assertThat("The summary holds the number of removed steps", route.get(0).getId().orElse(null), is("7"));
+        assertThat(route.get(1).getId().orElse(null), is("topic-7"));
+        assertThat(route.getLast().getId().orElse(null), is("topic-9"));
+    }
+
+    /**
+     * Tests that the oldest routing steps of a capped route history can be dropped
+     */
+    @Test
+    public void testRouteHistoryIsDropped() {
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        kafkaConfig.setRouteHistoryMaxHops(3);
+        kafkaConfig.setRouteHistoryOverflow(KafkaConfig.RouteHistoryOverflow.DROP);
+        CloudEventManipulator cloudEventManipulator = new CloudEventManipulator();
+        ReflectionTestUtils.setField(cloudEventManipulator, "kafkaConfig", kafkaConfig);
+
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId();
+        for (int i = 0; i < 10; i++) {
+            cloudEvent = cloudEventManipulator.updateRouteHistoryWithTopic(cloudEvent, "topic-" + i);
+        }
+
+        PersistentList<RouteHistory> route = cloudEvent.getRoute().get();
+        assertThat(route.size(), is(3));
+        assertThat(route.get(0).getId().orElse(null), is("topic-7"));
+    }
 }
@@ -2,15 +2,14 @@ package io.github.ust.mico.kafkafaasconnector;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
 
 @Slf4j
 public class CloudEventTestUtils {
@@ -24,15 +23,16 @@ public class CloudEventTestUtils {
     public static MicoCloudEventImpl<JsonNode> basicCloudEvent(String id) {
         try {
             URI uri = new URI("http://example.com/unit-test");
-            return new MicoCloudEventImpl<JsonNode>()
-                .setId(id)
-                .setSource(uri)
-                .setType("UnitTestMessage")
-                .setTime(ZonedDateTime.now());
+            return MicoCloudEventImpl.<JsonNode>builder()
+                .id(id)
+                .source(uri)
+                .type("UnitTestMessage")
+                .time(ZonedDateTime.now())
+                .build();
         } catch (URISyntaxException e) {
             // Should never happen => no real error handling
             log.error("Failed to created basic cloud event.", e);
-            return new MicoCloudEventImpl<>();
+            return MicoCloudEventImpl.<JsonNode>builder().build();
         }
     }
 
@@ -40,7 +40,7 @@ public class CloudEventTestUtils {
      * Build a basic cloud event with dummy entries and a random id.
      */
     public static MicoCloudEventImpl<JsonNode> basicCloudEventWithRandomId() {
-        return basicCloudEvent("").setRandomId();
+        return basicCloudEvent("").toBuilder().randomId().build();
     }
 
     /**
@@ -51,7 +51,7 @@ public class CloudEventTestUtils {
      * @return
      */
     public static MicoCloudEventImpl<JsonNode> markAsTestMessage(MicoCloudEventImpl<JsonNode> message, String filterOutBeforeTopic) {
-        return message.setIsTestMessage(true).setFilterOutBeforeTopic(filterOutBeforeTopic);
+        return message.toBuilder().isTestMessage(true).filterOutBeforeTopic(filterOutBeforeTopic).build();
     }
 
     /**
@@ -79,10 +79,8 @@ public class CloudEventTestUtils {
      * @return
      */
     public static MicoCloudEventImpl<JsonNode> addMultipleTopicRoutingSteps(MicoCloudEventImpl<JsonNode> message, List<String> destinations) {
-        Optional<LinkedList<List<String>>> routingSlip = message.getRoutingSlip();
-        LinkedList<List<String>> newRoutingSlip = routingSlip.orElse(new LinkedList<>());
-        newRoutingSlip.addLast(destinations);
-        return message.setRoutingSlip(newRoutingSlip);
+        PersistentList<List<String>> routingSlip = message.getRoutingSlip().orElse(PersistentList.empty());
+        return message.toBuilder().routingSlip(routingSlip.append(destinations)).build();
     }
 
     /**
@@ -92,7 +90,7 @@ public class CloudEventTestUtils {
      * @return
      */
     public static MicoCloudEventImpl<JsonNode> setPastExpiryDate(MicoCloudEventImpl<JsonNode> message) {
-        return message.setExpiryDate(ZonedDateTime.now().minusHours(1));
+        return message.toBuilder().expiryDate(ZonedDateTime.now().minusHours(1)).build();
     }
 
     /**
@@ -102,7 +100,7 @@ public class CloudEventTestUtils {
      * @return
      */
     public static MicoCloudEventImpl<JsonNode> setFutureExpiryDate(MicoCloudEventImpl<JsonNode> message) {
-        return message.setExpiryDate(ZonedDateTime.now().plusHours(1));
+        return message.toBuilder().expiryDate(ZonedDateTime.now().plusHours(1)).build();
     }
 
     /**
@@ -115,8 +113,10 @@ public class CloudEventTestUtils {
      * @return
      */
     public static MicoCloudEventImpl<JsonNode> setSequenceAttributes(MicoCloudEventImpl<JsonNode> message, String sequenceId, int sequenceNumber, int sequenceSize) {
-        return message.setSequenceId(sequenceId)
-            .setSequenceSize(sequenceSize)
-            .setSequenceNumber(sequenceNumber);
+        return message.toBuilder()
+            .sequenceId(sequenceId)
+            .sequenceSize(sequenceSize)
+            .sequenceNumber(sequenceNumber)
+            .build();
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=coalesced-function",
+    "openfaas.coalesce-calls=true"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class CoalescedFunctionCallTests {
+
+    /**
+     * The latency of the stub function in milliseconds.
+     */
+    private static final long FUNCTION_LATENCY_MS = 500;
+
+    private static final int CALLERS = 5;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:" + FUNCTION_LATENCY_MS, 0, 1, 8);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Tests that concurrent blocking calls with the same data share one function call and get their own result events.
+     */
+    @Test
+    public void testConcurrentCallsAreCoalesced() throws Exception {
+        String data = UUID.randomUUID().toString();
+        long callsBefore = gateway.getCalls();
+        double coalescedBefore = coalescedCount();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<MicoCloudEventImpl<JsonNode>> inputs = new ArrayList<>();
+            List<Future<List<MicoCloudEventImpl<JsonNode>>>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                MicoCloudEventImpl<JsonNode> input = cloudEventWithData(data);
+                inputs.add(input);
+                results.add(executor.submit(() -> faasController.callFaasFunction(input)));
+            }
+            Set<String> resultIds = new HashSet<>();
+            for (int i = 0; i < CALLERS; i++) {
+                List<MicoCloudEventImpl<JsonNode>> result = results.get(i).get(10, TimeUnit.SECONDS);
+                assertThat(result.size(), is(1));
+                assertThat(result.get(0).getCorrelationId(), is(inputs.get(i).getCorrelationId()));
+                assertThat(result.get(0).getCreatedFrom(), is(inputs.get(i).getCreatedFrom()));
+                resultIds.add(result.get(0).getId());
+            }
+            assertThat(resultIds.size(), is(CALLERS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(gateway.getCalls(), is(callsBefore + 1));
+        assertThat(coalescedCount(), is(coalescedBefore + CALLERS - 1));
+    }
+
+    /**
+     * Tests that concurrent non-blocking calls with the same data share one function call.
+     */
+    @Test
+    public void testConcurrentAsyncCallsAreCoalesced() throws Exception {
+        String data = UUID.randomUUID().toString();
+        long callsBefore = gateway.getCalls();
+        List<CompletableFuture<List<MicoCloudEventImpl<JsonNode>>>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(faasController.callFaasFunctionAsync(cloudEventWithData(data)));
+        }
+        for (CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS).size(), is(1));
+        }
+        assertThat(gateway.getCalls(), is(callsBefore + 1));
+    }
+
+    /**
+     * Tests that a call waiting for a call that expires at the deadline of its own cloud event calls the function itself.
+     */
+    @Test
+    public void testExpiredCallSharesNoResult() throws Exception {
+        // warm up the non-blocking client, so the expiring call is in flight before the second call starts
+        faasController.callFaasFunctionAsync(cloudEventWithData(UUID.randomUUID().toString())).get(10, TimeUnit.SECONDS);
+        String data = UUID.randomUUID().toString();
+        double coalescedBefore = coalescedCount();
+        MicoCloudEventImpl<JsonNode> expiring = cloudEventWithData(data).toBuilder()
+            .expiryDate(ZonedDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(FUNCTION_LATENCY_MS / 2)))
+            .build();
+        CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> expired = faasController.callFaasFunctionAsync(expiring);
+        List<MicoCloudEventImpl<JsonNode>> result = faasController.callFaasFunction(cloudEventWithData(data));
+
+        assertThat(result.size(), is(1));
+        assertThat(expired.isCompletedExceptionally(), is(true));
+        assertThat(coalescedCount(), is(coalescedBefore + 1));
+    }
+
+    private double coalescedCount() {
+        return meterRegistry.get("mico.connector.faas.calls.coalesced").counter().count();
+    }
+
+    private static MicoCloudEventImpl<JsonNode> cloudEventWithData(String data) {
+        return CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .createdFrom(UUID.randomUUID().toString())
+            .correlationId(UUID.randomUUID().toString())
+            .data(JsonNodeFactory.instance.objectNode().put("value", data))
+            .build();
+    }
+}
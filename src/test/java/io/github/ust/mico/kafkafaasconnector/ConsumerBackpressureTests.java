@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.ConsumerBackpressure;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ConsumerBackpressureTests {
+
+    private final KafkaConfig kafkaConfig = new KafkaConfig();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MessageListenerContainer runningContainer = Mockito.mock(MessageListenerContainer.class);
+
+    private final MessageListenerContainer stoppedContainer = Mockito.mock(MessageListenerContainer.class);
+
+    private ConsumerBackpressure backpressure;
+
+    @Before
+    public void setUp() {
+        kafkaConfig.setPauseHighWatermarkRecords(4);
+        kafkaConfig.setPauseLowWatermarkRecords(2);
+        kafkaConfig.setPauseHighWatermarkBytes(1000);
+        kafkaConfig.setPauseLowWatermarkBytes(500);
+        Mockito.when(runningContainer.isRunning()).thenReturn(true);
+        KafkaListenerEndpointRegistry registry = Mockito.mock(KafkaListenerEndpointRegistry.class);
+        Mockito.when(registry.getListenerContainers()).thenReturn(Arrays.asList(runningContainer, stoppedContainer));
+
+        backpressure = new ConsumerBackpressure();
+        ReflectionTestUtils.setField(backpressure, "kafkaConfig", kafkaConfig);
+        ReflectionTestUtils.setField(backpressure, "kafkaListenerEndpointRegistry", registry);
+        ReflectionTestUtils.setField(backpressure, "meterRegistry", meterRegistry);
+        backpressure.init();
+    }
+
+    /**
+     * Tests that the running containers are paused at the high watermark and only resumed below the low watermark.
+     */
+    @Test
+    public void testPauseAndResumeWithHysteresis() {
+        for (int i = 0; i < 3; i++) {
+            backpressure.register(10);
+        }
+        assertFalse(backpressure.isPaused());
+        backpressure.register(10);
+        assertTrue(backpressure.isPaused());
+        verify(runningContainer, times(1)).pause();
+        verify(stoppedContainer, never()).pause();
+
+        backpressure.complete(10);
+        backpressure.complete(10);
+        assertTrue("The consumer stays paused until the low watermark is undercut", backpressure.isPaused());
+        backpressure.complete(10);
+        assertFalse(backpressure.isPaused());
+        verify(runningContainer, times(1)).resume();
+        assertThat(backpressure.getInFlightRecords(), is(1));
+        assertThat(meterRegistry.get("mico.connector.consumer.paused").timer().count(), is(1L));
+    }
+
+    /**
+     * Tests that the consumer is also paused if the in-flight records are too large.
+     */
+    @Test
+    public void testPauseOnBytes() {
+        backpressure.register(600);
+        assertFalse(backpressure.isPaused());
+        backpressure.register(400);
+        assertTrue(backpressure.isPaused());
+        backpressure.complete(600);
+        assertFalse(backpressure.isPaused());
+        assertThat(backpressure.getInFlightBytes(), is(400L));
+    }
+
+    /**
+     * Tests that the consumer is never paused if backpressure is disabled.
+     */
+    @Test
+    public void testDisabled() {
+        kafkaConfig.setBackpressure(false);
+        for (int i = 0; i < 10; i++) {
+            backpressure.register(1000);
+        }
+        assertFalse(backpressure.isPaused());
+        verify(runningContainer, never()).pause();
+    }
+
+    /**
+     * Tests that waiting function calls pause the consumer even below the high watermark and with backpressure disabled,
+     * and that it is only resumed once no call waits any more.
+     */
+    @Test
+    public void testPauseWhileCallsWait() {
+        kafkaConfig.setBackpressure(false);
+        backpressure.register(10);
+        backpressure.registerWaitingCall();
+        assertTrue(backpressure.isPaused());
+        backpressure.registerWaitingCall();
+        backpressure.completeWaitingCall();
+        assertTrue("The consumer stays paused while a call waits", backpressure.isPaused());
+        backpressure.completeWaitingCall();
+        assertFalse(backpressure.isPaused());
+        verify(runningContainer, times(1)).pause();
+        verify(runningContainer, times(1)).resume();
+        assertThat(backpressure.getWaitingCalls(), is(0));
+    }
+}
@@ -24,6 +24,8 @@ import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
 import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
 import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.EnvironmentVariables;
@@ -45,6 +47,8 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
@@ -71,6 +75,9 @@ public class FaasControllerTests {
     @Autowired
     FaasController faasController;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
 
     @Test
     public void parseEmptyFunctionResult() throws MicoCloudEventException {
@@ -97,4 +104,35 @@ public class FaasControllerTests {
         assertEquals(result.get(1).getId(), cloudEvent2.getId());
         assertEquals(result.get(0).getRoutingSlip(), cloudEvent2.getRoutingSlip());
     }
+
+    @Test
+    public void callFaasFunctionAsyncSkipped() throws Exception {
+        // the function call is skipped in the testing profile
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEvent("CloudEventAsync");
+        CompletableFuture<List<MicoCloudEventImpl<JsonNode>>> future = this.faasController.callFaasFunctionAsync(cloudEvent);
+        assertTrue(future.isDone());
+        List<MicoCloudEventImpl<JsonNode>> result = future.get();
+        assertEquals(1, result.size());
+        assertEquals(cloudEvent.getId(), result.get(0).getId());
+    }
+
+    @Test
+    public void parseFunctionResultIsMeasured() throws MicoCloudEventException {
+        DistributionSummary resultEvents = meterRegistry.get("mico.connector.faas.result.events").summary();
+        DistributionSummary responseSize = meterRegistry.get("mico.connector.faas.response.size").summary();
+        long count = resultEvents.count();
+        double totalEvents = resultEvents.totalAmount();
+        double totalSize = responseSize.totalAmount();
+        ArrayList<MicoCloudEventImpl<JsonNode>> input = new ArrayList<>();
+        input.add(CloudEventTestUtils.basicCloudEvent("CloudEvent1"));
+        input.add(CloudEventTestUtils.basicCloudEvent("CloudEvent2"));
+        String functionResult = Json.encode(input);
+
+        this.faasController.parseFunctionResult(functionResult, null);
+
+        assertEquals(count + 1, resultEvents.count());
+        assertEquals(totalEvents + 2, resultEvents.totalAmount(), 0);
+        assertEquals(totalSize + functionResult.length(), responseSize.totalAmount(), 0);
+        assertEquals(count + 1, meterRegistry.get("mico.connector.faas.result.parse").timer().count());
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.AdaptiveConcurrencyLimiter;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.CircuitBreaker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionCallGuardTests {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Tests that the limit grows while the calls are fast and the limit is used.
+     */
+    @Test
+    public void testLimitGrowsWithFastCalls() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 100, 2.0);
+        for (int i = 0; i < 20; i++) {
+            while (limiter.tryAcquire()) {
+                // use the whole limit
+            }
+            limiter.onSuccess(RTT);
+        }
+        assertThat(limiter.getLimit(), greaterThan(4));
+    }
+
+    /**
+     * Tests that the limit shrinks if the round-trip time rises above the baseline and after dropped calls.
+     */
+    @Test
+    public void testLimitShrinksWithSlowOrDroppedCalls() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100, 2.0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(RTT);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(RTT * 10);
+        }
+        assertThat(limiter.getLimit(), lessThan(50));
+
+        AdaptiveConcurrencyLimiter droppingLimiter = new AdaptiveConcurrencyLimiter(50, 1, 100, 2.0);
+        assertTrue(droppingLimiter.tryAcquire());
+        droppingLimiter.onDropped();
+        assertThat(droppingLimiter.getLimit(), lessThan(50));
+        assertThat(droppingLimiter.getInFlight(), is(0));
+    }
+
+    /**
+     * Tests that no call is permitted beyond the limit.
+     */
+    @Test
+    public void testLimitIsEnforced() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 2, 2.0);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        limiter.onIgnored();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * Tests that the circuit breaker opens at the failure rate, permits a probe after the open duration
+     * and closes if the probe succeeds.
+     */
+    @Test
+    public void testCircuitBreakerOpensAndCloses() {
+        AtomicLong clock = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 0.5, 1000, clock::get);
+        for (int i = 0; i < 2; i++) {
+            CircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermission();
+            assertThat(permit, is(CircuitBreaker.Permit.CALL));
+            circuitBreaker.onSuccess(permit);
+        }
+        assertFalse("One failure of four calls is below the threshold", circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+        assertTrue("Two failures of four calls reach the threshold", circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertNull(circuitBreaker.tryAcquirePermission());
+
+        clock.set(1000);
+        CircuitBreaker.Permit probe = circuitBreaker.tryAcquirePermission();
+        assertThat("A probe should be permitted after the open duration", probe, is(CircuitBreaker.Permit.PROBE));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertNull("Only a single probe should be permitted", circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess(probe);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    /**
+     * Tests that a failed probe opens the circuit breaker again.
+     */
+    @Test
+    public void testFailedProbeOpensCircuitBreaker() {
+        AtomicLong clock = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1.0, 1000, clock::get);
+        assertTrue(circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+        clock.set(1000);
+        CircuitBreaker.Permit probe = circuitBreaker.tryAcquirePermission();
+        assertThat(probe, is(CircuitBreaker.Permit.PROBE));
+        assertTrue(circuitBreaker.onFailure(probe));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        clock.set(1500);
+        assertNull(circuitBreaker.tryAcquirePermission());
+    }
+
+    /**
+     * Tests that a released permission neither closes a half-open circuit breaker nor counts as a call.
+     */
+    @Test
+    public void testReleasedPermissionRecordsNoOutcome() {
+        AtomicLong clock = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 0.5, 1000, clock::get);
+        circuitBreaker.releasePermission(circuitBreaker.tryAcquirePermission());
+        assertFalse("A released permission should not count as a call of the window",
+            circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+        assertTrue(circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+
+        clock.set(1000);
+        CircuitBreaker.Permit probe = circuitBreaker.tryAcquirePermission();
+        assertThat(probe, is(CircuitBreaker.Permit.PROBE));
+        circuitBreaker.releasePermission(probe);
+        assertThat("A released probe should not close the breaker", circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat("The probe permission should be available again", circuitBreaker.tryAcquirePermission(), is(CircuitBreaker.Permit.PROBE));
+        assertNull(circuitBreaker.tryAcquirePermission());
+    }
+
+    /**
+     * Tests that a call permitted before the breaker opened neither decides the half-open state
+     * nor frees the probe permission if it completes while the probe is in flight.
+     */
+    @Test
+    public void testLateCallDoesNotDecideHalfOpenState() {
+        AtomicLong clock = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1.0, 1000, clock::get);
+        CircuitBreaker.Permit lateSuccess = circuitBreaker.tryAcquirePermission();
+        CircuitBreaker.Permit lateFailure = circuitBreaker.tryAcquirePermission();
+        CircuitBreaker.Permit lateRelease = circuitBreaker.tryAcquirePermission();
+        assertTrue(circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission()));
+
+        clock.set(1000);
+        CircuitBreaker.Permit probe = circuitBreaker.tryAcquirePermission();
+        assertThat(probe, is(CircuitBreaker.Permit.PROBE));
+
+        circuitBreaker.onSuccess(lateSuccess);
+        assertThat("A late success should not close the breaker", circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertFalse("A late failure should not open the breaker", circuitBreaker.onFailure(lateFailure));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        circuitBreaker.releasePermission(lateRelease);
+        assertNull("A late release should not free the probe permission", circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onSuccess(probe);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=slow-function"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class FunctionDeadlineTests {
+
+    /**
+     * The latency of the stub function in milliseconds.
+     */
+    private static final long FUNCTION_LATENCY_MS = 2000;
+
+    private static final long TTL_MS = 200;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:" + FUNCTION_LATENCY_MS, 0, 1, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Tests that a blocking function call is cancelled at the expiry date of the cloud event.
+     */
+    @Test
+    public void testBlockingCallIsCancelledAtDeadline() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventExpiringIn(TTL_MS);
+        long start = System.nanoTime();
+        try {
+            faasController.callFaasFunction(cloudEvent);
+            fail("The function call should have been cancelled");
+        } catch (MicoCloudEventException e) {
+            assertThat(e.getMessage(), containsString("expired"));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(FUNCTION_LATENCY_MS / 2)));
+        assertThat(meterRegistry.get("mico.connector.faas.call").tag("status", "EXPIRED").timer().count() > 0, is(true));
+    }
+
+    /**
+     * Tests that a non-blocking function call is cancelled at the expiry date of the cloud event.
+     */
+    @Test
+    public void testAsyncCallIsCancelledAtDeadline() throws InterruptedException {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventExpiringIn(TTL_MS);
+        double expiredBefore = expiredCount();
+        long start = System.nanoTime();
+        try {
+            List<MicoCloudEventImpl<JsonNode>> result = faasController.callFaasFunctionAsync(cloudEvent).get();
+            fail("The function call should have been cancelled, but returned " + result);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(MicoCloudEventException.class)));
+            assertThat(e.getCause().getMessage(), containsString("expired"));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(FUNCTION_LATENCY_MS / 2)));
+        assertThat(expiredCount(), is(expiredBefore + 1));
+    }
+
+    /**
+     * Tests that an already expired cloud event is not sent to the function.
+     */
+    @Test
+    public void testExpiredCloudEventIsNotSent() {
+        long callsBefore = gateway.getCalls();
+        try {
+            faasController.callFaasFunction(cloudEventExpiringIn(-1000));
+            fail("The function call should have been rejected");
+        } catch (MicoCloudEventException e) {
+            assertThat(e.getMessage(), containsString("expired"));
+        }
+        assertThat(gateway.getCalls(), is(callsBefore));
+    }
+
+    private double expiredCount() {
+        return meterRegistry.get("mico.connector.events.expired.late").tag("stage", "function").counters().stream()
+            .mapToDouble(counter -> counter.count())
+            .sum();
+    }
+
+    private static MicoCloudEventImpl<JsonNode> cloudEventExpiringIn(long millis) {
+        return CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .expiryDate(ZonedDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(millis)))
+            .build();
+    }
+}
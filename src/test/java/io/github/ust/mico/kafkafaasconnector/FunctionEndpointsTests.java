@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionCallGuard;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionEndpoints;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class FunctionEndpointsTests {
+
+    private static final String FUNCTION_NAME = "test-function";
+
+    private static final long EJECTION_MS = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private OpenFaaSConfig createConfig(String... endpoints) {
+        OpenFaaSConfig openFaaSConfig = new OpenFaaSConfig();
+        openFaaSConfig.setGateway("http://gateway:8080");
+        openFaaSConfig.setFunctionName(FUNCTION_NAME);
+        openFaaSConfig.setEndpoints(Arrays.asList(endpoints));
+        openFaaSConfig.setEndpointFailureThreshold(2);
+        openFaaSConfig.setEndpointEjectionMs(EJECTION_MS);
+        return openFaaSConfig;
+    }
+
+    private static void call(FunctionEndpoints.Endpoint endpoint, FunctionCallGuard.Outcome outcome) {
+        endpoint.onStart();
+        endpoint.onComplete(outcome, TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    /**
+     * Tests that every call goes to the gateway if no endpoints are configured.
+     */
+    @Test
+    public void testGatewayWithoutEndpoints() throws Exception {
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(createConfig(), meterRegistry, clock::get);
+        assertThat(functionEndpoints.getEndpoints(), is(empty()));
+        FunctionEndpoints.Endpoint endpoint = functionEndpoints.choose(FUNCTION_NAME);
+        assertThat(endpoint.getFunctionUrl(FUNCTION_NAME).toString(), is("http://gateway:8080/function/" + FUNCTION_NAME));
+    }
+
+    /**
+     * Tests that a call goes to the endpoint with the fewest calls in flight.
+     */
+    @Test
+    public void testLeastOutstanding() {
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(createConfig("http://a:8080", "http://b:8080/"), meterRegistry, clock::get);
+        FunctionEndpoints.Endpoint first = functionEndpoints.choose(FUNCTION_NAME);
+        first.onStart();
+        FunctionEndpoints.Endpoint second = functionEndpoints.choose(FUNCTION_NAME);
+        assertThat("The endpoint without calls in flight should be chosen", second, is(not(sameInstance(first))));
+        second.onStart();
+        second.onStart();
+        assertThat(functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(first)));
+    }
+
+    /**
+     * Tests that power of two choices prefers the endpoint with fewer calls in flight.
+     */
+    @Test
+    public void testPowerOfTwoChoices() {
+        OpenFaaSConfig openFaaSConfig = createConfig("http://a:8080", "http://b:8080");
+        openFaaSConfig.setLoadBalancing(OpenFaaSConfig.LoadBalancing.POWER_OF_TWO_CHOICES);
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(openFaaSConfig, meterRegistry, clock::get);
+        FunctionEndpoints.Endpoint busy = functionEndpoints.getEndpoints().get(0);
+        busy.onStart();
+        for (int i = 0; i < 10; i++) {
+            assertThat(functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(functionEndpoints.getEndpoints().get(1))));
+        }
+    }
+
+    /**
+     * Tests that a failing endpoint is ejected, probed after the ejection time and put back in rotation if the probe succeeds.
+     */
+    @Test
+    public void testEjectionAndProbe() {
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(createConfig("http://a:8080", "http://b:8080"), meterRegistry, clock::get);
+        FunctionEndpoints.Endpoint failing = functionEndpoints.getEndpoints().get(0);
+        FunctionEndpoints.Endpoint healthy = functionEndpoints.getEndpoints().get(1);
+        call(failing, FunctionCallGuard.Outcome.DROPPED);
+        assertThat(failing.getState(), is(FunctionEndpoints.Endpoint.State.HEALTHY));
+        call(failing, FunctionCallGuard.Outcome.IGNORED);
+        call(failing, FunctionCallGuard.Outcome.DROPPED);
+        assertThat(failing.getState(), is(FunctionEndpoints.Endpoint.State.EJECTED));
+        for (int i = 0; i < 10; i++) {
+            assertThat(functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(healthy)));
+        }
+
+        clock.set(TimeUnit.MILLISECONDS.toNanos(EJECTION_MS));
+        assertThat("The ejected endpoint should get a probe call", functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(failing)));
+        assertThat(failing.getState(), is(FunctionEndpoints.Endpoint.State.PROBING));
+        assertThat("Only a single probe should be sent", functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(healthy)));
+        call(failing, FunctionCallGuard.Outcome.DROPPED);
+        assertThat("A failed probe should eject the endpoint again", failing.getState(), is(FunctionEndpoints.Endpoint.State.EJECTED));
+
+        clock.set(TimeUnit.MILLISECONDS.toNanos(2 * EJECTION_MS));
+        assertThat(functionEndpoints.choose(FUNCTION_NAME), is(sameInstance(failing)));
+        call(failing, FunctionCallGuard.Outcome.SUCCESS);
+        assertThat(failing.getState(), is(FunctionEndpoints.Endpoint.State.HEALTHY));
+        assertThat(meterRegistry.get("mico.connector.faas.endpoint.ejections").tag("endpoint", "http://a:8080").counter().count(), is(2.0));
+    }
+
+    /**
+     * Tests that the calls still go somewhere if every endpoint is ejected.
+     */
+    @Test
+    public void testAllEndpointsEjected() {
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(createConfig("http://a:8080", "http://b:8080"), meterRegistry, clock::get);
+        for (FunctionEndpoints.Endpoint endpoint : functionEndpoints.getEndpoints()) {
+            call(endpoint, FunctionCallGuard.Outcome.DROPPED);
+            call(endpoint, FunctionCallGuard.Outcome.DROPPED);
+        }
+        FunctionEndpoints.Endpoint chosen = functionEndpoints.choose(FUNCTION_NAME);
+        assertThat(chosen.getState(), is(FunctionEndpoints.Endpoint.State.EJECTED));
+    }
+
+    /**
+     * Tests that function endpoints serve the configured function at their url and other functions are called at the gateway.
+     */
+    @Test
+    public void testFunctionEndpoints() throws Exception {
+        OpenFaaSConfig openFaaSConfig = createConfig("http://instance-1:8080/", "http://instance-2:8080/");
+        openFaaSConfig.setEndpointType(OpenFaaSConfig.EndpointType.FUNCTION);
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(openFaaSConfig, meterRegistry, clock::get);
+        assertThat(functionEndpoints.choose(FUNCTION_NAME).getBaseUrl(), is(not("http://gateway:8080")));
+        assertThat(functionEndpoints.getEndpoints().get(0).getFunctionUrl(FUNCTION_NAME).toString(), is("http://instance-1:8080"));
+        assertThat(functionEndpoints.choose("other-function").getFunctionUrl("other-function").toString(),
+            is("http://gateway:8080/function/other-function"));
+    }
+
+    /**
+     * Tests that the endpoints file is reloaded and known endpoints keep their state.
+     */
+    @Test
+    public void testEndpointsFile() throws Exception {
+        File endpointsFile = temporaryFolder.newFile("endpoints");
+        Files.write(endpointsFile.toPath(), Arrays.asList("# gateways", "http://a:8080", "", "http://b:8080"), StandardCharsets.UTF_8);
+        OpenFaaSConfig openFaaSConfig = createConfig();
+        openFaaSConfig.setEndpointsFile(endpointsFile.getPath());
+        FunctionEndpoints functionEndpoints = new FunctionEndpoints(openFaaSConfig, meterRegistry, clock::get);
+        try {
+            FunctionEndpoints.Endpoint endpointB = functionEndpoints.getEndpoints().get(1);
+            call(endpointB, FunctionCallGuard.Outcome.DROPPED);
+            call(endpointB, FunctionCallGuard.Outcome.DROPPED);
+
+            Files.write(endpointsFile.toPath(), Arrays.asList("http://b:8080", "http://c:8080"), StandardCharsets.UTF_8);
+            functionEndpoints.refresh();
+            assertThat(functionEndpoints.getEndpoints().get(0), is(sameInstance(endpointB)));
+            assertThat(endpointB.getState(), is(FunctionEndpoints.Endpoint.State.EJECTED));
+            assertThat(functionEndpoints.choose(FUNCTION_NAME).getBaseUrl(), is("http://c:8080"));
+
+            assertThat(endpointsFile.delete(), is(true));
+            functionEndpoints.refresh();
+            assertThat("An unreadable file should keep the endpoints", functionEndpoints.getEndpoints().size(), is(2));
+        } finally {
+            functionEndpoints.shutdown();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionResult;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionResultCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=cached-function",
+    "openfaas.result-cache=true"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class FunctionResultCacheTests {
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:0", 0, 2, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Tests that a cached result is replayed without calling the function and is rebased onto the new input.
+     */
+    @Test
+    public void testCacheHitSkipsFunctionCall() throws Exception {
+        String data = UUID.randomUUID().toString();
+        MicoCloudEventImpl<JsonNode> first = cloudEventWithData(data);
+        List<MicoCloudEventImpl<JsonNode>> firstResult = faasController.callFaasFunction(first);
+        long callsAfterFirst = gateway.getCalls();
+        double hitsBefore = meterRegistry.get("mico.connector.faas.cache.gets").tag("result", "hit").counter().count();
+
+        MicoCloudEventImpl<JsonNode> second = cloudEventWithData(data);
+        List<MicoCloudEventImpl<JsonNode>> secondResult = faasController.callFaasFunction(second);
+        List<MicoCloudEventImpl<JsonNode>> asyncResult = faasController.callFaasFunctionAsync(second).get();
+
+        assertThat(gateway.getCalls(), is(callsAfterFirst));
+        assertThat(meterRegistry.get("mico.connector.faas.cache.gets").tag("result", "hit").counter().count(), is(hitsBefore + 2));
+        assertThat(secondResult.size(), is(firstResult.size()));
+        assertThat(asyncResult.size(), is(firstResult.size()));
+        for (int i = 0; i < secondResult.size(); i++) {
+            MicoCloudEventImpl<JsonNode> result = secondResult.get(i);
+            assertThat(result.getId(), is(not(firstResult.get(i).getId())));
+            assertThat(result.getId(), is(not(asyncResult.get(i).getId())));
+            assertThat(result.getData(), is(firstResult.get(i).getData()));
+            assertThat(result.getCreatedFrom(), is(second.getCreatedFrom()));
+            assertThat(result.getCorrelationId(), is(second.getCorrelationId()));
+            List<RouteHistory> route = result.getRoute().get();
+            assertThat(route.size(), is(1));
+            assertThat(route.get(0).getType().get(), is(RouteHistory.TYPE_FAAS_FUNCTION));
+            assertThat(route.get(0).getTimestamp().get().isAfter(firstResult.get(i).getRoute().get().get(0).getTimestamp().get()), is(true));
+        }
+    }
+
+    /**
+     * Tests that different data is not served from the cache.
+     */
+    @Test
+    public void testCacheMissCallsFunction() throws MicoCloudEventException {
+        long callsBefore = gateway.getCalls();
+        faasController.callFaasFunction(cloudEventWithData(UUID.randomUUID().toString()));
+        faasController.callFaasFunction(cloudEventWithData(UUID.randomUUID().toString()));
+        assertThat(gateway.getCalls(), is(callsBefore + 2));
+    }
+
+    /**
+     * Tests that the results of a chained function are not served from the cache, even with the same data.
+     */
+    @Test
+    public void testChainedFunctionIsNotCached() throws MicoCloudEventException {
+        String data = UUID.randomUUID().toString();
+        long callsBefore = gateway.getCalls();
+        faasController.callFaasFunction(cloudEventWithData(data), "chained-function", result -> { });
+        faasController.callFaasFunction(cloudEventWithData(data), "chained-function", result -> { });
+        faasController.callFaasFunctionAsync(cloudEventWithData(data), "chained-function", result -> { }).join();
+        assertThat(gateway.getCalls(), is(callsBefore + 3));
+    }
+
+    /**
+     * Tests that the least recently used results are evicted if the cache is full.
+     */
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FunctionResultCache cache = new FunctionResultCache(2, 1000, Long.MAX_VALUE / 2, registry);
+        MicoCloudEventImpl<JsonNode> input = CloudEventTestUtils.basicCloudEventWithRandomId();
+        cache.put("a", new FunctionResult(input, Collections.emptyList(), 10));
+        cache.put("b", new FunctionResult(input, Collections.emptyList(), 10));
+        assertTrue(cache.get("a").isPresent());
+        cache.put("c", new FunctionResult(input, Collections.emptyList(), 10));
+
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertTrue(cache.get("c").isPresent());
+        assertThat(registry.get("mico.connector.faas.cache.evictions").tag("cause", "size").counter().count(), is(1.0));
+        assertThat(registry.get("mico.connector.faas.cache.gets").tag("result", "miss").counter().count(), is(1.0));
+
+        cache.put("d", new FunctionResult(input, Collections.emptyList(), 995));
+        assertThat(cache.getSize(), is(1));
+        assertThat(cache.getWeight(), is(995L));
+        cache.put("e", new FunctionResult(input, Collections.emptyList(), 1001));
+        assertFalse("Results larger than the cache are not cached", cache.get("e").isPresent());
+    }
+
+    /**
+     * Tests that results expire after the time to live.
+     */
+    @Test
+    public void testResultExpires() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AtomicLong now = new AtomicLong();
+        FunctionResultCache cache = new FunctionResultCache(10, 1000, 100, registry, now::get);
+        cache.put("a", new FunctionResult(CloudEventTestUtils.basicCloudEventWithRandomId(), Collections.emptyList(), 10));
+        now.set(99);
+        assertTrue(cache.get("a").isPresent());
+        now.set(100);
+        assertFalse(cache.get("a").isPresent());
+        assertThat(cache.getWeight(), is(0L));
+        assertThat(registry.get("mico.connector.faas.cache.evictions").tag("cause", "expired").counter().count(), is(1.0));
+    }
+
+    /**
+     * Tests that the key depends on the function and the data, but not on the headers.
+     */
+    @Test
+    public void testKey() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventWithData("data");
+        assertThat(FunctionResultCache.getKey("function", cloudEvent), is(FunctionResultCache.getKey("function", cloudEventWithData("data"))));
+        assertThat(FunctionResultCache.getKey("function", cloudEvent), is(not(FunctionResultCache.getKey("other-function", cloudEvent))));
+        assertThat(FunctionResultCache.getKey("function", cloudEvent), is(not(FunctionResultCache.getKey("function", cloudEventWithData("other")))));
+    }
+
+    private static MicoCloudEventImpl<JsonNode> cloudEventWithData(String data) {
+        return CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .createdFrom(UUID.randomUUID().toString())
+            .correlationId(UUID.randomUUID().toString())
+            .data(JsonNodeFactory.instance.objectNode().put("value", data))
+            .build();
+    }
+}
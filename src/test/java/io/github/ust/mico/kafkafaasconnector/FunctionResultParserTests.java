@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FunctionResultParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FunctionResultParserTests {
+
+    /**
+     * Tests that every cloud event is passed on as soon as its last byte was fed.
+     */
+    @Test
+    public void testEventsArePassedOnIncrementally() throws IOException {
+        List<MicoCloudEventImpl<JsonNode>> input = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEvent("CloudEvent" + i).toBuilder()
+                .data(Json.MAPPER.readTree("{\"nested\": [\"]}\", {\"a\": " + i + "}]}"))
+                .build();
+            input.add(cloudEvent);
+        }
+        byte[] response = Json.encode(input).getBytes(StandardCharsets.UTF_8);
+        String firstEvent = Json.encode(input.get(0));
+        int firstEventEnd = 1 + firstEvent.getBytes(StandardCharsets.UTF_8).length;
+
+        List<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>();
+        FunctionResultParser parser = new FunctionResultParser(Long.MAX_VALUE, Integer.MAX_VALUE, result::add);
+        // feed byte by byte to split every token
+        for (int i = 0; i < response.length; i++) {
+            parser.feed(response, i, 1);
+            if (i == firstEventEnd - 2) {
+                assertThat("The first event is not complete yet", result.size(), is(0));
+            }
+            if (i == firstEventEnd - 1) {
+                assertThat("The first event should be passed on", result.size(), is(1));
+            }
+        }
+        assertThat(parser.finish(), is(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(result.get(i).getId(), is(input.get(i).getId()));
+            assertThat(result.get(i).getData().orElse(null), is(input.get(i).getData().orElse(null)));
+        }
+    }
+
+    /**
+     * Tests that a response with too many cloud events is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testMaxEvents() throws IOException {
+        List<MicoCloudEventImpl<JsonNode>> input = new ArrayList<>();
+        input.add(CloudEventTestUtils.basicCloudEvent("CloudEvent1"));
+        input.add(CloudEventTestUtils.basicCloudEvent("CloudEvent2"));
+        new FunctionResultParser(Long.MAX_VALUE, 1, event -> {
+        }).parse(new ByteArrayInputStream(Json.encode(input).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tests that a response that is too large is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testMaxResponseSize() throws IOException {
+        byte[] response = Json.encode(new MicoCloudEventImpl[]{CloudEventTestUtils.basicCloudEvent("CloudEvent1")}).getBytes(StandardCharsets.UTF_8);
+        new FunctionResultParser(response.length - 1, Integer.MAX_VALUE, event -> {
+        }).parse(new ByteArrayInputStream(response));
+    }
+
+    /**
+     * Tests that a single cloud event instead of an array is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testNoArray() throws IOException {
+        new FunctionResultParser(Long.MAX_VALUE, Integer.MAX_VALUE, event -> {
+        }).parse(new ByteArrayInputStream(Json.encode(CloudEventTestUtils.basicCloudEvent("CloudEvent1")).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tests that a truncated response is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testTruncatedResponse() throws IOException {
+        new FunctionResultParser(Long.MAX_VALUE, Integer.MAX_VALUE, event -> {
+        }).parse(new ByteArrayInputStream("[{\"id\": \"a\"}, {\"id\"".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -21,6 +21,8 @@ package io.github.ust.mico.kafkafaasconnector;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
 import io.github.ust.mico.kafkafaasconnector.messageprocessing.KafkaMessageSender;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,7 +35,13 @@ import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
@@ -46,6 +54,9 @@ public class KafkaMessageSenderTests {
     @Autowired
     KafkaMessageSender kafkaMessageSender;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
     /**
      * We need the embedded Kafka to successfully create the context.
      */
@@ -62,10 +73,11 @@ public class KafkaMessageSenderTests {
      */
     @Test
     public void testFilterOutCheck() {
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         String testFilterTopic = "TestFilterTopic";
-        cloudEventSimple.setFilterOutBeforeTopic(testFilterTopic);
-        cloudEventSimple.setIsTestMessage(true);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .filterOutBeforeTopic(testFilterTopic)
+            .isTestMessage(true)
+            .build();
 
         assertTrue("The message should be filtered out", kafkaMessageSender.isTestMessageCompleted(cloudEventSimple, testFilterTopic));
     }
@@ -75,9 +87,10 @@ public class KafkaMessageSenderTests {
      */
     @Test
     public void testNotFilterOutCheck() {
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         String testFilterTopic = "TestFilterTopic";
-        cloudEventSimple.setFilterOutBeforeTopic(testFilterTopic);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .filterOutBeforeTopic(testFilterTopic)
+            .build();
 
         assertFalse("The message not should be filtered out, because it is not a test message", kafkaMessageSender.isTestMessageCompleted(cloudEventSimple, testFilterTopic));
     }
@@ -87,11 +100,34 @@ public class KafkaMessageSenderTests {
      */
     @Test
     public void testNotFilterOutCheckDifferentTopics() {
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         String testFilterTopic = "TestFilterTopic";
-        cloudEventSimple.setFilterOutBeforeTopic(testFilterTopic);
-        cloudEventSimple.setIsTestMessage(true);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .filterOutBeforeTopic(testFilterTopic)
+            .isTestMessage(true)
+            .build();
 
         assertFalse("The message not should be filtered out, because it has not reached the filter out topic", kafkaMessageSender.isTestMessageCompleted(cloudEventSimple, testFilterTopic + "Difference"));
     }
+
+    /**
+     * Tests that a cloud event that expired before it was sent is dropped.
+     */
+    @Test
+    public void testExpiredCloudEventIsDropped() throws Exception {
+        MicoCloudEventImpl<JsonNode> expiredCloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .expiryDate(ZonedDateTime.now().minusSeconds(1))
+            .build();
+        double droppedBefore = droppedCount();
+
+        CompletableFuture<Void> sent = kafkaMessageSender.safeSendCloudEvents(Collections.singletonList(expiredCloudEvent), expiredCloudEvent.getId());
+
+        assertTrue("The expired cloud event is dropped without waiting for the broker", sent.isDone());
+        sent.get();
+        assertThat(droppedCount(), is(droppedBefore + 1));
+    }
+
+    private double droppedCount() {
+        Counter dropped = meterRegistry.find("mico.connector.events.expired.late").tag("stage", "send").counter();
+        return dropped == null ? 0 : dropped.count();
+    }
 }
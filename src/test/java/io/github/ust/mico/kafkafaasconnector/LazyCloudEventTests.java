@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventSerializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEvent;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LazyCloudEventTests {
+
+    /**
+     * Tests that single fields are decoded from the raw bytes.
+     */
+    @Test
+    public void testReadFields() throws Exception {
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.setPastExpiryDate(
+            CloudEventTestUtils.markAsTestMessage(
+                CloudEventTestUtils.addSingleTopicRoutingStep(CloudEventTestUtils.basicCloudEvent("LazyEvent"), TestConstants.ROUTING_TOPIC_1),
+                TestConstants.ROUTING_TOPIC_2)).toBuilder()
+            .data(Json.MAPPER.readTree("{\"nested\": {\"list\": [1, 2, \"}\"]}, \"text\": \"a \\\" b\"}"))
+            .correlationId("correlation")
+            .build();
+
+        LazyCloudEvent lazyCloudEvent = LazyCloudEvent.parse(Json.encode(cloudEvent).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(lazyCloudEvent.getId(), is("LazyEvent"));
+        assertThat(lazyCloudEvent.getCorrelationId().orElse(null), is("correlation"));
+        assertTrue(lazyCloudEvent.isTestMessage().orElse(false));
+        assertThat(lazyCloudEvent.getFilterOutBeforeTopic().orElse(null), is(TestConstants.ROUTING_TOPIC_2));
+        assertThat(lazyCloudEvent.getRoutingSlip().orElse(null), is(cloudEvent.getRoutingSlip().orElse(null)));
+        assertTrue(lazyCloudEvent.getExpiryDate().get().isEqual(cloudEvent.getExpiryDate().get()));
+        assertFalse(lazyCloudEvent.isErrorMessage().isPresent());
+        assertTrue(lazyCloudEvent.hasField("data"));
+
+        MicoCloudEventImpl<JsonNode> decoded = lazyCloudEvent.toCloudEvent();
+        assertThat(decoded.getData().orElse(null), is(cloudEvent.getData().orElse(null)));
+    }
+
+    /**
+     * Tests that broken messages are rejected during the scan.
+     */
+    @Test(expected = SerializationException.class)
+    public void testBrokenMessageDeserialization() {
+        new LazyCloudEventDeserializer().deserialize("", "{\"id\": \"broken\", \"data\": [}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that empty messages are rejected.
+     */
+    @Test(expected = SerializationException.class)
+    public void testEmptyMessageDeserialization() {
+        new LazyCloudEventDeserializer().deserialize("", new byte[0]);
+    }
+
+    /**
+     * Tests that events written in binary content mode are read from the headers.
+     */
+    @Test
+    public void testBinaryContentMode() throws Exception {
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.setPastExpiryDate(
+            CloudEventTestUtils.addSingleTopicRoutingStep(CloudEventTestUtils.basicCloudEvent("BinaryEvent"), TestConstants.ROUTING_TOPIC_1)).toBuilder()
+            .correlationId("correlation")
+            .extension("customKey", Json.MAPPER.convertValue("[not json", JsonNode.class))
+            .build();
+
+        CloudEventSerializer serializer = new CloudEventSerializer();
+        serializer.configure(Collections.singletonMap(CloudEventSerializer.CONTENT_MODE_CONFIG, "binary"), false);
+        Headers headers = new RecordHeaders();
+        byte[] value = serializer.serialize("", headers, cloudEvent);
+        assertThat(Json.MAPPER.readTree(value), is(cloudEvent.getData().orElse(null)));
+
+        LazyCloudEvent lazyCloudEvent = new LazyCloudEventDeserializer().deserialize("", headers, value);
+        assertTrue(lazyCloudEvent.isBinary());
+        assertThat(lazyCloudEvent.getId(), is("BinaryEvent"));
+        assertThat(lazyCloudEvent.getCorrelationId().orElse(null), is("correlation"));
+        assertThat(lazyCloudEvent.getRoutingSlip().orElse(null), is(cloudEvent.getRoutingSlip().orElse(null)));
+        assertTrue(lazyCloudEvent.getExpiryDate().get().isEqual(cloudEvent.getExpiryDate().get()));
+
+        MicoCloudEventImpl<JsonNode> decoded = new CloudEventDeserializer().deserialize("", headers, value);
+        assertThat(decoded.getData().orElse(null), is(cloudEvent.getData().orElse(null)));
+        assertThat(decoded.getRoutingSlip().orElse(null), is(cloudEvent.getRoutingSlip().orElse(null)));
+        assertThat(decoded.getExtensionsForSerializer().get("customKey").textValue(), is("[not json"));
+    }
+
+    /**
+     * Tests that a cloud event made by the builder without a spec version gets the default one
+     * and round-trips in binary content mode.
+     */
+    @Test
+    public void testBuiltErrorEventInBinaryContentMode() {
+        MicoCloudEventImpl<JsonNode> errorEvent = new MicoCloudEventException("Simulated error", CloudEventTestUtils.basicCloudEvent("BinaryError")).getErrorEvent();
+        assertThat(errorEvent.getSpecVersion(), is("0.2"));
+
+        CloudEventSerializer serializer = new CloudEventSerializer();
+        serializer.configure(Collections.singletonMap(CloudEventSerializer.CONTENT_MODE_CONFIG, "binary"), false);
+        Headers headers = new RecordHeaders();
+        byte[] value = serializer.serialize("", headers, errorEvent);
+
+        LazyCloudEvent lazyCloudEvent = new LazyCloudEventDeserializer().deserialize("", headers, value);
+        assertTrue("The spec version header marks the binary content mode", lazyCloudEvent.isBinary());
+        assertTrue(lazyCloudEvent.isErrorMessage().orElse(false));
+
+        MicoCloudEventImpl<JsonNode> decoded = new CloudEventDeserializer().deserialize("", headers, value);
+        assertThat(decoded.getSpecVersion(), is("0.2"));
+        assertThat(decoded.getId(), is(errorEvent.getId()));
+    }
+}
@@ -30,6 +30,7 @@ import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
 import io.github.ust.mico.kafkafaasconnector.exception.MicoCloudEventException;
 import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
 import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
 import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
@@ -106,8 +107,9 @@ public class MessageListenerTests {
 
     @Test
     public void testCloudEventWithCustomHeaders() throws IllegalStateException {
-        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEvent("CloudEventHeaderTest");
-        cloudEvent.setExtension("customKey", Json.MAPPER.convertValue("customValue", JsonNode.class));
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEvent("CloudEventHeaderTest").toBuilder()
+            .extension("customKey", Json.MAPPER.convertValue("customValue", JsonNode.class))
+            .build();
         String encoded = Json.encode(cloudEvent);
         MicoCloudEventImpl<JsonNode> parsed = Json.decodeValue(encoded, new TypeReference<MicoCloudEventImpl<JsonNode>>() { });
         assertNotNull(parsed);
@@ -190,7 +192,7 @@ public class MessageListenerTests {
             assertNotEquals("There was a message on the error topic!", this.kafkaConfig.getInvalidMessageTopic(), record.topic());
             assertNotNull(record.value());
             if (!record.topic().equals(kafkaConfig.getInputTopic())) {
-                List<RouteHistory> history = record.value().getRoute().orElse(new ArrayList<>());
+                List<RouteHistory> history = record.value().getRoute().orElse(PersistentList.empty());
                 assertTrue("Route history was not set/empty.", history.size() > 0);
                 RouteHistory lastStep = history.get(history.size() - 1);
                 assertEquals("Route history step has wrong type (should be 'topic')", "topic", lastStep.getType().orElse(""));
@@ -232,9 +234,10 @@ public class MessageListenerTests {
     public void testFilterTestMessages() {
         Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getTestMessageOutputTopic(), kafkaConfig.getOutputTopic());
 
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
-        cloudEventSimple.setIsTestMessage(true);
-        cloudEventSimple.setFilterOutBeforeTopic(kafkaConfig.getOutputTopic());
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .isTestMessage(true)
+            .filterOutBeforeTopic(kafkaConfig.getOutputTopic())
+            .build();
 
         ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> eventFilteredTestMessageTopic = this.micoKafkaTestHelper.exchangeMessage(consumer, kafkaConfig.getTestMessageOutputTopic(), cloudEventSimple);
 
@@ -255,8 +258,9 @@ public class MessageListenerTests {
     public void addMissingHeaderField() {
         Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
 
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEvent("");
-        cloudEventSimple.setTime(null);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEvent("").toBuilder()
+            .time(null)
+            .build();
 
         ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> eventWithTimeAndId = this.micoKafkaTestHelper.exchangeMessage(consumer, kafkaConfig.getOutputTopic(), cloudEventSimple);
 
@@ -276,9 +280,10 @@ public class MessageListenerTests {
     public void subjectHeader() {
         Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
 
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         final String testSubject = "TestSubject";
-        cloudEventSimple.setSubject(testSubject);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .subject(testSubject)
+            .build();
 
         ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> eventWithTimeAndId = this.micoKafkaTestHelper.exchangeMessage(consumer, kafkaConfig.getOutputTopic(), cloudEventSimple);
 
@@ -315,9 +320,10 @@ public class MessageListenerTests {
     public void testCorrelationIdUnChanged() {
         Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
 
-        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId();
         String testCorrelationId = "testCorrelationId";
-        cloudEventSimple.setCorrelationId(testCorrelationId);
+        MicoCloudEventImpl<JsonNode> cloudEventSimple = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .correlationId(testCorrelationId)
+            .build();
 
         ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> eventWithCorrelationId = this.micoKafkaTestHelper.exchangeMessage(consumer, kafkaConfig.getOutputTopic(), cloudEventSimple);
         MicoCloudEventImpl<JsonNode> cloudEvent = eventWithCorrelationId.value();
@@ -26,7 +26,9 @@ import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
@@ -38,6 +40,9 @@ import org.springframework.kafka.test.utils.KafkaTestUtils;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
 
 import static io.github.ust.mico.kafkafaasconnector.TestConstants.DEFAULT_KAFKA_POLL_TIMEOUT;
 
@@ -77,6 +82,28 @@ public class MicoKafkaTestHelper {
      * @return
      */
     public Consumer<String, MicoCloudEventImpl<JsonNode>> getKafkaConsumer() {
+        DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>> cf = new DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>>(getConsumerProps());
+        return cf.createConsumer();
+    }
+
+    /**
+     * Generates a consumer based on the given topics that only reads the messages of committed transactions.
+     * The other consumers also read the messages of aborted transactions.
+     * <p>
+     * The consumer needs to be unsubscribed after the test is finished.
+     *
+     * @return
+     */
+    public Consumer<String, MicoCloudEventImpl<JsonNode>> getReadCommittedKafkaConsumer(String... topics) {
+        Map<String, Object> consumerProps = getConsumerProps();
+        consumerProps.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>> cf = new DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>>(consumerProps);
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = cf.createConsumer();
+        embeddedKafka.consumeFromEmbeddedTopics(consumer, topics);
+        return consumer;
+    }
+
+    private Map<String, Object> getConsumerProps() {
         Map<String, Object> consumerProps = org.springframework.kafka.test.utils.KafkaTestUtils.consumerProps("testT", "false", embeddedKafka);
         consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
             ErrorHandlingDeserializer2.class);
@@ -86,8 +113,7 @@ public class MicoKafkaTestHelper {
             ErrorHandlingDeserializer2.class);
         consumerProps.put(ErrorHandlingDeserializer2.VALUE_DESERIALIZER_CLASS,
             CloudEventDeserializer.class);
-        DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>> cf = new DefaultKafkaConsumerFactory<String, MicoCloudEventImpl<JsonNode>>(consumerProps);
-        return cf.createConsumer();
+        return consumerProps;
     }
 
 
@@ -172,6 +198,68 @@ public class MicoKafkaTestHelper {
         return KafkaTestUtils.getSingleRecord(consumer, topic, DEFAULT_KAFKA_POLL_TIMEOUT);
     }
 
+    /**
+     * Sends cloud events with random ids to the default input topic.
+     *
+     * @param count the number of cloud events
+     * @param key   the kafka key of the cloud event with the given index
+     * @return the ids of the sent cloud events in the order they were sent
+     */
+    public List<String> sendCloudEvents(int count, IntFunction<String> key) {
+        return sendCloudEvents(count, key, UnaryOperator.identity());
+    }
+
+    /**
+     * Sends cloud events with random ids to the default input topic.
+     *
+     * @param count   the number of cloud events
+     * @param key     the kafka key of the cloud event with the given index
+     * @param prepare adds e.g. routing steps to each cloud event before it is sent
+     * @return the ids of the sent cloud events in the order they were sent
+     */
+    public List<String> sendCloudEvents(int count, IntFunction<String> key, UnaryOperator<MicoCloudEventImpl<JsonNode>> prepare) {
+        List<String> sentIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MicoCloudEventImpl<JsonNode> cloudEvent = prepare.apply(CloudEventTestUtils.basicCloudEventWithRandomId());
+            sentIds.add(cloudEvent.getId());
+            template.send(kafkaConfig.getInputTopic(), key.apply(i), cloudEvent);
+        }
+        return sentIds;
+    }
+
+    /**
+     * Get the committed offset of a consumer group for the partition.
+     *
+     * @param groupId   the consumer group
+     * @param partition the partition
+     * @return the committed offset or {@code 0} if nothing was committed
+     */
+    public long getCommittedOffset(String groupId, TopicPartition partition) {
+        AtomicLong offset = new AtomicLong();
+        embeddedKafka.doWithAdmin(admin -> {
+            try {
+                OffsetAndMetadata committed = admin.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata().get().get(partition);
+                offset.set(committed == null ? 0 : committed.offset());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Failed to get the committed offsets.", e);
+            }
+        });
+        return offset.get();
+    }
+
+    /**
+     * Get the ids of the consumed messages in the order they were consumed.
+     *
+     * @param records the consumed messages
+     * @return the ids of the cloud events
+     */
+    public static List<String> getIds(List<ConsumerRecord<String, MicoCloudEventImpl<JsonNode>>> records) {
+        List<String> ids = new ArrayList<>(records.size());
+        records.forEach(record -> ids.add(record.value().getId()));
+        return ids;
+    }
+
     /**
      * Consumes all messages send during the test execution
      *
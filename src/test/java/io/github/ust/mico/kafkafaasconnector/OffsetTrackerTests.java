@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.kafka.OffsetTracker;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KeyOrderedExecutor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OffsetTrackerTests {
+
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null, null);
+    }
+
+    /**
+     * Tests that offsets are only committed up to the first gap.
+     */
+    @Test
+    public void testCommitStopsAtGap() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        for (long offset = 0; offset < 4; offset++) {
+            offsetTracker.register(record(offset));
+        }
+        offsetTracker.complete(record(0));
+        offsetTracker.complete(record(2));
+        offsetTracker.complete(record(3));
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.getCommittableOffsets(Collections.singleton(PARTITION));
+        assertThat("Offset 1 is still pending", offsets.get(PARTITION).offset(), is(1L));
+        assertThat(offsetTracker.getPendingRecords(), is(1));
+
+        offsetTracker.complete(record(1));
+        offsets = offsetTracker.getCommittableOffsets(Collections.singleton(PARTITION));
+        assertThat("All records are completed", offsets.get(PARTITION).offset(), is(4L));
+        assertThat(offsetTracker.getPendingRecords(), is(0));
+    }
+
+    /**
+     * Tests that an offset is only returned once.
+     */
+    @Test
+    public void testNoCommitWithoutProgress() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        offsetTracker.register(record(5));
+        offsetTracker.complete(record(5));
+        assertThat(offsetTracker.getCommittableOffsets(Collections.singleton(PARTITION)).size(), is(1));
+        assertTrue(offsetTracker.getCommittableOffsets(Collections.singleton(PARTITION)).isEmpty());
+    }
+
+    /**
+     * Tests that tasks with the same key are executed in order.
+     */
+    @Test
+    public void testKeyOrderedExecution() {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(Executors.newFixedThreadPool(4));
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int number = i;
+            tasks.add(executor.submit("key", () -> {
+                executed.add(number);
+                return CompletableFuture.completedFuture(null);
+            }));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(i);
+        }
+        assertThat(executed, contains(expected.toArray()));
+        assertThat(executor.getPendingKeys(), is(0));
+    }
+}
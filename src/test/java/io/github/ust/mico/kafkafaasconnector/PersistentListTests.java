@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.kafka.PersistentList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class PersistentListTests {
+
+    /**
+     * Tests that appending and removing the last element returns new lists and keeps the original.
+     */
+    @Test
+    public void testAppendAndRemoveLast() {
+        PersistentList<String> list = PersistentList.of("a", "b");
+        PersistentList<String> appended = list.append("c");
+        PersistentList<String> removed = list.removeLast();
+
+        assertThat(list, contains("a", "b"));
+        assertThat(appended, contains("a", "b", "c"));
+        assertThat(removed, contains("a"));
+        assertThat(appended.getLast(), is("c"));
+        assertThat(appended.get(1), is("b"));
+        assertThat(removed.removeLast().isEmpty(), is(true));
+    }
+
+    /**
+     * Tests that the list is equal to other lists with the same elements.
+     */
+    @Test
+    public void testEqualsOtherLists() {
+        PersistentList<String> list = PersistentList.copyOf(Arrays.asList("a", "b", "c"));
+        assertEquals(Arrays.asList("a", "b", "c"), list);
+        assertEquals(list, Arrays.asList("a", "b", "c"));
+        assertEquals(Arrays.asList("a", "b", "c").hashCode(), list.hashCode());
+    }
+
+    /**
+     * Tests that the list can not be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        Iterator<String> iterator = PersistentList.of("a").iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * End-to-end load test of the whole pipeline with an embedded Kafka broker and a stub FaaS gateway.
+ * <p>
+ * Events are produced to the input topic at a fixed rate and consumed from the output topic.
+ * The test reports the throughput, the consumer lag of the connector and the end-to-end latency
+ * percentiles and writes them as JSON to {@code loadtest.report}. It is not part of the regular
+ * build, run it with {@code mvn -P loadtest test}. The load is configured with system properties:
+ * <ul>
+ * <li>{@code loadtest.rate}: events per second (default 1000)</li>
+ * <li>{@code loadtest.duration}: seconds to produce events (default 30)</li>
+ * <li>{@code loadtest.latency}: latency of the function, see {@link StubFaasGateway#parseLatency(String)} (default exponential:10)</li>
+ * <li>{@code loadtest.error-rate}: share of failing function calls (default 0.01)</li>
+ * <li>{@code loadtest.fan-out}: cloud events returned per function call (default 1)</li>
+ * <li>{@code loadtest.payload-size}: size of the event data in bytes (default 1024)</li>
+ * <li>{@code loadtest.partitions}: partitions per topic (default 8)</li>
+ * <li>{@code loadtest.min-throughput}: fails the test below this output rate in events per second (default 0)</li>
+ * </ul>
+ * The connector itself is configured with its usual properties, e.g. {@code -Dkafka.processing-order=unordered}.
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=load-test",
+    "logging.level.io.github.ust.mico.kafkafaasconnector=INFO"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class PipelineLoadTest {
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 1000);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 30);
+    private static final String LATENCY = System.getProperty("loadtest.latency", "exponential:10");
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.error-rate", "0.01"));
+    private static final int FAN_OUT = Integer.getInteger("loadtest.fan-out", 1);
+    private static final int PAYLOAD_SIZE = Integer.getInteger("loadtest.payload-size", 1024);
+    private static final int PARTITIONS = Integer.getInteger("loadtest.partitions", 8);
+    private static final double MIN_THROUGHPUT = Double.parseDouble(System.getProperty("loadtest.min-throughput", "0"));
+    private static final String REPORT = System.getProperty("loadtest.report", "target/load-test-report.json");
+
+    /**
+     * The time to wait for outstanding results after the last event was produced.
+     */
+    private static final long DRAIN_TIMEOUT_MS = 60_000;
+
+    private static final long LAG_SAMPLE_INTERVAL_MS = 500;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false, PARTITIONS,
+        "Input", "Output", "InvalidMessage", "DeadLetter", "TestMessagesOutput");
+
+    private static final StubFaasGateway gateway = new StubFaasGateway(LATENCY, ERROR_RATE, FAN_OUT, 500);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    /**
+     * End-to-end latency in microseconds.
+     */
+    private final Histogram latencies = new Histogram(TimeUnit.MINUTES.toMicros(10), 3);
+
+    private final AtomicLong maxLag = new AtomicLong();
+
+    @Test
+    public void loadTest() throws Exception {
+        MicoKafkaTestHelper micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+        KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template = micoKafkaTestHelper.getTemplate();
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = micoKafkaTestHelper.getKafkaConsumer(
+            kafkaConfig.getOutputTopic(), kafkaConfig.getInvalidMessageTopic());
+        Consumer<String, MicoCloudEventImpl<JsonNode>> offsetConsumer = micoKafkaTestHelper.getKafkaConsumer();
+        AdminClient admin = AdminClient.create(Collections.singletonMap(
+            AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafka.getBrokersAsString()));
+        ScheduledExecutorService lagSampler = Executors.newSingleThreadScheduledExecutor();
+        lagSampler.scheduleAtFixedRate(() -> sampleLag(admin, offsetConsumer), LAG_SAMPLE_INTERVAL_MS, LAG_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        long total = (long) RATE * DURATION_SECONDS;
+        ResultCounter results = new ResultCounter();
+        Thread producer = new Thread(() -> produce(template, total), "load-test-producer");
+        long start = System.nanoTime();
+        producer.start();
+
+        long lastProgress = System.currentTimeMillis();
+        while (results.completed() < total * FAN_OUT && System.currentTimeMillis() - lastProgress < DRAIN_TIMEOUT_MS) {
+            int received = 0;
+            for (ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> record : KafkaTestUtils.getRecords(consumer, 100)) {
+                results.add(record);
+                received++;
+            }
+            if (received > 0) {
+                lastProgress = System.currentTimeMillis();
+            }
+        }
+        long elapsedNanos = results.lastResultNanos - start;
+        producer.join();
+        lagSampler.shutdownNow();
+        admin.close();
+        offsetConsumer.close();
+        MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+
+        Map<String, Object> report = report(total, results, elapsedNanos);
+        log.info("Load test report: {}", report);
+        File reportFile = new File(REPORT);
+        if (reportFile.getParentFile() != null) {
+            reportFile.getParentFile().mkdirs();
+        }
+        Json.MAPPER.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+
+        assertThat("Every event should result in output or error messages", results.completed(), is(total * FAN_OUT));
+        assertThat("The throughput should not regress", (Double) report.get("outputEventsPerSecond"), greaterThanOrEqualTo(MIN_THROUGHPUT));
+    }
+
+    /**
+     * Produce the events at the configured rate.
+     */
+    private void produce(KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template, long total) {
+        StringBuilder payload = new StringBuilder(PAYLOAD_SIZE);
+        while (payload.length() < PAYLOAD_SIZE) {
+            payload.append('x');
+        }
+        String text = payload.toString();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long wait = start + i * intervalNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ObjectNode data = JsonNodeFactory.instance.objectNode()
+                .put("sentAt", System.nanoTime())
+                .put("payload", text);
+            MicoCloudEventImpl<JsonNode> cloudEvent = MicoCloudEventImpl.<JsonNode>builder()
+                .randomId()
+                .source(URI.create("http://example.com/load-test"))
+                .type("LoadTestMessage")
+                .time(ZonedDateTime.now())
+                .data(data)
+                .build();
+            template.send(kafkaConfig.getInputTopic(), cloudEvent.getId(), cloudEvent);
+        }
+        template.flush();
+    }
+
+    /**
+     * Record the maximum lag of the connector consumer group on the input topic.
+     */
+    private void sampleLag(AdminClient admin, Consumer<?, ?> offsetConsumer) {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(kafkaConfig.getGroupId())
+                .partitionsToOffsetAndMetadata().get();
+            Set<TopicPartition> partitions = offsetConsumer.partitionsFor(kafkaConfig.getInputTopic()).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .collect(Collectors.toSet());
+            long lag = 0;
+            for (Map.Entry<TopicPartition, Long> end : offsetConsumer.endOffsets(partitions).entrySet()) {
+                OffsetAndMetadata offset = committed.get(end.getKey());
+                lag += end.getValue() - (offset == null ? 0 : offset.offset());
+            }
+            maxLag.accumulateAndGet(lag, Math::max);
+        } catch (Exception e) {
+            log.warn("Failed to sample the consumer lag. Caused by: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Object> report(long total, ResultCounter results, long elapsedNanos) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetEventsPerSecond", RATE);
+        report.put("durationSeconds", DURATION_SECONDS);
+        report.put("latency", LATENCY);
+        report.put("errorRate", ERROR_RATE);
+        report.put("fanOut", FAN_OUT);
+        report.put("payloadSize", PAYLOAD_SIZE);
+        report.put("partitions", PARTITIONS);
+        report.put("inputEvents", total);
+        report.put("outputEvents", results.outputs);
+        report.put("errorEvents", results.errors);
+        report.put("functionCalls", gateway.getCalls());
+        report.put("failedFunctionCalls", gateway.getFailedCalls());
+        report.put("elapsedSeconds", seconds);
+        report.put("inputEventsPerSecond", total / seconds);
+        report.put("outputEventsPerSecond", results.outputs / seconds);
+        report.put("maxConsumerLag", maxLag.get());
+        report.put("latencyMillisP50", latencies.getValueAtPercentile(50) / 1000.0);
+        report.put("latencyMillisP99", latencies.getValueAtPercentile(99) / 1000.0);
+        report.put("latencyMillisP999", latencies.getValueAtPercentile(99.9) / 1000.0);
+        report.put("latencyMillisMax", latencies.getMaxValue() / 1000.0);
+        return report;
+    }
+
+    /**
+     * Counts the output and error messages and records the latency of the output messages.
+     */
+    private class ResultCounter {
+
+        private long outputs;
+
+        private long errors;
+
+        private long lastResultNanos = System.nanoTime();
+
+        void add(ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> record) {
+            lastResultNanos = System.nanoTime();
+            if (record.topic().equals(kafkaConfig.getInvalidMessageTopic())) {
+                errors++;
+                return;
+            }
+            outputs++;
+            record.value().getData()
+                .map(data -> data.get("sentAt"))
+                .ifPresent(sentAt -> latencies.recordValue(
+                    Math.max(0, TimeUnit.NANOSECONDS.toMicros(lastResultNanos - sentAt.asLong()))));
+        }
+
+        /**
+         * Get the number of results, counting an error message for each cloud event the failed call would have returned.
+         */
+        long completed() {
+            return outputs + errors * FAN_OUT;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.configuration.OpenFaaSConfig;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.FaasController;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+    "openfaas.skip-function-call=false",
+    "openfaas.function-name=pooled-function"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class PooledHttpClientTests {
+
+    private static final int CALLS = 10;
+
+    private static final EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false);
+
+    private static final StubFaasGateway gateway = new StubFaasGateway("constant:0", 0, 1, 4);
+
+    @ClassRule
+    public static TestRule rules = RuleChain.outerRule(broker).around(gateway);
+
+    @Autowired
+    private FaasController faasController;
+
+    @Autowired
+    private OpenFaaSConfig openFaaSConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Tests that consecutive blocking calls reuse a kept-alive connection of the pool.
+     */
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        double openedBefore = openedConnections();
+        long leasesBefore = meterRegistry.get("mico.connector.faas.http.pool.lease").timer().count();
+
+        for (int i = 0; i < CALLS; i++) {
+            assertThat(faasController.callFaasFunction(CloudEventTestUtils.basicCloudEventWithRandomId()).size(), is(1));
+        }
+
+        assertThat(openedConnections() - openedBefore, is(lessThanOrEqualTo(1.0)));
+        assertThat(meterRegistry.get("mico.connector.faas.http.pool.lease").timer().count(), is(leasesBefore + CALLS));
+    }
+
+    /**
+     * Tests that the function url is only resolved once.
+     */
+    @Test
+    public void testFunctionUrlIsResolvedOnce() throws Exception {
+        assertThat(openFaaSConfig.getFunctionUrl(), is(sameInstance(openFaaSConfig.getFunctionUrl())));
+    }
+
+    private double openedConnections() {
+        return meterRegistry.get("mico.connector.faas.http.connections.opened").counter().count();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHedgerTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Tests that calls are only hedged after a tenth of the window and then after the percentile of the round-trip times.
+     */
+    @Test
+    public void testDelayIsPercentileOfRoundTripTimes() {
+        RequestHedger hedger = new RequestHedger(0.95, 0.05, 100, meterRegistry);
+        for (int i = 1; i < 10; i++) {
+            hedger.onRoundTrip(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat("No delay should be known before a tenth of the window", hedger.getDelayNanos(), is(-1L));
+        for (int i = 10; i <= 100; i++) {
+            hedger.onRoundTrip(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(hedger.getDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(95)));
+
+        for (int i = 0; i < 100; i++) {
+            hedger.onRoundTrip(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertThat("Old round-trip times should leave the window", hedger.getDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+    /**
+     * Tests that at most the budget share of the calls is hedged.
+     */
+    @Test
+    public void testBudgetLimitsHedges() {
+        RequestHedger hedger = new RequestHedger(0.95, 0.05, 100, meterRegistry);
+        assertFalse("No hedge should be possible without calls", hedger.tryAcquire());
+        for (int i = 0; i < 40; i++) {
+            hedger.onCall();
+        }
+        assertTrue(hedger.tryAcquire());
+        assertTrue(hedger.tryAcquire());
+        assertFalse("40 calls should earn two hedges", hedger.tryAcquire());
+
+        hedger.refund();
+        assertTrue("A refunded hedge should be available again", hedger.tryAcquire());
+        assertThat(meterRegistry.get("mico.connector.faas.hedges.rejected").counter().count(), is(3.0));
+    }
+
+    /**
+     * Tests that unused hedges are only saved up to a limit.
+     */
+    @Test
+    public void testSavedHedgesAreCapped() {
+        RequestHedger hedger = new RequestHedger(0.95, 0.5, 100, meterRegistry);
+        for (int i = 0; i < 1000; i++) {
+            hedger.onCall();
+        }
+        int hedges = 0;
+        while (hedger.tryAcquire()) {
+            hedges++;
+        }
+        assertThat(hedges, is(10));
+    }
+}
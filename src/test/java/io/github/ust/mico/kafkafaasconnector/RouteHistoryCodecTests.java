@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.kafka.BinaryCloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventSerializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEvent;
+import io.github.ust.mico.kafkafaasconnector.kafka.LazyCloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistoryCodec;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RouteHistoryCodecTests {
+
+    private static final String TOPIC = "topic";
+
+    /**
+     * Tests that the compact encoding is read back with the types and the timestamps in milliseconds.
+     */
+    @Test
+    public void testCompactRoundTrip() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventWithRoute(3);
+        byte[] bytes = serializer("compact", false).serialize(TOPIC, new RecordHeaders(), cloudEvent);
+
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        long firstTimestamp = cloudEvent.getRoute().get().get(0).getTimestamp().get().toInstant().toEpochMilli();
+        assertThat(json, containsString("[\"t\",\"topic-0\"," + firstTimestamp + "]"));
+        assertThat(json, containsString("[\"f\",\"function-1\","));
+
+        MicoCloudEventImpl<JsonNode> received = new CloudEventDeserializer().deserialize(TOPIC, bytes);
+        assertRouteEquals(received.getRoute().get(), cloudEvent.getRoute().get());
+    }
+
+    /**
+     * Tests that the verbose encoding is still read and the known types are shared constants.
+     */
+    @Test
+    public void testVerboseRouteIsRead() {
+        String route = "[{\"type\":\"faas-function\",\"id\":\"function\",\"timestamp\":\"2019-10-16T10:00:00.123Z\"},"
+            + "[\"t\",\"topic\",1571220000123]]";
+        List<RouteHistory> decoded = RouteHistoryCodec.decodeRoute(route.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(decoded.size(), is(2));
+        assertThat(decoded.get(0).getType().get(), is(sameInstance(RouteHistory.TYPE_FAAS_FUNCTION)));
+        assertThat(decoded.get(0).getTimestamp().get().toInstant().toEpochMilli(), is(1571220000123L));
+        assertThat(decoded.get(1).getType().get(), is(sameInstance(RouteHistory.TYPE_TOPIC)));
+        assertThat(decoded.get(1).getTimestamp().get().toInstant(), is(decoded.get(0).getTimestamp().get().toInstant()));
+    }
+
+    /**
+     * Tests that the route history can be moved from the record value to a header and is merged back when reading.
+     */
+    @Test
+    public void testRouteHistoryHeader() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventWithRoute(3);
+        Headers headers = new RecordHeaders();
+        byte[] bytes = serializer("compact", true).serialize(TOPIC, headers, cloudEvent);
+
+        assertThat(headers.lastHeader(BinaryCloudEventCodec.ROUTE_HEADER), is(notNullValue()));
+        assertThat(new String(bytes, StandardCharsets.UTF_8), not(containsString("topic-0")));
+
+        LazyCloudEvent lazyCloudEvent = new LazyCloudEventDeserializer().deserialize(TOPIC, headers, bytes);
+        assertTrue(lazyCloudEvent.hasField(LazyCloudEvent.FIELD_ROUTE));
+        assertRouteEquals(lazyCloudEvent.toCloudEvent().getRoute().get(), cloudEvent.getRoute().get());
+        assertRouteEquals(new CloudEventDeserializer().deserialize(TOPIC, headers, bytes).getRoute().get(), cloudEvent.getRoute().get());
+    }
+
+    /**
+     * Tests that the compact encoding of a long route history is considerably smaller.
+     */
+    @Test
+    public void testCompactEncodingIsSmaller() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = cloudEventWithRoute(100);
+        int verboseSize = serializer("verbose", false).serialize(TOPIC, new RecordHeaders(), cloudEvent).length;
+        int compactSize = serializer("compact", false).serialize(TOPIC, new RecordHeaders(), cloudEvent).length;
+        assertThat(compactSize, is(lessThan(verboseSize / 2)));
+    }
+
+    private static CloudEventSerializer serializer(String format, boolean routeHistoryHeader) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(CloudEventSerializer.ROUTE_HISTORY_FORMAT_CONFIG, format);
+        configs.put(CloudEventSerializer.ROUTE_HISTORY_HEADER_CONFIG, routeHistoryHeader);
+        CloudEventSerializer serializer = new CloudEventSerializer();
+        serializer.configure(configs, false);
+        return serializer;
+    }
+
+    private static MicoCloudEventImpl<JsonNode> cloudEventWithRoute(int steps) {
+        MicoCloudEventImpl.Builder<JsonNode> builder = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder();
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 0; i < steps; i++) {
+            builder.addRoute(i % 2 == 0
+                ? new RouteHistory(RouteHistory.TYPE_TOPIC, "topic-" + i, now.plusNanos(i * 1000))
+                : new RouteHistory(RouteHistory.TYPE_FAAS_FUNCTION, "function-" + i, now.plusNanos(i * 1000)));
+        }
+        return builder.build();
+    }
+
+    private static void assertRouteEquals(List<RouteHistory> actual, List<RouteHistory> expected) {
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getType(), is(expected.get(i).getType()));
+            assertThat(actual.get(i).getId(), is(expected.get(i).getId()));
+            assertThat(actual.get(i).getTimestamp().get().toInstant().toEpochMilli(),
+                is(expected.get(i).getTimestamp().get().toInstant().toEpochMilli()));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventDeserializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventSerializer;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.kafka.RouteHistory;
+import io.github.ust.mico.kafkafaasconnector.kafka.SharedEncoding;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SharedEncodingTests {
+
+    private static final String TOPIC = "topic";
+
+    /**
+     * Tests that copies sharing the encoding are serialized like copies without it in every content mode.
+     */
+    @Test
+    public void testSharedEncodingIsEquivalent() {
+        for (String contentMode : new String[]{"structured", "binary"}) {
+            for (String format : new String[]{"verbose", "compact"}) {
+                for (boolean routeHistoryHeader : new boolean[]{false, true}) {
+                    CloudEventSerializer serializer = serializer(contentMode, format, routeHistoryHeader);
+                    MicoCloudEventImpl<JsonNode> shared = sharedCloudEvent();
+                    for (String topic : new String[]{"topic-a", "topic-b"}) {
+                        MicoCloudEventImpl<JsonNode> copy = shared.toBuilder()
+                            .addRoute(new RouteHistory(RouteHistory.TYPE_TOPIC, topic, ZonedDateTime.now()))
+                            .build();
+                        MicoCloudEventImpl<JsonNode> received = roundTrip(serializer, copy);
+                        MicoCloudEventImpl<JsonNode> expected = roundTrip(serializer, copy.toBuilder().sharedEncoding(null).build());
+                        assertThat(received, is(expected));
+                        assertThat(received.getRoute().get().getLast().getId().get(), is(topic));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a copy with other data does not use the shared encoding.
+     */
+    @Test
+    public void testChangedCopyIsNotShared() {
+        MicoCloudEventImpl<JsonNode> shared = sharedCloudEvent();
+        MicoCloudEventImpl<JsonNode> changed = shared.toBuilder()
+            .data(JsonNodeFactory.instance.objectNode().put("value", "changed"))
+            .build();
+
+        MicoCloudEventImpl<JsonNode> received = roundTrip(serializer("structured", "verbose", false), changed);
+
+        assertThat(received.getData().get().get("value").asText(), is("changed"));
+    }
+
+    /**
+     * Tests that the shared parts are only encoded once.
+     */
+    @Test
+    public void testBodyIsEncodedOnce() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .data(JsonNodeFactory.instance.objectNode().put("value", 42))
+            .build();
+        SharedEncoding sharedEncoding = new SharedEncoding(cloudEvent);
+        MicoCloudEventImpl<JsonNode> copy = cloudEvent.toBuilder()
+            .addRoute(new RouteHistory(RouteHistory.TYPE_TOPIC, TOPIC, ZonedDateTime.now()))
+            .build();
+
+        assertTrue(sharedEncoding.isEncodingOf(copy));
+        assertFalse(sharedEncoding.isEncodingOf(copy.toBuilder().randomId().build()));
+        assertThat(sharedEncoding.getBodyWithoutRoute(Json.MAPPER), is(sameInstance(sharedEncoding.getBodyWithoutRoute(Json.MAPPER))));
+        assertThat(sharedEncoding.getData(), is(sameInstance(sharedEncoding.getData())));
+    }
+
+    private static MicoCloudEventImpl<JsonNode> sharedCloudEvent() {
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId().toBuilder()
+            .correlationId("correlation")
+            .data(JsonNodeFactory.instance.objectNode().put("value", "shared"))
+            .addRoute(new RouteHistory(RouteHistory.TYPE_FAAS_FUNCTION, "function", ZonedDateTime.now()))
+            .build();
+        return cloudEvent.toBuilder().sharedEncoding(new SharedEncoding(cloudEvent)).build();
+    }
+
+    private static MicoCloudEventImpl<JsonNode> roundTrip(CloudEventSerializer serializer, MicoCloudEventImpl<JsonNode> cloudEvent) {
+        Headers headers = new RecordHeaders();
+        byte[] bytes = serializer.serialize(TOPIC, headers, cloudEvent);
+        return new CloudEventDeserializer().deserialize(TOPIC, headers, bytes);
+    }
+
+    private static CloudEventSerializer serializer(String contentMode, String format, boolean routeHistoryHeader) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(CloudEventSerializer.CONTENT_MODE_CONFIG, contentMode);
+        configs.put(CloudEventSerializer.ROUTE_HISTORY_FORMAT_CONFIG, format);
+        configs.put(CloudEventSerializer.ROUTE_HISTORY_HEADER_CONFIG, routeHistoryHeader);
+        CloudEventSerializer serializer = new CloudEventSerializer();
+        serializer.configure(configs, false);
+        return serializer;
+    }
+}
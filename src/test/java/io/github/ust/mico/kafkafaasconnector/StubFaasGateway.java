@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.cloudevents.json.Json;
+import io.github.ust.mico.kafkafaasconnector.kafka.CloudEventCodec;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.rules.ExternalResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A local stand-in for the OpenFaaS gateway.
+ * <p>
+ * Every function returns {@code fanOut} copies (with new ids) of the received cloud event after
+ * a delay drawn from the latency distribution. A share of the calls given by the error rate
+ * fails with http status 500. A JSON array of cloud events is answered with one result array per
+ * cloud event (the batch protocol). The rule sets the system property {@code openfaas.gateway},
+ * so it has to run before the application context is created.
+ */
+@Slf4j
+public class StubFaasGateway extends ExternalResource {
+
+    private static final JavaType BATCH_TYPE = Json.MAPPER.getTypeFactory().constructCollectionType(List.class, CloudEventCodec.CLOUD_EVENT_TYPE);
+
+    private final LongSupplier latencyMicros;
+
+    private final double errorRate;
+
+    private final int fanOut;
+
+    private final int threads;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failedCalls = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param latency   the latency distribution in milliseconds, see {@link #parseLatency(String)}
+     * @param errorRate the share of calls that fail (0 to 1)
+     * @param fanOut    the number of cloud events returned per call
+     * @param threads   the number of calls that are handled concurrently
+     */
+    public StubFaasGateway(String latency, double errorRate, int fanOut, int threads) {
+        this.latencyMicros = parseLatency(latency);
+        this.errorRate = errorRate;
+        this.fanOut = fanOut;
+        this.threads = threads;
+    }
+
+    /**
+     * Parse a latency distribution in milliseconds.
+     * <p>
+     * Supported are {@code constant:<ms>}, {@code uniform:<min>-<max>} and
+     * {@code exponential:<mean>} (e.g. {@code exponential:20}).
+     *
+     * @param latency the latency distribution
+     * @return supplies latencies in microseconds
+     */
+    public static LongSupplier parseLatency(String latency) {
+        String[] parts = latency.split(":", 2);
+        switch (parts[0]) {
+            case "constant": {
+                long micros = toMicros(parts[1]);
+                return () -> micros;
+            }
+            case "uniform": {
+                String[] bounds = parts[1].split("-", 2);
+                long min = toMicros(bounds[0]);
+                long max = toMicros(bounds[1]);
+                return () -> ThreadLocalRandom.current().nextLong(min, max + 1);
+            }
+            case "exponential": {
+                double mean = toMicros(parts[1]);
+                return () -> (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution '" + latency + "'");
+        }
+    }
+
+    private static long toMicros(String millis) {
+        return (long) (Double.parseDouble(millis) * 1000);
+    }
+
+    @Override
+    protected void before() throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), threads);
+        server.createContext("/function/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        System.setProperty("openfaas.gateway", getGateway());
+        log.info("Started stub FaaS gateway on '{}'", getGateway());
+    }
+
+    @Override
+    protected void after() {
+        server.stop(0);
+        executor.shutdownNow();
+        System.clearProperty("openfaas.gateway");
+    }
+
+    /**
+     * Get the url of the gateway.
+     */
+    public String getGateway() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Get the number of function calls.
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Get the number of function calls that failed on purpose.
+     */
+    public long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            calls.incrementAndGet();
+            byte[] request = StreamUtils.copyToByteArray(exchange.getRequestBody());
+            long latency = latencyMicros.getAsLong();
+            if (latency > 0) {
+                TimeUnit.MICROSECONDS.sleep(latency);
+            }
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failedCalls.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            byte[] response;
+            if (request.length > 0 && request[0] == '[') {
+                List<MicoCloudEventImpl<JsonNode>> batch = CloudEventCodec.decode(request, BATCH_TYPE);
+                List<List<MicoCloudEventImpl<JsonNode>>> results = new ArrayList<>(batch.size());
+                batch.forEach(cloudEvent -> results.add(copies(cloudEvent)));
+                response = CloudEventCodec.encode(results);
+            } else {
+                response = CloudEventCodec.encode(copies(CloudEventCodec.decodeCloudEvent(request)));
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } catch (RuntimeException e) {
+            log.error("Stub function failed. Caused by: {}", e.getMessage());
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private List<MicoCloudEventImpl<JsonNode>> copies(MicoCloudEventImpl<JsonNode> cloudEvent) {
+        List<MicoCloudEventImpl<JsonNode>> result = new ArrayList<>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            result.add(cloudEvent.toBuilder().randomId().build());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KafkaMessageSender;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.github.ust.mico.kafkafaasconnector.TestConstants.DEFAULT_KAFKA_POLL_TIMEOUT;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {"kafka.transactional=true", "kafka.transaction-max-records=3"})
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class TransactionalMessageListenerTests {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    @SpyBean
+    private KafkaMessageSender kafkaMessageSender;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    private KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template;
+
+    // https://docs.spring.io/spring-kafka/docs/2.2.6.RELEASE/reference/html/#kafka-testing-junit4-class-rule
+    @ClassRule
+    public static EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false)
+        .brokerProperty("transaction.state.log.replication.factor", "1")
+        .brokerProperty("transaction.state.log.min.isr", "1");
+
+    private MicoKafkaTestHelper micoKafkaTestHelper;
+
+    @PostConstruct
+    public void before() {
+        this.micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+        template = this.micoKafkaTestHelper.getTemplate();
+
+        Set<String> requiredTopics = this.micoKafkaTestHelper.getRequiredTopics();
+        Set<String> alreadySetTopics = this.micoKafkaTestHelper.requestActuallySetTopics();
+        requiredTopics.removeAll(alreadySetTopics);
+        requiredTopics.forEach(embeddedKafka::addTopics);
+    }
+
+    /**
+     * Tests that every message is processed in transactions and sent to the output topic.
+     */
+    @Test
+    public void testTransactionsAreCommitted() {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getReadCommittedKafkaConsumer(kafkaConfig.getOutputTopic());
+
+        Set<String> sentIds = new HashSet<>(this.micoKafkaTestHelper.sendCloudEvents(20, i -> "0"));
+
+        List<String> receivedIds = MicoKafkaTestHelper.getIds(MicoKafkaTestHelper.consumeAllMessages(consumer));
+        // the output topic also contains the messages of the other tests
+        receivedIds.retainAll(sentIds);
+        assertThat("Every message should be on the output topic", new HashSet<>(receivedIds), is(sentIds));
+        assertThat("Every message should be committed once", receivedIds.size(), is(sentIds.size()));
+
+        // Don't forget to detach the consumer from kafka!
+        MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+    }
+
+    /**
+     * Tests that the messages of a transaction with a failed send are not visible to read_committed consumers
+     * and that the offset of the input record is not committed until the record was processed again.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAbortedTransactionsAreNeitherVisibleNorCommitted() throws Exception {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> committedConsumer = this.micoKafkaTestHelper.getReadCommittedKafkaConsumer(kafkaConfig.getOutputTopic());
+        Consumer<String, MicoCloudEventImpl<JsonNode>> uncommittedConsumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
+        MicoCloudEventImpl<JsonNode> cloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId();
+
+        // the message is sent within the transaction, but its send is reported as failed
+        AtomicBoolean failSends = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            CompletableFuture<Void> sent = (CompletableFuture<Void>) invocation.callRealMethod();
+            if (!failSends.get()) {
+                return sent;
+            }
+            return sent.thenCompose(ignored -> {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new KafkaException("Simulated send failure"));
+                return failed;
+            });
+        }).when(kafkaMessageSender).sendCloudEventsInTransaction(any(), eq(cloudEvent.getId()));
+
+        RecordMetadata input = template.send(kafkaConfig.getInputTopic(), "0", cloudEvent).get().getRecordMetadata();
+        TopicPartition inputPartition = new TopicPartition(input.topic(), input.partition());
+
+        assertThat("The aborted message should be written to the output topic",
+            countMessages(uncommittedConsumer, cloudEvent.getId(), 10), greaterThan(0));
+        assertThat("The aborted message should not be visible", countMessages(committedConsumer, cloudEvent.getId(), 3), is(0));
+        assertThat("The offset of the input record should not be committed", micoKafkaTestHelper.getCommittedOffset(kafkaConfig.getGroupId(), inputPartition), lessThanOrEqualTo(input.offset()));
+
+        failSends.set(false);
+        // the offset is committed in the same transaction as the message
+        assertThat("The message should be committed once after the record was processed again",
+            countMessages(committedConsumer, cloudEvent.getId(), 10), is(1));
+        assertThat("The offset of the input record should be committed", micoKafkaTestHelper.getCommittedOffset(kafkaConfig.getGroupId(), inputPartition), is(input.offset() + 1));
+
+        // Don't forget to detach the consumers from kafka!
+        MicoKafkaTestHelper.unsubscribeConsumer(committedConsumer);
+        MicoKafkaTestHelper.unsubscribeConsumer(uncommittedConsumer);
+    }
+
+    /**
+     * Poll the consumer {@code polls} times and count the messages with the id.
+     * Stops after the first poll without new messages once a message with the id was found.
+     */
+    private int countMessages(Consumer<String, MicoCloudEventImpl<JsonNode>> consumer, String id, int polls) {
+        int count = 0;
+        for (int i = 0; i < polls; i++) {
+            int found = 0;
+            for (ConsumerRecord<String, MicoCloudEventImpl<JsonNode>> record : KafkaTestUtils.getRecords(consumer, DEFAULT_KAFKA_POLL_TIMEOUT)) {
+                if (id.equals(record.value().getId())) {
+                    found++;
+                }
+            }
+            if (count > 0 && found == 0) {
+                break;
+            }
+            count += found;
+        }
+        return count;
+    }
+}
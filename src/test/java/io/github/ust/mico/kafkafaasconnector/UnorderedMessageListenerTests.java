@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.github.ust.mico.kafkafaasconnector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.ust.mico.kafkafaasconnector.configuration.KafkaConfig;
+import io.github.ust.mico.kafkafaasconnector.kafka.MicoCloudEventImpl;
+import io.github.ust.mico.kafkafaasconnector.messageprocessing.KafkaMessageSender;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = "kafka.processing-order=unordered")
+@EnableAutoConfiguration
+@AutoConfigureMockMvc
+@ActiveProfiles("testing")
+@DirtiesContext
+public class UnorderedMessageListenerTests {
+
+    @Autowired
+    private KafkaConfig kafkaConfig;
+
+    @SpyBean
+    private KafkaMessageSender kafkaMessageSender;
+
+    private final EmbeddedKafkaBroker embeddedKafka = broker.getEmbeddedKafka();
+
+    private KafkaTemplate<String, MicoCloudEventImpl<JsonNode>> template;
+
+    // https://docs.spring.io/spring-kafka/docs/2.2.6.RELEASE/reference/html/#kafka-testing-junit4-class-rule
+    // a single partition per topic, so all records share the offsets of one input partition
+    @ClassRule
+    public static EmbeddedKafkaRule broker = new EmbeddedKafkaRule(1, false, 1);
+
+    private MicoKafkaTestHelper micoKafkaTestHelper;
+
+    @PostConstruct
+    public void before() {
+        this.micoKafkaTestHelper = new MicoKafkaTestHelper(embeddedKafka, kafkaConfig);
+        template = this.micoKafkaTestHelper.getTemplate();
+
+        Set<String> requiredTopics = this.micoKafkaTestHelper.getRequiredTopics();
+        Set<String> alreadySetTopics = this.micoKafkaTestHelper.requestActuallySetTopics();
+        requiredTopics.removeAll(alreadySetTopics);
+        requiredTopics.forEach(embeddedKafka::addTopics);
+    }
+
+    /**
+     * Tests that the records after a slow record are processed, but their offsets are only committed
+     * after the slow record was completed.
+     */
+    @Test
+    public void testGapHoldsBackCommit() throws Exception {
+        Consumer<String, MicoCloudEventImpl<JsonNode>> consumer = this.micoKafkaTestHelper.getKafkaConsumer(kafkaConfig.getOutputTopic());
+        MicoCloudEventImpl<JsonNode> slowCloudEvent = CloudEventTestUtils.basicCloudEventWithRandomId();
+
+        // the slow record blocks its worker until it is released
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(30, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(kafkaMessageSender).safeSendStreamedCloudEvents(any(), eq(slowCloudEvent.getId()));
+
+        try {
+            RecordMetadata slow = template.send(kafkaConfig.getInputTopic(), "0", slowCloudEvent).get().getRecordMetadata();
+            TopicPartition inputPartition = new TopicPartition(slow.topic(), slow.partition());
+            List<String> sentIds = this.micoKafkaTestHelper.sendCloudEvents(9, i -> "0");
+
+            List<String> receivedIds = MicoKafkaTestHelper.getIds(MicoKafkaTestHelper.consumeAllMessages(consumer));
+            assertThat("The records after the slow record should be processed", new HashSet<>(receivedIds), is(new HashSet<>(sentIds)));
+            assertThat("The offset of the slow record should not be committed",
+                this.micoKafkaTestHelper.getCommittedOffset(kafkaConfig.getGroupId(), inputPartition), lessThanOrEqualTo(slow.offset()));
+
+            release.countDown();
+            assertThat(MicoKafkaTestHelper.getIds(MicoKafkaTestHelper.consumeAllMessages(consumer)), contains(slowCloudEvent.getId()));
+            long endOffset = slow.offset() + 1 + sentIds.size();
+            // the completed offsets are committed with the next poll or idle event of the container
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (this.micoKafkaTestHelper.getCommittedOffset(kafkaConfig.getGroupId(), inputPartition) < endOffset && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            assertThat("The offsets after the gap should be committed",
+                this.micoKafkaTestHelper.getCommittedOffset(kafkaConfig.getGroupId(), inputPartition), is(endOffset));
+        } finally {
+            release.countDown();
+            // Don't forget to detach the consumer from kafka!
+            MicoKafkaTestHelper.unsubscribeConsumer(consumer);
+        }
+    }
+}